@@ -20,6 +20,8 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 
 import com.firebase.geofire.example.MainActivity;
 import com.firebase.geofire.testing.GeoFireTestingRule;
+import com.firebase.geofire.testing.GeoNearestQueryEventTestListener;
+import com.firebase.geofire.testing.GeoQueryBatchEventTestListener;
 import com.firebase.geofire.testing.GeoQueryDataEventTestListener;
 import com.firebase.geofire.testing.GeoQueryEventTestListener;
 import com.google.firebase.database.DatabaseError;
@@ -31,6 +33,7 @@ import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -449,4 +452,266 @@ public class GeoQueryIT {
         assertTrue(semaphore.tryAcquire(geoFireTestingRule.timeout, TimeUnit.SECONDS));
         assertTrue(done[0]);
     }
+
+    @Test
+    public void retainedQueriesKeepEvents() throws InterruptedException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        geoFireTestingRule.setLocation(geoFire, "0", 37.0000, -122.0000);
+        geoFireTestingRule.setLocation(geoFire, "1", 37.0100, -122.0000, true);
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37.0000, -122.0000), 0.5);
+        query.setRetentionMargin(10, 0);
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener(true, false, true);
+        query.addGeoQueryEventListener(testListener);
+
+        geoFireTestingRule.waitForGeoFireReady(geoFire);
+
+        List<String> events = new LinkedList<>();
+        events.add(GeoQueryEventTestListener.keyEntered("0", 37.0000, -122.0000));
+        testListener.expectEvents(events);
+
+        // Move back and forth between both keys, the queries of the previous center stay attached
+        query.setCenter(new GeoLocation(37.0100, -122.0000));
+        events.add(GeoQueryEventTestListener.keyEntered("1", 37.0100, -122.0000));
+        events.add(GeoQueryEventTestListener.keyExited("0"));
+        testListener.expectEvents(events);
+
+        query.setCenter(new GeoLocation(37.0000, -122.0000));
+        events.add(GeoQueryEventTestListener.keyExited("1"));
+        testListener.expectEvents(events);
+
+        geoFireTestingRule.setLocation(geoFire, "1", 37.0001, -122.0000, true);
+        events.add(GeoQueryEventTestListener.keyEntered("1", 37.0001, -122.0000));
+        testListener.expectEvents(events);
+    }
+
+    @Test
+    public void prefetchedKeysEnterWhenReached() throws InterruptedException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        geoFireTestingRule.setLocation(geoFire, "0", 37.0000, -122.0000);
+        geoFireTestingRule.setLocation(geoFire, "1", 37.0000, -121.9700);
+        geoFireTestingRule.setLocation(geoFire, "2", 37.0000, -121.9400, true);
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37.0000, -122.0000), 0.5);
+        query.setPrefetchSteps(4);
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener(true, false, true);
+        query.addGeoQueryEventListener(testListener);
+
+        geoFireTestingRule.waitForGeoFireReady(geoFire);
+
+        List<String> events = new LinkedList<>();
+        events.add(GeoQueryEventTestListener.keyEntered("0", 37.0000, -122.0000));
+        testListener.expectEvents(events);
+
+        // Keys ahead of the moving center are loaded early but only enter once they are within the radius
+        query.setCenter(new GeoLocation(37.0000, -121.9940));
+        events.add(GeoQueryEventTestListener.keyExited("0"));
+        testListener.expectEvents(events);
+
+        query.setCenter(new GeoLocation(37.0000, -121.9880));
+        query.setCenter(new GeoLocation(37.0000, -121.9820));
+        query.setCenter(new GeoLocation(37.0000, -121.9760));
+        testListener.expectEvents(events);
+
+        query.setCenter(new GeoLocation(37.0000, -121.9700));
+        events.add(GeoQueryEventTestListener.keyEntered("1", 37.0000, -121.9700));
+        testListener.expectEvents(events);
+    }
+
+    @Test
+    public void concurrentCenterUpdates() throws InterruptedException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        geoFireTestingRule.setLocation(geoFire, "0", 37.0000, -122.0000);
+        geoFireTestingRule.setLocation(geoFire, "1", 38.0000, -122.0000, true);
+
+        final GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37.0000, -122.0000), 0.5);
+        query.addGeoQueryEventListener(new GeoQueryEventTestListener());
+
+        // Callers on several threads never block each other, and the last criteria win
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int offset = i;
+            threads[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 100; j++) {
+                        query.setCenter(new GeoLocation(((j + offset) % 2 == 0) ? 37.0000 : 38.0000, -122.0000));
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread: threads) {
+            thread.join();
+        }
+        query.setCenter(new GeoLocation(38.0000, -122.0000));
+        assertTrue(query.getCenter().equals(new GeoLocation(38.0000, -122.0000)));
+
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener();
+        query.addGeoQueryEventListener(testListener);
+        testListener.expectEvents(Collections.singletonList(GeoQueryEventTestListener.keyEntered("1", 38, -122)));
+    }
+
+    @Test
+    public void shapeQueries() throws InterruptedException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        geoFireTestingRule.setLocation(geoFire, "0", 37.0000, -122.0000);
+        geoFireTestingRule.setLocation(geoFire, "1", 37.0000, -121.8100);
+        geoFireTestingRule.setLocation(geoFire, "2", 37.0500, -121.9900);
+        geoFireTestingRule.setLocation(geoFire, "3", 37.2000, -122.0000, true);
+
+        // A wide and short box, like the visible region of a map
+        GeoQuery query = geoFire.queryInShape(new GeoBoundingBox(new GeoLocation(36.9900, -122.1000),
+                new GeoLocation(37.0100, -121.8000)));
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener(true, false, true);
+        query.addGeoQueryEventListener(testListener);
+
+        List<String> events = new LinkedList<>();
+        events.add(GeoQueryEventTestListener.keyEntered("0", 37.0000, -122.0000));
+        events.add(GeoQueryEventTestListener.keyEntered("1", 37.0000, -121.8100));
+        testListener.expectEvents(events);
+
+        // A triangle that contains key 2, but not key 1 within its bounding box
+        query.setShape(new GeoPolygon(Arrays.asList(new GeoLocation(36.9900, -122.0100),
+                new GeoLocation(37.1000, -122.0100), new GeoLocation(36.9900, -121.8000))));
+        events.add(GeoQueryEventTestListener.keyEntered("2", 37.0500, -121.9900));
+        events.add(GeoQueryEventTestListener.keyExited("1"));
+        testListener.expectEvents(events);
+    }
+
+    @Test
+    public void batchedEvents() throws InterruptedException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        geoFireTestingRule.setLocation(geoFire, "0", 0, 0);
+        geoFireTestingRule.setLocation(geoFire, "1", 37.0000, -122.0000);
+        geoFireTestingRule.setLocation(geoFire, "2", 37.0001, -122.0001);
+        geoFireTestingRule.setLocation(geoFire, "3", 37.1000, -122.0000, true);
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 0.5);
+        GeoQueryBatchEventTestListener testListener = new GeoQueryBatchEventTestListener();
+        query.addGeoQueryBatchEventListener(testListener, 100, 50, TimeUnit.MILLISECONDS);
+
+        Set<String> events = new HashSet<>();
+        events.add(GeoQueryDataEventTestListener.dataEntered("1", 37, -122));
+        events.add(GeoQueryDataEventTestListener.dataEntered("2", 37.0001, -122.0001));
+        testListener.expectEvents(events);
+
+        geoFireTestingRule.setLocation(geoFire, "1", 37.1000, -122.0000, true);
+        geoFireTestingRule.setLocation(geoFire, "3", 37.0002, -121.9998, true);
+        geoFireTestingRule.setLocation(geoFire, "2", 37.0002, -122.0002, true);
+
+        events.add(GeoQueryDataEventTestListener.dataExited("1"));
+        events.add(GeoQueryDataEventTestListener.dataEntered("3", 37.0002, -121.9998));
+        events.add(GeoQueryDataEventTestListener.dataMoved("2", 37.0002, -122.0002));
+        events.add(GeoQueryDataEventTestListener.dataChanged("2", 37.0002, -122.0002));
+        testListener.expectEvents(events);
+
+        query.removeGeoQueryEventListener(testListener);
+    }
+
+    @Test
+    public void throttledUpdatesReportLatestLocation() throws InterruptedException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        geoFireTestingRule.setLocation(geoFire, "0", 37.0000, -122.0000, true);
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 0.5);
+        query.setUpdateThrottle(0, 5000);
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener();
+        query.addGeoQueryEventListener(testListener);
+        testListener.expectEvents(Collections.singletonList(GeoQueryEventTestListener.keyEntered("0", 37, -122)));
+
+        // Only the last of the moves within the interval is reported
+        geoFireTestingRule.setLocation(geoFire, "0", 37.0001, -122.0000, true);
+        geoFireTestingRule.setLocation(geoFire, "0", 37.0002, -122.0000, true);
+        geoFireTestingRule.setLocation(geoFire, "0", 37.0003, -122.0000, true);
+
+        Set<String> events = new HashSet<>();
+        events.add(GeoQueryEventTestListener.keyEntered("0", 37, -122));
+        events.add(GeoQueryEventTestListener.keyMoved("0", 37.0003, -122));
+        testListener.expectEvents(events);
+
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void shortMoveIsReportedWithNextChange() throws InterruptedException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        geoFireTestingRule.setLocation(geoFire, "0", 37.0000, -122.0000, true);
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 0.5);
+        query.setUpdateThrottle(1, 0);
+        GeoQueryDataEventTestListener testListener = new GeoQueryDataEventTestListener(
+            false, true, true, false);
+        query.addGeoQueryDataEventListener(testListener);
+        geoFireTestingRule.waitForGeoFireReady(geoFire);
+
+        // The move is shorter than the throttle distance, it is reported with the next change of the key
+        geoFireTestingRule.setLocation(geoFire, "0", 37.0001, -122.0000, true);
+        DatabaseReference childRef = geoFire.getDatabaseRefForKey("0").child("some_child");
+        geoFireTestingRule.setValueAndWait(childRef, "some_value");
+
+        List<String> events = new LinkedList<>();
+        events.add(GeoQueryDataEventTestListener.dataMoved("0", 37.0001, -122.0000));
+        events.add(GeoQueryDataEventTestListener.dataChanged("0", 37.0001, -122.0000));
+        testListener.expectEvents(events);
+
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void keyMovingBetweenRangesDoesNotExit() throws InterruptedException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        geoFireTestingRule.setLocation(geoFire, "0", 37.0000, -122.0000, true);
+
+        GeoQuery query = geoFire.queryAtLocation(new GeoLocation(37, -122), 100);
+        GeoQueryEventTestListener testListener = new GeoQueryEventTestListener();
+        query.addGeoQueryEventListener(testListener);
+        testListener.expectEvents(Collections.singletonList(GeoQueryEventTestListener.keyEntered("0", 37, -122)));
+
+        // The key leaves the range of one database query for another one of the same GeoQuery
+        geoFireTestingRule.setLocation(geoFire, "0", 37.4000, -121.6000, true);
+
+        Set<String> events = new HashSet<>();
+        events.add(GeoQueryEventTestListener.keyEntered("0", 37, -122));
+        events.add(GeoQueryEventTestListener.keyMoved("0", 37.4, -121.6));
+        testListener.expectEvents(events);
+
+        query.removeAllListeners();
+    }
+
+    @Test
+    public void nearestKeysAreRanked() throws InterruptedException {
+        GeoFire geoFire = geoFireTestingRule.newTestGeoFire();
+        geoFireTestingRule.setLocation(geoFire, "0", 0, 0);
+        geoFireTestingRule.setLocation(geoFire, "1", 37.0000, -122.0000);
+        geoFireTestingRule.setLocation(geoFire, "2", 37.0001, -122.0001);
+        geoFireTestingRule.setLocation(geoFire, "3", 37.0200, -122.0000, true);
+
+        // Key 3 is outside the first radius, so the query grows until it finds it
+        GeoNearestQuery query = geoFire.queryNearest(new GeoLocation(37, -122), 3);
+        GeoNearestQueryEventTestListener testListener = new GeoNearestQueryEventTestListener();
+        query.addGeoNearestQueryEventListener(testListener);
+
+        Set<String> events = new HashSet<>();
+        events.add(GeoNearestQueryEventTestListener.keyRanked("1", 37, -122, 0));
+        events.add(GeoNearestQueryEventTestListener.keyRanked("2", 37.0001, -122.0001, 1));
+        events.add(GeoNearestQueryEventTestListener.keyRanked("3", 37.02, -122, 2));
+        testListener.expectEvents(events);
+
+        geoFireTestingRule.setLocation(geoFire, "3", 37.00005, -122.0000, true);
+
+        events.add(GeoNearestQueryEventTestListener.keyRanked("3", 37.00005, -122, 1));
+        events.add(GeoNearestQueryEventTestListener.keyRanked("2", 37.0001, -122.0001, 2));
+        testListener.expectEvents(events);
+
+        // Key 0 is beyond the largest radius, so only two keys remain
+        geoFireTestingRule.removeLocation(geoFire, "1", true);
+
+        events.add(GeoNearestQueryEventTestListener.keyUnranked("1"));
+        events.add(GeoNearestQueryEventTestListener.keyRanked("3", 37.00005, -122, 0));
+        events.add(GeoNearestQueryEventTestListener.keyRanked("2", 37.0001, -122.0001, 1));
+        testListener.expectEvents(events);
+
+        query.removeAllListeners();
+    }
 }
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.testing;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.GeoNearestQueryEventListener;
+import com.google.firebase.database.DatabaseError;
+
+import static java.util.Locale.US;
+
+/**
+ * This listener records the rankings of a GeoNearestQuery.
+ */
+public final class GeoNearestQueryEventTestListener extends TestListener implements GeoNearestQueryEventListener {
+  public static String keyRanked(String key, double latitude, double longitude, int rank) {
+    return String.format(US, "KEY_RANKED(%s,%f,%f,%d)", key, latitude, longitude, rank);
+  }
+
+  public static String keyUnranked(String key) {
+    return String.format("KEY_UNRANKED(%s)", key);
+  }
+
+  @Override
+  public void onKeyRanked(@NonNull String key, @NonNull GeoLocation location, int rank) {
+    addEvent(keyRanked(key, location.latitude, location.longitude, rank));
+  }
+
+  @Override
+  public void onKeyUnranked(@NonNull String key) {
+    addEvent(keyUnranked(key));
+  }
+
+  @Override
+  public void onGeoQueryReady() {
+    // No-op.
+  }
+
+  @Override
+  public void onGeoQueryError(DatabaseError error) {
+    throw error.toException();
+  }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.testing;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.GeoQueryBatchEventListener;
+import com.firebase.geofire.GeoQueryEventBatch;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+
+import static com.firebase.geofire.testing.GeoQueryDataEventTestListener.dataChanged;
+import static com.firebase.geofire.testing.GeoQueryDataEventTestListener.dataEntered;
+import static com.firebase.geofire.testing.GeoQueryDataEventTestListener.dataExited;
+import static com.firebase.geofire.testing.GeoQueryDataEventTestListener.dataMoved;
+
+/**
+ * This listener records the events of every batch like {@link GeoQueryDataEventTestListener} records single events.
+ */
+public final class GeoQueryBatchEventTestListener extends TestListener implements GeoQueryBatchEventListener {
+
+  @Override
+  public void onDataBatch(@NonNull GeoQueryEventBatch batch) {
+    for (GeoQueryEventBatch.DataEvent event : batch.getEntered()) {
+      addEvent(dataEntered(event.getDataSnapshot().getKey(), event.getLocation().latitude,
+          event.getLocation().longitude));
+    }
+    for (DataSnapshot dataSnapshot : batch.getExited()) {
+      addEvent(dataExited(dataSnapshot.getKey()));
+    }
+    for (GeoQueryEventBatch.DataEvent event : batch.getMoved()) {
+      addEvent(dataMoved(event.getDataSnapshot().getKey(), event.getLocation().latitude,
+          event.getLocation().longitude));
+    }
+    for (GeoQueryEventBatch.DataEvent event : batch.getChanged()) {
+      addEvent(dataChanged(event.getDataSnapshot().getKey(), event.getLocation().latitude,
+          event.getLocation().longitude));
+    }
+  }
+
+  @Override
+  public void onGeoQueryReady() {
+    // No-op.
+  }
+
+  @Override
+  public void onGeoQueryError(DatabaseError error) {
+    throw error.toException();
+  }
+}
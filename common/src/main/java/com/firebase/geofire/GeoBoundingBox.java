@@ -0,0 +1,126 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.util.Constants;
+
+/**
+ * A rectangle in latitude and longitude, for example the visible region of a map. A bounding box whose western
+ * longitude is larger than its eastern longitude crosses the 180th meridian.
+ */
+public final class GeoBoundingBox implements GeoShape {
+
+    private final GeoLocation southWest;
+    private final GeoLocation northEast;
+
+    /**
+     * Creates a new bounding box from its south western and north eastern corners.
+     *
+     * @throws IllegalArgumentException If the southern latitude is larger than the northern latitude
+     * @param southWest The south western corner
+     * @param northEast The north eastern corner
+     */
+    public GeoBoundingBox(@NonNull GeoLocation southWest, @NonNull GeoLocation northEast) {
+        if (southWest.latitude > northEast.latitude) {
+            throw new IllegalArgumentException("The southern latitude is north of the northern latitude: "
+                    + southWest.latitude + " > " + northEast.latitude);
+        }
+        this.southWest = southWest;
+        this.northEast = northEast;
+    }
+
+    @NonNull
+    public GeoLocation getSouthWest() {
+        return this.southWest;
+    }
+
+    @NonNull
+    public GeoLocation getNorthEast() {
+        return this.northEast;
+    }
+
+    /**
+     * @return True if this bounding box crosses the 180th meridian
+     */
+    public boolean crossesAntimeridian() {
+        return this.southWest.longitude > this.northEast.longitude;
+    }
+
+    /**
+     * @return The center of this bounding box
+     */
+    @NonNull
+    public GeoLocation getCenter() {
+        double latitude = (this.southWest.latitude + this.northEast.latitude) / 2;
+        double longitude = (this.southWest.longitude + this.getWidth() / 2);
+        return new GeoLocation(latitude, (longitude > 180) ? longitude - 360 : longitude);
+    }
+
+    /**
+     * @return The width of this bounding box in degrees of longitude
+     */
+    public double getWidth() {
+        double width = this.northEast.longitude - this.southWest.longitude;
+        return crossesAntimeridian() ? width + 360 : width;
+    }
+
+    @Override
+    public boolean contains(double latitude, double longitude) {
+        if (latitude < this.southWest.latitude || latitude > this.northEast.latitude) {
+            return false;
+        }
+        if (crossesAntimeridian()) {
+            return longitude >= this.southWest.longitude || longitude <= this.northEast.longitude;
+        }
+        return longitude >= this.southWest.longitude && longitude <= this.northEast.longitude;
+    }
+
+    @NonNull
+    @Override
+    public GeoBoundingBox getBoundingBox() {
+        return this;
+    }
+
+    @Override
+    public double getArea() {
+        double radius = Constants.EARTH_MEAN_RADIUS;
+        double north = Math.toRadians(this.northEast.latitude);
+        double south = Math.toRadians(this.southWest.latitude);
+        return radius * radius * Math.toRadians(getWidth()) * (Math.sin(north) - Math.sin(south));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        GeoBoundingBox that = (GeoBoundingBox) o;
+
+        return this.southWest.equals(that.southWest) && this.northEast.equals(that.northEast);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * this.southWest.hashCode() + this.northEast.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "GeoBoundingBox(" + this.southWest + ", " + this.northEast + ")";
+    }
+}
@@ -3,9 +3,12 @@ package com.firebase.geofire;
 import androidx.annotation.NonNull;
 
 import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashBatch;
 import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.util.DistanceFilter;
 import com.firebase.geofire.util.GeoUtils;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
@@ -35,6 +38,61 @@ public class GeoFireUtils {
         return new GeoHash(location.latitude, location.longitude, precision).getGeoHashString();
     }
 
+    /**
+     * Writes the GeoHash of a lat/lng location into a char array, without creating a GeoHash or String.
+     *
+     * @param location  the location to convert.
+     * @param precision the precision between 1 and 22.
+     * @param buffer    the array to write the GeoHash into.
+     * @param offset    the index of the first character to write.
+     * @return the number of characters written, which is the precision.
+     */
+    public static int getGeoHashForLocation(@NonNull GeoLocation location, int precision,
+                                            @NonNull char[] buffer, int offset) {
+        return GeoHash.encode(location.latitude, location.longitude, precision, buffer, offset);
+    }
+
+    /**
+     * Appends the GeoHash of a lat/lng location to a StringBuilder, without creating a GeoHash or String.
+     *
+     * @param location  the location to convert.
+     * @param precision the precision between 1 and 22.
+     * @param builder   the builder to append the GeoHash to.
+     * @return the number of characters appended, which is the precision.
+     */
+    public static int getGeoHashForLocation(@NonNull GeoLocation location, int precision,
+                                            @NonNull StringBuilder builder) {
+        return GeoHash.encode(location.latitude, location.longitude, precision, builder);
+    }
+
+    /**
+     * Writes the GeoHash of a lat/lng location as ASCII bytes at the position of a ByteBuffer, without creating
+     * a GeoHash or String. The position of the buffer is advanced by the number of bytes written.
+     *
+     * @param location  the location to convert.
+     * @param precision the precision between 1 and 22.
+     * @param buffer    the buffer to write the GeoHash into.
+     * @return the number of bytes written, which is the precision.
+     */
+    public static int getGeoHashForLocation(@NonNull GeoLocation location, int precision,
+                                            @NonNull ByteBuffer buffer) {
+        return GeoHash.encode(location.latitude, location.longitude, precision, buffer);
+    }
+
+    /**
+     * Converts many lat/lng locations into GeoHashes with specified precision at once. This is much cheaper than
+     * calling {@link #getGeoHashForLocation(GeoLocation, int)} for each location.
+     *
+     * @param latitudes  the latitudes of the locations.
+     * @param longitudes the longitudes of the locations, in the same order as the latitudes.
+     * @param precision  the precision between 1 and 22 (10 is default).
+     * @param out        the array to write the GeoHash strings into, at least as long as latitudes.
+     */
+    public static void getGeoHashesForLocations(@NonNull double[] latitudes, @NonNull double[] longitudes,
+                                                int precision, @NonNull String[] out) {
+        GeoHashBatch.encode(latitudes, longitudes, precision, out);
+    }
+
     /**
      * Calculates the distance between two locations in meters.
      *
@@ -46,6 +104,39 @@ public class GeoFireUtils {
         return GeoUtils.distance(a, b);
     }
 
+    /**
+     * Calculates the distances from a center to many locations at once, in meters. This is much cheaper than calling
+     * {@link #getDistanceBetween(GeoLocation, GeoLocation)} for each location.
+     *
+     * @param center     the center.
+     * @param latitudes  the latitudes of the locations.
+     * @param longitudes the longitudes of the locations, in the same order as the latitudes.
+     * @param out        the array to write the distances into, at least as long as latitudes.
+     */
+    public static void getDistancesBetween(@NonNull GeoLocation center, @NonNull double[] latitudes,
+                                           @NonNull double[] longitudes, @NonNull double[] out) {
+        GeoUtils.distances(center.latitude, center.longitude, latitudes, longitudes, out);
+    }
+
+    /**
+     * Determines which of many locations are within a radius of a center, for example to filter the documents
+     * returned by the queries of {@link #getGeoHashQueryBounds(GeoLocation, double)}. Only locations close to the
+     * radius are measured exactly, so this is much cheaper than comparing distances.
+     *
+     * @param center     the center.
+     * @param radius     the radius, in meters.
+     * @param latitudes  the latitudes of the locations.
+     * @param longitudes the longitudes of the locations, in the same order as the latitudes.
+     * @param inside     the bitmap to set the bits of the locations within the radius in, with at least one bit
+     *                   per location. Location i is bit i % 64 of inside[i / 64], see
+     *                   {@link java.util.BitSet#valueOf(long[])}.
+     * @return the number of locations within the radius.
+     */
+    public static int getLocationsInRadius(@NonNull GeoLocation center, double radius, @NonNull double[] latitudes,
+                                           @NonNull double[] longitudes, @NonNull long[] inside) {
+        return new DistanceFilter(center, radius).contains(latitudes, longitudes, inside);
+    }
+
     /**
      * Determines the starting and ending geohashes to use as bounds for a database query.
      *
@@ -63,4 +154,42 @@ public class GeoFireUtils {
         }
         return result;
     }
+
+    /**
+     * Determines the starting and ending geohashes to use as bounds for a database query, using geohashes of mixed
+     * precisions so that as little as possible is read outside of the radius.
+     *
+     * @param location  the center of the query.
+     * @param radius    the radius of the query, in meters. The maximum radius that is
+     *                  supported is about 8587km.
+     * @param maxBounds the maximum number of query bounds to return, at least 1.
+     * @return a list of query bounds containing between 1 and maxBounds queries.
+     */
+    @NonNull
+    public static List<GeoQueryBounds> getGeoHashQueryBounds(@NonNull GeoLocation location, double radius,
+                                                             int maxBounds) {
+        List<GeoQueryBounds> result = new ArrayList<>();
+        Set<GeoHashQuery> queries = GeoHashQuery.queriesAtLocation(location, radius, maxBounds);
+        for (GeoHashQuery q : queries) {
+            result.add(new GeoQueryBounds(q.getStartValue(), q.getEndValue()));
+        }
+        return result;
+    }
+
+    /**
+     * Determines the starting and ending geohashes to use as bounds for a database query of all locations within a
+     * bounding box, for example the visible region of a map.
+     *
+     * @param boundingBox the bounding box of the query, which may cross the 180th meridian.
+     * @return a list of query bounds.
+     */
+    @NonNull
+    public static List<GeoQueryBounds> getGeoHashQueryBounds(@NonNull GeoBoundingBox boundingBox) {
+        List<GeoQueryBounds> result = new ArrayList<>();
+        Set<GeoHashQuery> queries = GeoHashQuery.queriesInBoundingBox(boundingBox);
+        for (GeoHashQuery q : queries) {
+            result.add(new GeoQueryBounds(q.getStartValue(), q.getEndValue()));
+        }
+        return result;
+    }
 }
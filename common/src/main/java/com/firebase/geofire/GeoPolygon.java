@@ -0,0 +1,128 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.util.Constants;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A simple polygon whose edges are straight lines in latitude and longitude. The polygon is closed implicitly and
+ * must not cross the 180th meridian.
+ */
+public final class GeoPolygon implements GeoShape {
+
+    private final List<GeoLocation> vertices;
+    // The coordinates of the vertices, kept as arrays for the point in polygon test
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final GeoBoundingBox boundingBox;
+
+    /**
+     * Creates a new polygon.
+     *
+     * @throws IllegalArgumentException If there are fewer than 3 vertices
+     * @param vertices The vertices in order, without repeating the first vertex at the end
+     */
+    public GeoPolygon(@NonNull List<GeoLocation> vertices) {
+        if (vertices.size() < 3) {
+            throw new IllegalArgumentException("A polygon needs at least 3 vertices: " + vertices.size());
+        }
+        this.vertices = Collections.unmodifiableList(new ArrayList<>(vertices));
+        this.latitudes = new double[vertices.size()];
+        this.longitudes = new double[vertices.size()];
+        double south = 90;
+        double west = 180;
+        double north = -90;
+        double east = -180;
+        for (int i = 0; i < this.latitudes.length; i++) {
+            GeoLocation vertex = this.vertices.get(i);
+            this.latitudes[i] = vertex.latitude;
+            this.longitudes[i] = vertex.longitude;
+            south = Math.min(south, vertex.latitude);
+            west = Math.min(west, vertex.longitude);
+            north = Math.max(north, vertex.latitude);
+            east = Math.max(east, vertex.longitude);
+        }
+        this.boundingBox = new GeoBoundingBox(new GeoLocation(south, west), new GeoLocation(north, east));
+    }
+
+    @NonNull
+    public List<GeoLocation> getVertices() {
+        return this.vertices;
+    }
+
+    @Override
+    public boolean contains(double latitude, double longitude) {
+        if (!this.boundingBox.contains(latitude, longitude)) {
+            return false;
+        }
+        // Count the edges that a ray from the location towards the north pole crosses
+        boolean inside = false;
+        for (int i = 0, j = this.latitudes.length - 1; i < this.latitudes.length; j = i++) {
+            if ((this.longitudes[i] > longitude) != (this.longitudes[j] > longitude)) {
+                double crossing = this.latitudes[i] + (longitude - this.longitudes[i])
+                        * (this.latitudes[j] - this.latitudes[i]) / (this.longitudes[j] - this.longitudes[i]);
+                if (latitude < crossing) {
+                    inside = !inside;
+                }
+            }
+        }
+        return inside;
+    }
+
+    @NonNull
+    @Override
+    public GeoBoundingBox getBoundingBox() {
+        return this.boundingBox;
+    }
+
+    /**
+     * Returns the area of this polygon, approximating its edges on the sphere, see: Chamberlain and Duquette,
+     * "Some algorithms for polygons on a sphere".
+     */
+    @Override
+    public double getArea() {
+        double sum = 0;
+        for (int i = 0, j = this.latitudes.length - 1; i < this.latitudes.length; j = i++) {
+            sum += Math.toRadians(this.longitudes[i] - this.longitudes[j])
+                    * (2 + Math.sin(Math.toRadians(this.latitudes[j])) + Math.sin(Math.toRadians(this.latitudes[i])));
+        }
+        return Math.abs(sum) / 2 * Constants.EARTH_MEAN_RADIUS * Constants.EARTH_MEAN_RADIUS;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+
+        return this.vertices.equals(((GeoPolygon) o).vertices);
+    }
+
+    @Override
+    public int hashCode() {
+        return this.vertices.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "GeoPolygon" + this.vertices;
+    }
+}
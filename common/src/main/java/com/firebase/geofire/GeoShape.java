@@ -0,0 +1,49 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import androidx.annotation.NonNull;
+
+/**
+ * An area that can be queried, see GeoFire.queryInShape.
+ */
+public interface GeoShape {
+
+    /**
+     * Checks whether a location lies within this shape.
+     *
+     * @param latitude The latitude in the range of [-90, 90]
+     * @param longitude The longitude in the range of [-180, 180]
+     * @return True if the location is within this shape
+     */
+    boolean contains(double latitude, double longitude);
+
+    /**
+     * Returns the smallest bounding box that contains this shape. Only locations within the bounding box are read
+     * from the database.
+     *
+     * @return The bounding box
+     */
+    @NonNull
+    GeoBoundingBox getBoundingBox();
+
+    /**
+     * Returns the area of this shape on a spherical earth.
+     *
+     * @return The area in square meters
+     */
+    double getArea();
+}
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.core;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.util.Base32Utils;
+import com.firebase.geofire.util.Constants;
+import com.firebase.geofire.util.GeoUtils;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Plans geohash queries with cells of mixed precisions under a budget of ranges.
+ *
+ * The planner starts from the cells of the default covering and greedily splits the largest cell that is only
+ * partially inside of the circle into its two halves. Halves that are entirely outside of the circle are dropped,
+ * unless that would need more ranges than the budget allows. Cells are addressed by their position among all
+ * geohashes of MAX_PACKED_PRECISION_BITS, so a cell of b bits is the range [cell << (60 - b), (cell + 1) << (60 - b)).
+ */
+final class AdaptiveCovering {
+
+    // Cells are not seeded or split beyond the precision of stored keys, longer query bounds would exclude keys of the
+    // cells
+    private static final int MAX_SPLIT_BITS = GeoHash.DEFAULT_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
+
+    // Upper bound on the number of splits per plan
+    private static final int MAX_SPLITS = 1024;
+
+    // Cells smaller than this fraction of the circle are not split, they add little area but cost many splits
+    private static final double MIN_SPLIT_AREA = 0.03;
+
+    // The default covering measures the radius on the ellipsoid but distances are spherical, so the seeds are
+    // planned for a slightly larger circle. Cells outside of the actual circle are dropped right after.
+    private static final double SEED_SLACK = 0.01;
+
+    // Distances are compared with this relative tolerance, so rounding never drops a cell that touches the circle
+    private static final double DISTANCE_TOLERANCE = 1e-9;
+
+    private final GeoLocation center;
+    private final double radius;
+
+    // The merged ranges of all cells, from start to exclusive end
+    private final TreeMap<Long, Long> ranges = new TreeMap<>();
+    private final double[] bounds = new double[4];
+
+    private AdaptiveCovering(GeoLocation center, double radius) {
+        this.center = center;
+        this.radius = radius;
+    }
+
+    static Set<GeoHashQuery> queriesAtLocation(GeoLocation center, double radius, int maxRanges) {
+        return new AdaptiveCovering(center, radius).plan(maxRanges);
+    }
+
+    private Set<GeoHashQuery> plan(int maxRanges) {
+        double seedRadius = this.radius * (1 + SEED_SLACK);
+        int bits = Math.min(GeoHashQuery.coveringBits(this.center, seedRadius), MAX_SPLIT_BITS);
+        long[] seeds = GeoHashQuery.coveringCells(this.center, seedRadius, bits);
+        int count = 0;
+        for (long seed: seeds) {
+            if (this.intersects(seed, bits)) {
+                seeds[count++] = seed;
+            }
+        }
+        if (count == 0) {
+            // Only possible for a circle of zero radius on a cell boundary
+            seeds = GeoHashQuery.coveringCells(this.center, seedRadius, bits);
+            count = seeds.length;
+        }
+
+        // Coarsen the seeds until they fit into the budget
+        Arrays.sort(seeds, 0, count);
+        while (bits > 1 && countRuns(seeds, count) > maxRanges) {
+            int parents = 0;
+            for (int i = 0; i < count; i++) {
+                long parent = seeds[i] >>> 1;
+                if (parents == 0 || seeds[parents - 1] != parent) {
+                    seeds[parents++] = parent;
+                }
+            }
+            count = parents;
+            bits--;
+        }
+
+        PriorityQueue<Cell> queue = new PriorityQueue<>();
+        for (int i = 0; i < count; i++) {
+            this.addRange(seeds[i] << (GeoHash.MAX_PACKED_PRECISION_BITS - bits),
+                    (seeds[i] + 1) << (GeoHash.MAX_PACKED_PRECISION_BITS - bits));
+            this.enqueue(queue, seeds[i], bits);
+        }
+        int rangeCount = this.ranges.size();
+        double minArea = MIN_SPLIT_AREA * 2 * Math.PI * (1 - Math.cos(this.radius / Constants.EARTH_MEAN_RADIUS));
+
+        for (int splits = 0; splits < MAX_SPLITS && !queue.isEmpty() && queue.peek().area >= minArea; splits++) {
+            Cell cell = queue.poll();
+            long lower = cell.bits << 1;
+            long upper = lower | 1;
+            int childBits = cell.precisionBits + 1;
+            boolean keepLower = this.intersects(lower, childBits);
+            boolean keepUpper = this.intersects(upper, childBits);
+            if (!keepLower || !keepUpper) {
+                int shift = GeoHash.MAX_PACKED_PRECISION_BITS - childBits;
+                long start = keepLower ? upper << shift : lower << shift;
+                long end = keepUpper ? (lower + 1) << shift : (upper + 1) << shift;
+                if (rangeCount + this.removalDelta(start, end) > maxRanges) {
+                    continue;
+                }
+                rangeCount += this.removeRange(start, end);
+            }
+            if (keepLower) {
+                this.enqueue(queue, lower, childBits);
+            }
+            if (keepUpper) {
+                this.enqueue(queue, upper, childBits);
+            }
+        }
+
+        Set<GeoHashQuery> queries = new HashSet<>();
+        for (Map.Entry<Long, Long> range: this.ranges.entrySet()) {
+            queries.add(queryForRange(range.getKey(), range.getValue()));
+        }
+        return queries;
+    }
+
+    // Queues a cell for splitting if it is partially outside of the circle
+    private void enqueue(PriorityQueue<Cell> queue, long cell, int precisionBits) {
+        if (precisionBits < MAX_SPLIT_BITS && !this.isContained(cell, precisionBits)) {
+            GeoHash.decodeBounds(cell, precisionBits, this.bounds, 0);
+            double width = this.bounds[GeoHashBounds.MAX_LONGITUDE] - this.bounds[GeoHashBounds.MIN_LONGITUDE];
+            double area = Math.toRadians(width) * (Math.sin(Math.toRadians(this.bounds[GeoHashBounds.MAX_LATITUDE]))
+                    - Math.sin(Math.toRadians(this.bounds[GeoHashBounds.MIN_LATITUDE])));
+            queue.add(new Cell(cell, precisionBits, area));
+        }
+    }
+
+    private void addRange(long start, long end) {
+        Map.Entry<Long, Long> before = this.ranges.floorEntry(start);
+        if (before != null && before.getValue() == start) {
+            start = before.getKey();
+        }
+        Long after = this.ranges.remove(end);
+        this.ranges.put(start, (after != null) ? after : end);
+    }
+
+    // Returns the change in the number of ranges if [start, end) was removed from the ranges containing it
+    private int removalDelta(long start, long end) {
+        Map.Entry<Long, Long> range = this.ranges.floorEntry(start);
+        boolean left = range.getKey() < start;
+        boolean right = range.getValue() > end;
+        return (left && right) ? 1 : (left || right) ? 0 : -1;
+    }
+
+    private int removeRange(long start, long end) {
+        int delta = this.removalDelta(start, end);
+        Map.Entry<Long, Long> range = this.ranges.floorEntry(start);
+        this.ranges.remove(range.getKey());
+        if (range.getKey() < start) {
+            this.ranges.put(range.getKey(), start);
+        }
+        if (range.getValue() > end) {
+            this.ranges.put(end, range.getValue());
+        }
+        return delta;
+    }
+
+    private boolean intersects(long cell, int precisionBits) {
+        GeoHash.decodeBounds(cell, precisionBits, this.bounds, 0);
+        if (this.center.latitude >= this.bounds[GeoHashBounds.MIN_LATITUDE]
+                && this.center.latitude <= this.bounds[GeoHashBounds.MAX_LATITUDE]
+                && containsLongitude(this.center.longitude)) {
+            return true;
+        }
+        return this.extremeDistance(true) <= this.radius * (1 + DISTANCE_TOLERANCE);
+    }
+
+    private boolean isContained(long cell, int precisionBits) {
+        GeoHash.decodeBounds(cell, precisionBits, this.bounds, 0);
+        double antipodeLatitude = -this.center.latitude;
+        double antipodeLongitude = GeoUtils.wrapLongitude(this.center.longitude + 180);
+        if (antipodeLatitude >= this.bounds[GeoHashBounds.MIN_LATITUDE]
+                && antipodeLatitude <= this.bounds[GeoHashBounds.MAX_LATITUDE]
+                && containsLongitude(antipodeLongitude)) {
+            return false;
+        }
+        return this.extremeDistance(false) < this.radius * (1 - DISTANCE_TOLERANCE);
+    }
+
+    private boolean containsLongitude(double longitude) {
+        return longitude >= this.bounds[GeoHashBounds.MIN_LONGITUDE]
+                && longitude <= this.bounds[GeoHashBounds.MAX_LONGITUDE];
+    }
+
+    // Returns the smallest or largest distance from the center to the border of the decoded cell. On a parallel the
+    // extremes lie at the corners or at the longitude of the center or its antipode. On a meridian they lie at the
+    // corners or where the great circle through the center crosses it at a right angle.
+    private double extremeDistance(boolean nearest) {
+        double minLatitude = this.bounds[GeoHashBounds.MIN_LATITUDE];
+        double maxLatitude = this.bounds[GeoHashBounds.MAX_LATITUDE];
+        double minLongitude = this.bounds[GeoHashBounds.MIN_LONGITUDE];
+        double maxLongitude = this.bounds[GeoHashBounds.MAX_LONGITUDE];
+        double result = nearest ? Double.MAX_VALUE : 0;
+
+        double[] latitudes = { minLatitude, maxLatitude };
+        double[] longitudes = { minLongitude, maxLongitude, this.center.longitude,
+                GeoUtils.wrapLongitude(this.center.longitude + 180) };
+        for (double latitude: latitudes) {
+            for (int i = 0; i < longitudes.length; i++) {
+                if (i < 2 || containsLongitude(longitudes[i])) {
+                    result = extreme(nearest, result, latitude, longitudes[i]);
+                }
+            }
+        }
+
+        double centerLatitude = Math.toRadians(this.center.latitude);
+        for (int i = 0; i < 2; i++) {
+            double cosDelta = Math.cos(Math.toRadians(longitudes[i] - this.center.longitude));
+            double closest = Math.toDegrees(Math.atan2(Math.sin(centerLatitude), Math.cos(centerLatitude) * cosDelta));
+            double farthest = (closest > 0) ? closest - 180 : closest + 180;
+            result = extreme(nearest, result, clamp(closest, minLatitude, maxLatitude), longitudes[i]);
+            result = extreme(nearest, result, clamp(farthest, minLatitude, maxLatitude), longitudes[i]);
+        }
+        return result;
+    }
+
+    private double extreme(boolean nearest, double current, double latitude, double longitude) {
+        double distance = GeoUtils.distance(this.center.latitude, this.center.longitude, latitude, longitude);
+        return nearest ? Math.min(current, distance) : Math.max(current, distance);
+    }
+
+    private static double clamp(double value, double min, double max) {
+        return Math.max(min, Math.min(max, value));
+    }
+
+    private static int countRuns(long[] sortedCells, int count) {
+        int runs = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || sortedCells[i] > sortedCells[i - 1] + 1) {
+                runs++;
+            }
+        }
+        return runs;
+    }
+
+    // Returns the query for [start, end), with both bounds written at the precision of the largest aligned cell
+    private static GeoHashQuery queryForRange(long start, long end) {
+        int maxShift = GeoHash.MAX_PACKED_PRECISION_BITS - 1;
+        int startShift = Math.min(Long.numberOfTrailingZeros(start), maxShift);
+        int endShift = Math.min(Long.numberOfTrailingZeros(end), maxShift);
+        String startValue = GeoHashQuery.queryForBits(start >>> startShift,
+                GeoHash.MAX_PACKED_PRECISION_BITS - startShift).getStartValue();
+        String endValue = GeoHashQuery.queryForBits((end >>> endShift) - 1,
+                GeoHash.MAX_PACKED_PRECISION_BITS - endShift).getEndValue();
+        return new GeoHashQuery(startValue, endValue);
+    }
+
+    private static final class Cell implements Comparable<Cell> {
+        private final long bits;
+        private final int precisionBits;
+        private final double area;
+
+        Cell(long bits, int precisionBits, double area) {
+            this.bits = bits;
+            this.precisionBits = precisionBits;
+            this.area = area;
+        }
+
+        @Override
+        public int compareTo(Cell other) {
+            // Largest cells first
+            return Double.compare(other.area, this.area);
+        }
+    }
+}
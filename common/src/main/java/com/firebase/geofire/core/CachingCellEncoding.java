@@ -0,0 +1,193 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.core;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.GeoBoundingBox;
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.util.GeoUtils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A cell encoding that memoizes the query plans of another encoding in a bounded LRU cache.
+ *
+ * Plans are cached per snapping cell of the center and per radius bucket. A cached plan covers the circle of the
+ * largest radius of its bucket around every point of its snapping cell, so it is valid for all queries that map to
+ * it. Snapping cells are about a sixteenth of the radius wide and radius buckets grow by about 9%, which only
+ * slightly enlarges the covered area. Returned plans are immutable and shared between queries.
+ *
+ * This class is thread safe.
+ */
+public final class CachingCellEncoding implements CellEncoding {
+
+    // The number of radius buckets per doubling of the radius
+    private static final int BUCKETS_PER_OCTAVE = 8;
+
+    // The ratio between the radius and the size of the snapping cells
+    private static final double SNAP_FRACTION = 16;
+
+    // Plans for smaller radii are cached with this radius
+    private static final double MIN_RADIUS = 1;
+
+    private final CellEncoding delegate;
+    private final Map<PlanKey, Set<GeoHashQuery>> plans;
+    private long hitCount;
+    private long missCount;
+
+    /**
+     * Creates a new cache in front of an encoding.
+     *
+     * @param delegate The encoding to plan queries with
+     * @param maxSize The maximal number of cached plans
+     */
+    public CachingCellEncoding(@NonNull CellEncoding delegate, final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("The maximal size must be at least 1: " + maxSize);
+        }
+        this.delegate = delegate;
+        this.plans = new LinkedHashMap<PlanKey, Set<GeoHashQuery>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PlanKey, Set<GeoHashQuery>> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    @Override
+    public long encodeBits(double latitude, double longitude, int precisionBits) {
+        return this.delegate.encodeBits(latitude, longitude, precisionBits);
+    }
+
+    @Override
+    public void decodeBounds(long bits, int precisionBits, @NonNull double[] bounds, int offset) {
+        this.delegate.decodeBounds(bits, precisionBits, bounds, offset);
+    }
+
+    @NonNull
+    @Override
+    public Set<GeoHashQuery> queriesAtLocation(@NonNull GeoLocation center, double radius) {
+        int bucket = (int) Math.ceil(Math.log(Math.max(radius, MIN_RADIUS)) / Math.log(2) * BUCKETS_PER_OCTAVE);
+        double bucketRadius = Math.pow(2, (double) bucket / BUCKETS_PER_OCTAVE);
+        int snapBits = Math.max(1, Math.min(GeoHash.MAX_PACKED_PRECISION_BITS,
+                GeoHashQuery.Utils.bitsForBoundingBox(center, bucketRadius / SNAP_FRACTION)));
+        long cell = GeoHash.encodeBits(center.latitude, center.longitude, snapBits);
+        PlanKey key = new PlanKey(cell, snapBits, bucket);
+
+        synchronized (this) {
+            Set<GeoHashQuery> plan = this.plans.get(key);
+            if (plan != null) {
+                this.hitCount++;
+                return plan;
+            }
+            this.missCount++;
+        }
+
+        // Every circle of the bucket around a point of the cell lies within this circle around the cell center
+        double[] bounds = new double[4];
+        GeoHash.decodeBounds(cell, snapBits, bounds, 0);
+        double centerLatitude = (bounds[GeoHashBounds.MIN_LATITUDE] + bounds[GeoHashBounds.MAX_LATITUDE]) / 2;
+        double centerLongitude = (bounds[GeoHashBounds.MIN_LONGITUDE] + bounds[GeoHashBounds.MAX_LONGITUDE]) / 2;
+        double slack = 0;
+        for (int latitudeIndex = GeoHashBounds.MIN_LATITUDE; latitudeIndex <= GeoHashBounds.MAX_LATITUDE;
+             latitudeIndex += 2) {
+            for (int longitudeIndex = GeoHashBounds.MIN_LONGITUDE; longitudeIndex <= GeoHashBounds.MAX_LONGITUDE;
+                 longitudeIndex += 2) {
+                slack = Math.max(slack, GeoUtils.distance(centerLatitude, centerLongitude,
+                        bounds[latitudeIndex], bounds[longitudeIndex]));
+            }
+        }
+        Set<GeoHashQuery> plan = Collections.unmodifiableSet(this.delegate.queriesAtLocation(
+                new GeoLocation(centerLatitude, centerLongitude), bucketRadius + slack));
+
+        synchronized (this) {
+            this.plans.put(key, plan);
+        }
+        return plan;
+    }
+
+    /**
+     * Bounding boxes are not cached, they are planned by the wrapped encoding.
+     */
+    @NonNull
+    @Override
+    public Set<GeoHashQuery> queriesInBoundingBox(@NonNull GeoBoundingBox boundingBox) {
+        return this.delegate.queriesInBoundingBox(boundingBox);
+    }
+
+    /**
+     * @return The number of plans that were returned from the cache
+     */
+    public synchronized long getHitCount() {
+        return this.hitCount;
+    }
+
+    /**
+     * @return The number of plans that had to be computed
+     */
+    public synchronized long getMissCount() {
+        return this.missCount;
+    }
+
+    /**
+     * @return The number of plans currently in the cache
+     */
+    public synchronized int size() {
+        return this.plans.size();
+    }
+
+    /**
+     * Removes all plans from the cache and resets the counters.
+     */
+    public synchronized void clear() {
+        this.plans.clear();
+        this.hitCount = 0;
+        this.missCount = 0;
+    }
+
+    private static final class PlanKey {
+        private final long cell;
+        private final int precisionBits;
+        private final int bucket;
+
+        PlanKey(long cell, int precisionBits, int bucket) {
+            this.cell = cell;
+            this.precisionBits = precisionBits;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            PlanKey that = (PlanKey) o;
+            return this.cell == that.cell && this.precisionBits == that.precisionBits && this.bucket == that.bucket;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = (int) (cell ^ (cell >>> 32));
+            result = 31 * result + precisionBits;
+            result = 31 * result + bucket;
+            return result;
+        }
+    }
+}
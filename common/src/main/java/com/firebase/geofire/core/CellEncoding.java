@@ -0,0 +1,73 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.core;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.GeoBoundingBox;
+import com.firebase.geofire.GeoLocation;
+
+import java.util.Set;
+
+/**
+ * A strategy that maps locations onto a space-filling curve of cells. Locations are stored under the Base32 key of
+ * their cell, see {@link GeoHash#fromBits(long, int)}, and every cell of the curve covers a contiguous range of
+ * keys, so an area can be queried as a set of key ranges.
+ *
+ * All clients reading and writing the same data must use the same encoding.
+ */
+public interface CellEncoding {
+
+    /**
+     * Encodes a location into the bits of its cell key, with the first bit of the key as the most significant bit.
+     *
+     * @param latitude The latitude in the range of [-90, 90]
+     * @param longitude The longitude in the range of [-180, 180]
+     * @param precisionBits The number of bits between 1 and GeoHash.MAX_PACKED_PRECISION_BITS
+     * @return The right aligned bits of the key
+     */
+    long encodeBits(double latitude, double longitude, int precisionBits);
+
+    /**
+     * Decodes the cell of key bits into [minLatitude, minLongitude, maxLatitude, maxLongitude] at the given
+     * offset, see {@link GeoHashBounds}.
+     *
+     * @param bits The right aligned bits of the key
+     * @param precisionBits The number of bits between 0 and GeoHash.MAX_PACKED_PRECISION_BITS
+     * @param bounds The array to write the four bounds into
+     * @param offset The index of the first bound to write
+     */
+    void decodeBounds(long bits, int precisionBits, @NonNull double[] bounds, int offset);
+
+    /**
+     * Returns the key ranges that together cover all locations within a circle.
+     *
+     * @param center The center of the circle
+     * @param radius The radius of the circle, in meters
+     * @return The key ranges
+     */
+    @NonNull
+    Set<GeoHashQuery> queriesAtLocation(@NonNull GeoLocation center, double radius);
+
+    /**
+     * Returns the key ranges that together cover all locations within a bounding box.
+     *
+     * @param boundingBox The bounding box, which may cross the 180th meridian
+     * @return The key ranges
+     */
+    @NonNull
+    Set<GeoHashQuery> queriesInBoundingBox(@NonNull GeoBoundingBox boundingBox);
+}
@@ -20,13 +20,23 @@ import androidx.annotation.NonNull;
 import com.firebase.geofire.GeoLocation;
 import com.firebase.geofire.util.Base32Utils;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+
 import static java.util.Locale.US;
 
 public class GeoHash {
-    private final String geoHash;
+    // The interleaved geohash bits, right aligned. Only set for hashes of up to MAX_PACKED_PRECISION characters.
+    private final long bits;
+
+    // The number of significant bits in this geohash
+    private final int precisionBits;
+
+    // The Base32 representation, computed lazily for packed hashes. Racing threads compute the same value.
+    private String geoHash;
 
     // The default precision of a geohash
-    private static final int DEFAULT_PRECISION = 10;
+    static final int DEFAULT_PRECISION = 10;
 
     // The maximal precision of a geohash
     public static final int MAX_PRECISION = 22;
@@ -34,6 +44,19 @@ public class GeoHash {
     // The maximal number of bits precision for a geohash
     public static final int MAX_PRECISION_BITS = MAX_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
 
+    // The maximal precision of a geohash that can be held in a single long
+    public static final int MAX_PACKED_PRECISION = 12;
+
+    // The maximal number of bits of a geohash that can be held in a single long
+    public static final int MAX_PACKED_PRECISION_BITS = MAX_PACKED_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
+
+    // The number of bits each coordinate is quantized to before interleaving
+    private static final int COORDINATE_BITS = 32;
+
+    private static final double COORDINATE_CELLS = 4294967296.0; // 2^32
+
+    private static final long MAX_COORDINATE_CELL = 0xFFFFFFFFL;
+
     /**
      * Convert a GeoHash string back into a GeoLocation.
      *
@@ -41,99 +64,553 @@ public class GeoHash {
      */
     @NonNull
     public static GeoLocation locationFromHash(@NonNull String hashString) {
-        long decoded = 0;
-        long numBits = hashString.length() * Base32Utils.BITS_PER_BASE32_CHAR;
+        double[] bounds = new double[4];
+        decodeBoundsUnchecked(hashString, bounds, 0);
+
+        double lat = (bounds[GeoHashBounds.MIN_LATITUDE] + bounds[GeoHashBounds.MAX_LATITUDE]) / 2;
+        double lng = (bounds[GeoHashBounds.MIN_LONGITUDE] + bounds[GeoHashBounds.MAX_LONGITUDE]) / 2;
+
+        return new GeoLocation(lat, lng);
+    }
 
-        for (int i = 0; i < hashString.length(); i++) {
-            int charVal = Base32Utils.base32CharToValue(hashString.charAt(i));
-            decoded = decoded << Base32Utils.BITS_PER_BASE32_CHAR;
-            decoded = decoded + charVal;
+    /**
+     * Decodes the cell of a GeoHash string into [minLatitude, minLongitude, maxLatitude, maxLongitude].
+     *
+     * @throws IllegalArgumentException If the hash is not a valid base 32 string
+     * @param hash The geohash to decode
+     * @param bounds The array to write the four bounds into
+     */
+    public static void decodeBounds(@NonNull CharSequence hash, @NonNull double[] bounds) {
+        if (bounds.length < 4) {
+            throw new IllegalArgumentException("Bounds array must have a length of at least 4");
         }
+        decodeBoundsUnchecked(hash, bounds, 0);
+    }
 
-        double minLng = -180;
-        double maxLng = 180;
+    /**
+     * Decodes the cell of a GeoHash string into a reusable bounds holder.
+     *
+     * @throws IllegalArgumentException If the hash is not a valid base 32 string
+     * @param hash The geohash to decode
+     * @param bounds The holder to write the bounds into
+     */
+    public static void decodeBounds(@NonNull CharSequence hash, @NonNull GeoHashBounds bounds) {
+        decodeBoundsUnchecked(hash, bounds.values, 0);
+    }
 
-        double minLat = -90;
-        double maxLat = 90;
+    /**
+     * Decodes the cell of interleaved geohash bits, see {@link #getBits()}, into
+     * [minLatitude, minLongitude, maxLatitude, maxLongitude] at the given offset. The number of bits does not
+     * need to be a multiple of 5.
+     *
+     * @param bits The right aligned geohash bits
+     * @param precisionBits The number of bits between 0 and MAX_PACKED_PRECISION_BITS
+     * @param bounds The array to write the four bounds into
+     * @param offset The index of the first bound to write
+     */
+    public static void decodeBounds(long bits, int precisionBits, @NonNull double[] bounds, int offset) {
+        if (precisionBits < 0 || precisionBits > MAX_PACKED_PRECISION_BITS) {
+            throw new IllegalArgumentException("Not a valid number of geohash bits: " + precisionBits);
+        }
+        decodeBitsUnchecked(bits, precisionBits, bounds, offset);
+    }
 
-        for (int i = 0; i < numBits; i++) {
-            // Get the high bit
-            long bit = (decoded >> (numBits - i - 1)) & 1;
+    static void decodeBoundsUnchecked(CharSequence hash, double[] bounds, int offset) {
+        int headChars = Math.min(hash.length(), MAX_PACKED_PRECISION);
+        long head = 0;
+        for (int i = 0; i < headChars; i++) {
+            head = (head << Base32Utils.BITS_PER_BASE32_CHAR) | Base32Utils.base32CharToValue(hash.charAt(i));
+        }
+        decodeBitsUnchecked(head, headChars * Base32Utils.BITS_PER_BASE32_CHAR, bounds, offset);
+        if (hash.length() == headChars) {
+            return;
+        }
 
-            // Even bits are longitude, odd bits are latitude
-            if (i % 2 == 0) {
-                if (bit == 1) {
-                    minLng = (minLng + maxLng) / 2;
-                } else {
-                    maxLng = (minLng + maxLng) / 2;
-                }
-            } else {
-                if (bit == 1) {
-                    minLat = (minLat + maxLat) / 2;
+        double minLat = bounds[offset + GeoHashBounds.MIN_LATITUDE];
+        double minLng = bounds[offset + GeoHashBounds.MIN_LONGITUDE];
+        double maxLat = bounds[offset + GeoHashBounds.MAX_LATITUDE];
+        double maxLng = bounds[offset + GeoHashBounds.MAX_LONGITUDE];
+        for (int i = headChars; i < hash.length(); i++) {
+            int value = Base32Utils.base32CharToValue(hash.charAt(i));
+            for (int j = Base32Utils.BITS_PER_BASE32_CHAR - 1; j >= 0; j--) {
+                int bit = (value >> j) & 1;
+                // Even bits are longitude, odd bits are latitude
+                if (((i * Base32Utils.BITS_PER_BASE32_CHAR) + (Base32Utils.BITS_PER_BASE32_CHAR - 1 - j)) % 2 == 0) {
+                    if (bit == 1) {
+                        minLng = (minLng + maxLng) / 2;
+                    } else {
+                        maxLng = (minLng + maxLng) / 2;
+                    }
                 } else {
-                    maxLat = (minLat + maxLat) / 2;
+                    if (bit == 1) {
+                        minLat = (minLat + maxLat) / 2;
+                    } else {
+                        maxLat = (minLat + maxLat) / 2;
+                    }
                 }
             }
         }
+        bounds[offset + GeoHashBounds.MIN_LATITUDE] = minLat;
+        bounds[offset + GeoHashBounds.MIN_LONGITUDE] = minLng;
+        bounds[offset + GeoHashBounds.MAX_LATITUDE] = maxLat;
+        bounds[offset + GeoHashBounds.MAX_LONGITUDE] = maxLng;
+    }
 
-        double lat = (minLat + maxLat) / 2;
-        double lng = (minLng + maxLng) / 2;
+    static void decodeBitsUnchecked(long bits, int precisionBits, double[] bounds, int offset) {
+        // The first bit is a longitude bit, so longitude gets the extra bit of an odd precision
+        int lngBits = (precisionBits + 1) / 2;
+        int latBits = precisionBits / 2;
+        long aligned = (precisionBits == 0) ? 0 : bits << (Long.SIZE - precisionBits);
+        long lngCell = compact(aligned >>> 1) >>> (COORDINATE_BITS - lngBits);
+        long latCell = compact(aligned) >>> (COORDINATE_BITS - latBits);
 
-        return new GeoLocation(lat, lng);
+        // Cell bounds are multiples of a power of two fraction of the range, so they are computed exactly
+        double lngStep = 360 / (double) (1L << lngBits);
+        double latStep = 180 / (double) (1L << latBits);
+        double minLng = -180 + lngCell * lngStep;
+        double minLat = -90 + latCell * latStep;
+        bounds[offset + GeoHashBounds.MIN_LATITUDE] = minLat;
+        bounds[offset + GeoHashBounds.MIN_LONGITUDE] = minLng;
+        bounds[offset + GeoHashBounds.MAX_LATITUDE] = minLat + latStep;
+        bounds[offset + GeoHashBounds.MAX_LONGITUDE] = minLng + lngStep;
     }
 
-    public GeoHash(double latitude, double longitude) {
-        this(latitude, longitude, DEFAULT_PRECISION);
+    /**
+     * Encodes a location into the interleaved bits of a geohash without allocating. The first geohash bit (a
+     * longitude bit) is the most significant of the returned bits. Coordinates are not validated.
+     *
+     * @param latitude The latitude in the range of [-90, 90]
+     * @param longitude The longitude in the range of [-180, 180]
+     * @param precisionBits The number of bits to encode, between 1 and MAX_PACKED_PRECISION_BITS
+     * @return The right aligned geohash bits
+     */
+    public static long encodeBits(double latitude, double longitude, int precisionBits) {
+        long interleaved = (spread(quantize(longitude, -180, 360)) << 1) | spread(quantize(latitude, -90, 180));
+        return interleaved >>> (2 * COORDINATE_BITS - precisionBits);
     }
 
-    public GeoHash(GeoLocation location) {
-        this(location.latitude, location.longitude, DEFAULT_PRECISION);
+    /**
+     * Maps a coordinate onto one of 2^32 cells. Like the classic bisection a value exactly on a cell boundary
+     * belongs to the lower cell, and the estimate is corrected against the exact cell bounds so rounding in the
+     * division can never pick a different cell than bisection would.
+     */
+    static long quantize(double value, double min, double range) {
+        double step = range / COORDINATE_CELLS;
+        long cell = (long) Math.ceil((value - min) / step) - 1;
+        if (cell < 0) {
+            return 0;
+        }
+        if (cell > MAX_COORDINATE_CELL) {
+            return MAX_COORDINATE_CELL;
+        }
+        // min + cell * step is exact: it needs fewer than 53 significant bits
+        double lower = min + cell * step;
+        if (value <= lower && cell > 0) {
+            cell--;
+        } else if (value > lower + step && cell < MAX_COORDINATE_CELL) {
+            cell++;
+        }
+        return cell;
     }
 
-    public GeoHash(double latitude, double longitude, int precision) {
+    // Spreads the lower 32 bits of value to the even bit positions of a long
+    private static long spread(long value) {
+        long x = value & 0xFFFFFFFFL;
+        x = (x | (x << 16)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x << 8)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x << 2)) & 0x3333333333333333L;
+        x = (x | (x << 1)) & 0x5555555555555555L;
+        return x;
+    }
+
+    // Gathers the even bit positions of a long into the lower 32 bits, the inverse of spread
+    private static long compact(long value) {
+        long x = value & 0x5555555555555555L;
+        x = (x | (x >>> 1)) & 0x3333333333333333L;
+        x = (x | (x >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        x = (x | (x >>> 4)) & 0x00FF00FF00FF00FFL;
+        x = (x | (x >>> 8)) & 0x0000FFFF0000FFFFL;
+        x = (x | (x >>> 16)) & 0x00000000FFFFFFFFL;
+        return x;
+    }
+
+    /**
+     * Returns the bits of a cell adjacent to the given cell, in constant time. Longitude wraps around the
+     * antimeridian, latitude does not wrap around the poles. The number of bits does not need to be a multiple of 5.
+     *
+     * @param bits The right aligned geohash bits
+     * @param precisionBits The number of bits between 0 and MAX_PACKED_PRECISION_BITS
+     * @param latitudeDirection 1 for the northern neighbor, -1 for the southern neighbor or 0
+     * @param longitudeDirection 1 for the eastern neighbor, -1 for the western neighbor or 0
+     * @return The bits of the neighbor, or -1 if the neighbor would lie beyond a pole
+     */
+    public static long neighborBits(long bits, int precisionBits, int latitudeDirection, int longitudeDirection) {
+        if (precisionBits < 0 || precisionBits > MAX_PACKED_PRECISION_BITS) {
+            throw new IllegalArgumentException("Not a valid number of geohash bits: " + precisionBits);
+        }
+        if (Math.abs(latitudeDirection) > 1 || Math.abs(longitudeDirection) > 1) {
+            throw new IllegalArgumentException("Directions must be -1, 0 or 1: "
+                    + latitudeDirection + ", " + longitudeDirection);
+        }
+        // The last bit is a longitude bit for odd precisions and a latitude bit for even ones
+        long allMask = (1L << precisionBits) - 1;
+        long lngMask = ((precisionBits % 2 == 1) ? 0x5555555555555555L : 0xAAAAAAAAAAAAAAAAL) & allMask;
+        long latMask = allMask & ~lngMask;
+
+        long result = bits;
+        if (latitudeDirection != 0) {
+            long lat = result & latMask;
+            if ((latitudeDirection > 0) ? lat == latMask : lat == 0) {
+                return -1;
+            }
+            result = stepMasked(result, latMask, latitudeDirection);
+        }
+        if (longitudeDirection != 0) {
+            result = stepMasked(result, lngMask, longitudeDirection);
+        }
+        return result;
+    }
+
+    // Adds direction to the coordinate spread over the mask bits, leaving the other coordinate untouched
+    private static long stepMasked(long bits, long mask, int direction) {
+        long stepped;
+        if (direction > 0) {
+            // Setting the bits outside the mask lets the carry ripple through them
+            stepped = ((bits | ~mask) + 1) & mask;
+        } else {
+            stepped = ((bits & mask) - 1) & mask;
+        }
+        return stepped | (bits & ~mask);
+    }
+
+    /**
+     * Encodes the bits of a geohash that follow the first MAX_PACKED_PRECISION_BITS, continuing the bisection
+     * from the exact bounds of the packed cell.
+     */
+    private static long encodeTailBits(double latitude, double longitude, int tailBits) {
+        int headBitsPerCoordinate = MAX_PACKED_PRECISION_BITS / 2;
+        double lngStep = 360 / (double) (1L << headBitsPerCoordinate);
+        double latStep = 180 / (double) (1L << headBitsPerCoordinate);
+        int unusedBits = COORDINATE_BITS - headBitsPerCoordinate;
+        double minLng = -180 + (quantize(longitude, -180, 360) >>> unusedBits) * lngStep;
+        double maxLng = minLng + lngStep;
+        double minLat = -90 + (quantize(latitude, -90, 180) >>> unusedBits) * latStep;
+        double maxLat = minLat + latStep;
+
+        long tail = 0;
+        for (int i = 0; i < tailBits; i++) {
+            // MAX_PACKED_PRECISION_BITS is even, so the tail starts with a longitude bit
+            if (i % 2 == 0) {
+                double mid = (minLng + maxLng) / 2;
+                if (longitude > mid) {
+                    tail = (tail << 1) | 1;
+                    minLng = mid;
+                } else {
+                    tail = tail << 1;
+                    maxLng = mid;
+                }
+            } else {
+                double mid = (minLat + maxLat) / 2;
+                if (latitude > mid) {
+                    tail = (tail << 1) | 1;
+                    minLat = mid;
+                } else {
+                    tail = tail << 1;
+                    maxLat = mid;
+                }
+            }
+        }
+        return tail;
+    }
+
+    static void checkPrecision(int precision) {
         if (precision < 1) {
             throw new IllegalArgumentException("Precision of GeoHash must be larger than zero!");
         }
         if (precision > MAX_PRECISION) {
             throw new IllegalArgumentException("Precision of a GeoHash must be less than " + (MAX_PRECISION + 1) + "!");
         }
+    }
+
+    static void checkCoordinates(double latitude, double longitude) {
         if (!GeoLocation.coordinatesValid(latitude, longitude)) {
             throw new IllegalArgumentException(String.format(US, "Not valid location coordinates: [%f, %f]", latitude, longitude));
         }
-        double[] longitudeRange = { -180, 180 };
-        double[] latitudeRange = { -90, 90 };
+    }
+
+    // Returns the Base32 value of character index of a geohash split into a packed head and a tail
+    private static int charValue(long head, int headChars, long tail, int precision, int index) {
+        if (index < headChars) {
+            return (int) ((head >>> ((headChars - 1 - index) * Base32Utils.BITS_PER_BASE32_CHAR)) & 0x1F);
+        }
+        return (int) ((tail >>> ((precision - 1 - index) * Base32Utils.BITS_PER_BASE32_CHAR)) & 0x1F);
+    }
 
-        char[] buffer = new char[precision];
+    /**
+     * Writes the geohash of a location into a char array without allocating.
+     *
+     * @throws IllegalArgumentException If the precision or coordinates are not valid
+     * @throws IndexOutOfBoundsException If the geohash does not fit into the array at the given offset
+     * @param latitude The latitude in the range of [-90, 90]
+     * @param longitude The longitude in the range of [-180, 180]
+     * @param precision The precision between 1 and MAX_PRECISION
+     * @param buffer The array to write the geohash into
+     * @param offset The index of the first character to write
+     * @return The number of characters written, which is the precision
+     */
+    public static int encode(double latitude, double longitude, int precision, @NonNull char[] buffer, int offset) {
+        checkPrecision(precision);
+        checkCoordinates(latitude, longitude);
+        if (offset < 0 || offset > buffer.length - precision) {
+            throw new IndexOutOfBoundsException("GeoHash of precision " + precision + " does not fit at offset "
+                    + offset + " of a buffer of length " + buffer.length);
+        }
+        encodeUnchecked(latitude, longitude, precision, buffer, offset);
+        return precision;
+    }
 
+    // Same as encode, for callers that validated the precision, coordinates and buffer themselves
+    static void encodeUnchecked(double latitude, double longitude, int precision, char[] buffer, int offset) {
+        int headChars = Math.min(precision, MAX_PACKED_PRECISION);
+        long head = encodeBits(latitude, longitude, headChars * Base32Utils.BITS_PER_BASE32_CHAR);
+        long tail = (precision > headChars)
+                ? encodeTailBits(latitude, longitude, (precision - headChars) * Base32Utils.BITS_PER_BASE32_CHAR) : 0;
         for (int i = 0; i < precision; i++) {
-            int hashValue = 0;
-            for (int j = 0; j < Base32Utils.BITS_PER_BASE32_CHAR; j++) {
-                boolean even = (((i*Base32Utils.BITS_PER_BASE32_CHAR) + j) % 2) == 0;
-                double val = even ? longitude : latitude;
-                double[] range = even ? longitudeRange : latitudeRange;
-                double mid = (range[0] + range[1])/2;
-                if (val > mid) {
-                    hashValue = (hashValue << 1) + 1;
-                    range[0] = mid;
-                } else {
-                    hashValue = hashValue << 1;
-                    range[1] = mid;
-                }
-            }
-            buffer[i] = Base32Utils.valueToBase32Char(hashValue);
+            buffer[offset + i] = Base32Utils.valueToBase32Char(charValue(head, headChars, tail, precision, i));
+        }
+    }
+
+    /**
+     * Appends the geohash of a location to a StringBuilder without allocating intermediate objects.
+     *
+     * @throws IllegalArgumentException If the precision or coordinates are not valid
+     * @param latitude The latitude in the range of [-90, 90]
+     * @param longitude The longitude in the range of [-180, 180]
+     * @param precision The precision between 1 and MAX_PRECISION
+     * @param builder The builder to append the geohash to
+     * @return The number of characters appended, which is the precision
+     */
+    public static int encode(double latitude, double longitude, int precision, @NonNull StringBuilder builder) {
+        checkPrecision(precision);
+        checkCoordinates(latitude, longitude);
+        int headChars = Math.min(precision, MAX_PACKED_PRECISION);
+        long head = encodeBits(latitude, longitude, headChars * Base32Utils.BITS_PER_BASE32_CHAR);
+        long tail = (precision > headChars)
+                ? encodeTailBits(latitude, longitude, (precision - headChars) * Base32Utils.BITS_PER_BASE32_CHAR) : 0;
+        for (int i = 0; i < precision; i++) {
+            builder.append(Base32Utils.valueToBase32Char(charValue(head, headChars, tail, precision, i)));
+        }
+        return precision;
+    }
+
+    /**
+     * Writes the geohash of a location as ASCII bytes at the current position of a ByteBuffer, advancing the
+     * position.
+     *
+     * @throws IllegalArgumentException If the precision or coordinates are not valid
+     * @throws java.nio.BufferOverflowException If the geohash does not fit into the remaining buffer
+     * @param latitude The latitude in the range of [-90, 90]
+     * @param longitude The longitude in the range of [-180, 180]
+     * @param precision The precision between 1 and MAX_PRECISION
+     * @param buffer The buffer to write the geohash into
+     * @return The number of bytes written, which is the precision
+     */
+    public static int encode(double latitude, double longitude, int precision, @NonNull ByteBuffer buffer) {
+        checkPrecision(precision);
+        checkCoordinates(latitude, longitude);
+        if (buffer.remaining() < precision) {
+            throw new BufferOverflowException();
+        }
+        int headChars = Math.min(precision, MAX_PACKED_PRECISION);
+        long head = encodeBits(latitude, longitude, headChars * Base32Utils.BITS_PER_BASE32_CHAR);
+        long tail = (precision > headChars)
+                ? encodeTailBits(latitude, longitude, (precision - headChars) * Base32Utils.BITS_PER_BASE32_CHAR) : 0;
+        for (int i = 0; i < precision; i++) {
+            buffer.put((byte) Base32Utils.valueToBase32Char(charValue(head, headChars, tail, precision, i)));
+        }
+        return precision;
+    }
+
+    /**
+     * Creates a GeoHash from its interleaved bits, as returned by {@link #getBits()}.
+     *
+     * @param bits The right aligned geohash bits
+     * @param precisionBits The number of bits, a multiple of 5 no larger than MAX_PACKED_PRECISION_BITS
+     * @return The new GeoHash
+     */
+    @NonNull
+    public static GeoHash fromBits(long bits, int precisionBits) {
+        if (precisionBits < Base32Utils.BITS_PER_BASE32_CHAR || precisionBits > MAX_PACKED_PRECISION_BITS
+                || precisionBits % Base32Utils.BITS_PER_BASE32_CHAR != 0) {
+            throw new IllegalArgumentException("Not a valid number of geohash bits: " + precisionBits);
+        }
+        if ((bits >>> precisionBits) != 0) {
+            throw new IllegalArgumentException("GeoHash bits exceed " + precisionBits + " bits: " + bits);
+        }
+        return new GeoHash(bits, precisionBits, null);
+    }
+
+    private GeoHash(long bits, int precisionBits, String geoHash) {
+        this.bits = bits;
+        this.precisionBits = precisionBits;
+        this.geoHash = geoHash;
+    }
+
+    public GeoHash(double latitude, double longitude) {
+        this(latitude, longitude, DEFAULT_PRECISION);
+    }
+
+    public GeoHash(GeoLocation location) {
+        this(location.latitude, location.longitude, DEFAULT_PRECISION);
+    }
+
+    public GeoHash(double latitude, double longitude, int precision) {
+        checkPrecision(precision);
+        checkCoordinates(latitude, longitude);
+        this.precisionBits = precision * Base32Utils.BITS_PER_BASE32_CHAR;
+        if (precision <= MAX_PACKED_PRECISION) {
+            this.bits = encodeBits(latitude, longitude, this.precisionBits);
+            this.geoHash = null;
+        } else {
+            char[] buffer = new char[precision];
+            encode(latitude, longitude, precision, buffer, 0);
+            this.bits = 0;
+            this.geoHash = new String(buffer);
         }
-        this.geoHash = new String(buffer);
     }
 
     public GeoHash(String hash) {
         if (hash.length() == 0 || !Base32Utils.isValidBase32String(hash)) {
             throw new IllegalArgumentException("Not a valid geoHash: " + hash);
         }
+        this.bits = (hash.length() <= MAX_PACKED_PRECISION) ? Base32Utils.base32StringToBits(hash) : 0;
+        this.precisionBits = hash.length() * Base32Utils.BITS_PER_BASE32_CHAR;
         this.geoHash = hash;
     }
 
+    private boolean isPacked() {
+        return this.precisionBits <= MAX_PACKED_PRECISION_BITS;
+    }
+
     public String getGeoHashString() {
-        return this.geoHash;
+        String hash = this.geoHash;
+        if (hash == null) {
+            int precision = this.precisionBits / Base32Utils.BITS_PER_BASE32_CHAR;
+            char[] buffer = new char[precision];
+            for (int i = precision - 1, shift = 0; i >= 0; i--, shift += Base32Utils.BITS_PER_BASE32_CHAR) {
+                buffer[i] = Base32Utils.valueToBase32Char((int) ((this.bits >>> shift) & 0x1F));
+            }
+            hash = new String(buffer);
+            this.geoHash = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * Returns the interleaved bits of this geohash, right aligned, with the first geohash bit as the most
+     * significant bit.
+     *
+     * @throws IllegalStateException If this geohash is longer than MAX_PACKED_PRECISION characters
+     * @return The geohash bits
+     */
+    public long getBits() {
+        if (!isPacked()) {
+            throw new IllegalStateException("GeoHash with " + this.precisionBits + " bits does not fit in a long");
+        }
+        return this.bits;
+    }
+
+    /**
+     * @return The number of significant bits of this geohash
+     */
+    public int getPrecisionBits() {
+        return this.precisionBits;
+    }
+
+    /**
+     * @return The number of characters of this geohash
+     */
+    public int getPrecision() {
+        return this.precisionBits / Base32Utils.BITS_PER_BASE32_CHAR;
+    }
+
+    /**
+     * Returns an adjacent geohash of the same precision.
+     *
+     * @throws IllegalStateException If this geohash is longer than MAX_PACKED_PRECISION characters
+     * @param latitudeDirection 1 for north, -1 for south or 0
+     * @param longitudeDirection 1 for east, -1 for west or 0
+     * @return The neighbor, or null if it would lie beyond a pole
+     */
+    public GeoHash getNeighbor(int latitudeDirection, int longitudeDirection) {
+        long neighbor = neighborBits(getBits(), this.precisionBits, latitudeDirection, longitudeDirection);
+        return (neighbor == -1) ? null : new GeoHash(neighbor, this.precisionBits, null);
+    }
+
+    /**
+     * Returns the 8 adjacent geohashes of the same precision, in the order north, north east, east, south east,
+     * south, south west, west and north west. Neighbors that would lie beyond a pole are null.
+     *
+     * @throws IllegalStateException If this geohash is longer than MAX_PACKED_PRECISION characters
+     * @return The neighbors
+     */
+    @NonNull
+    public GeoHash[] getNeighbors() {
+        return new GeoHash[] {
+                getNeighbor(1, 0), getNeighbor(1, 1), getNeighbor(0, 1), getNeighbor(-1, 1),
+                getNeighbor(-1, 0), getNeighbor(-1, -1), getNeighbor(0, -1), getNeighbor(1, -1)
+        };
+    }
+
+    /**
+     * @throws IllegalStateException If this geohash has a precision of 1
+     * @return The geohash one character shorter that contains this geohash
+     */
+    @NonNull
+    public GeoHash getParent() {
+        if (this.precisionBits == Base32Utils.BITS_PER_BASE32_CHAR) {
+            throw new IllegalStateException("A GeoHash of precision 1 has no parent");
+        }
+        int parentBits = this.precisionBits - Base32Utils.BITS_PER_BASE32_CHAR;
+        if (isPacked()) {
+            return new GeoHash(this.bits >>> Base32Utils.BITS_PER_BASE32_CHAR, parentBits, null);
+        }
+        return new GeoHash(this.geoHash.substring(0, parentBits / Base32Utils.BITS_PER_BASE32_CHAR));
+    }
+
+    /**
+     * @throws IllegalStateException If this geohash has a precision of MAX_PRECISION
+     * @return The 32 geohashes one character longer that are contained in this geohash, in sort order
+     */
+    @NonNull
+    public GeoHash[] getChildren() {
+        if (this.precisionBits == MAX_PRECISION_BITS) {
+            throw new IllegalStateException("A GeoHash of precision " + MAX_PRECISION + " has no children");
+        }
+        int childBits = this.precisionBits + Base32Utils.BITS_PER_BASE32_CHAR;
+        GeoHash[] children = new GeoHash[1 << Base32Utils.BITS_PER_BASE32_CHAR];
+        for (int i = 0; i < children.length; i++) {
+            if (childBits <= MAX_PACKED_PRECISION_BITS) {
+                children[i] = new GeoHash((this.bits << Base32Utils.BITS_PER_BASE32_CHAR) | i, childBits, null);
+            } else {
+                children[i] = new GeoHash(getGeoHashString() + Base32Utils.valueToBase32Char(i));
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Writes the bounds of the cell of this geohash into a reusable holder.
+     *
+     * @param bounds The holder to write the bounds into
+     */
+    public void getBounds(@NonNull GeoHashBounds bounds) {
+        if (isPacked()) {
+            decodeBitsUnchecked(this.bits, this.precisionBits, bounds.values, 0);
+        } else {
+            decodeBoundsUnchecked(this.geoHash, bounds.values, 0);
+        }
     }
 
     @Override
@@ -143,18 +620,26 @@ public class GeoHash {
 
         GeoHash other = (GeoHash) o;
 
+        if (this.precisionBits != other.precisionBits) return false;
+        if (this.isPacked()) {
+            return this.bits == other.bits;
+        }
         return this.geoHash.equals(other.geoHash);
     }
 
     @Override
     public String toString() {
         return "GeoHash{" +
-                "geoHash='" + geoHash + '\'' +
+                "geoHash='" + getGeoHashString() + '\'' +
                 '}';
     }
 
     @Override
     public int hashCode() {
+        if (this.isPacked()) {
+            int result = (int) (this.bits ^ (this.bits >>> 32));
+            return 31 * result + this.precisionBits;
+        }
         return this.geoHash.hashCode();
     }
 }
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.core;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.util.Base32Utils;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Encodes many locations held in primitive arrays into geohashes at once, and decodes geohashes back into
+ * primitive arrays.
+ *
+ * Coordinates are either given as two parallel arrays of latitudes and longitudes, or as one interleaved array of
+ * [lat0, lng0, lat1, lng1, ...]. All coordinates are validated in a single pass before anything is encoded, and an
+ * IllegalArgumentException names the first invalid one.
+ */
+public final class GeoHashBatch {
+
+    // The smallest number of locations worth handing to another thread
+    private static final int MIN_PARALLEL_CHUNK = 4096;
+
+    private GeoHashBatch() {
+        throw new AssertionError("No instances.");
+    }
+
+    /**
+     * Encodes parallel arrays of coordinates into geohash bits, see {@link GeoHash#getBits()}.
+     *
+     * @param latitudes The latitudes
+     * @param longitudes The longitudes, same length as latitudes
+     * @param precision The precision between 1 and MAX_PACKED_PRECISION
+     * @param out The array to write the bits into, at least as long as latitudes
+     */
+    public static void encodeBits(@NonNull double[] latitudes, @NonNull double[] longitudes, int precision,
+                                  @NonNull long[] out) {
+        int count = checkParallel(latitudes, longitudes, out.length);
+        checkPackedPrecision(precision);
+        checkCoordinates(latitudes, 1, 0, longitudes, 1, 0, count);
+        encodeBitsRange(latitudes, 1, 0, longitudes, 1, 0, precision, out, 0, count);
+    }
+
+    /**
+     * Encodes an interleaved array of coordinates into geohash bits, see {@link GeoHash#getBits()}.
+     *
+     * @param latLngs The coordinates as [lat0, lng0, lat1, lng1, ...]
+     * @param precision The precision between 1 and MAX_PACKED_PRECISION
+     * @param out The array to write the bits into, at least half as long as latLngs
+     */
+    public static void encodeBits(@NonNull double[] latLngs, int precision, @NonNull long[] out) {
+        int count = checkInterleaved(latLngs, out.length);
+        checkPackedPrecision(precision);
+        checkCoordinates(latLngs, 2, 0, latLngs, 2, 1, count);
+        encodeBitsRange(latLngs, 2, 0, latLngs, 2, 1, precision, out, 0, count);
+    }
+
+    /**
+     * Encodes parallel arrays of coordinates into geohash bits, splitting large batches across the given executor.
+     * The calling thread encodes one chunk itself and waits for the others to complete.
+     *
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the executor
+     * @param latitudes The latitudes
+     * @param longitudes The longitudes, same length as latitudes
+     * @param precision The precision between 1 and MAX_PACKED_PRECISION
+     * @param out The array to write the bits into, at least as long as latitudes
+     * @param executor The executor to run the other chunks on
+     */
+    public static void encodeBits(@NonNull final double[] latitudes, @NonNull final double[] longitudes,
+                                  final int precision, @NonNull final long[] out, @NonNull Executor executor)
+            throws InterruptedException {
+        int count = checkParallel(latitudes, longitudes, out.length);
+        checkPackedPrecision(precision);
+        checkCoordinates(latitudes, 1, 0, longitudes, 1, 0, count);
+        runChunked(count, executor, new Chunk() {
+            @Override
+            public void run(int from, int to) {
+                encodeBitsRange(latitudes, 1, 0, longitudes, 1, 0, precision, out, from, to);
+            }
+        });
+    }
+
+    /**
+     * Encodes parallel arrays of coordinates into geohash strings.
+     *
+     * @param latitudes The latitudes
+     * @param longitudes The longitudes, same length as latitudes
+     * @param precision The precision between 1 and MAX_PRECISION
+     * @param out The array to write the geohashes into, at least as long as latitudes
+     */
+    public static void encode(@NonNull double[] latitudes, @NonNull double[] longitudes, int precision,
+                              @NonNull String[] out) {
+        int count = checkParallel(latitudes, longitudes, out.length);
+        GeoHash.checkPrecision(precision);
+        checkCoordinates(latitudes, 1, 0, longitudes, 1, 0, count);
+        encodeRange(latitudes, 1, 0, longitudes, 1, 0, precision, out, 0, count);
+    }
+
+    /**
+     * Encodes an interleaved array of coordinates into geohash strings.
+     *
+     * @param latLngs The coordinates as [lat0, lng0, lat1, lng1, ...]
+     * @param precision The precision between 1 and MAX_PRECISION
+     * @param out The array to write the geohashes into, at least half as long as latLngs
+     */
+    public static void encode(@NonNull double[] latLngs, int precision, @NonNull String[] out) {
+        int count = checkInterleaved(latLngs, out.length);
+        GeoHash.checkPrecision(precision);
+        checkCoordinates(latLngs, 2, 0, latLngs, 2, 1, count);
+        encodeRange(latLngs, 2, 0, latLngs, 2, 1, precision, out, 0, count);
+    }
+
+    /**
+     * Encodes parallel arrays of coordinates into geohash strings, splitting large batches across the given
+     * executor. The calling thread encodes one chunk itself and waits for the others to complete.
+     *
+     * @throws InterruptedException If the calling thread is interrupted while waiting for the executor
+     * @param latitudes The latitudes
+     * @param longitudes The longitudes, same length as latitudes
+     * @param precision The precision between 1 and MAX_PRECISION
+     * @param out The array to write the geohashes into, at least as long as latitudes
+     * @param executor The executor to run the other chunks on
+     */
+    public static void encode(@NonNull final double[] latitudes, @NonNull final double[] longitudes,
+                              final int precision, @NonNull final String[] out, @NonNull Executor executor)
+            throws InterruptedException {
+        int count = checkParallel(latitudes, longitudes, out.length);
+        GeoHash.checkPrecision(precision);
+        checkCoordinates(latitudes, 1, 0, longitudes, 1, 0, count);
+        runChunked(count, executor, new Chunk() {
+            @Override
+            public void run(int from, int to) {
+                encodeRange(latitudes, 1, 0, longitudes, 1, 0, precision, out, from, to);
+            }
+        });
+    }
+
+    /**
+     * Decodes geohash strings into the centers of their cells.
+     *
+     * @throws IllegalArgumentException If a hash is not a valid base 32 string
+     * @param hashes The geohashes to decode
+     * @param latitudes The array to write the center latitudes into, at least as long as hashes
+     * @param longitudes The array to write the center longitudes into, at least as long as hashes
+     */
+    public static void decode(@NonNull String[] hashes, @NonNull double[] latitudes, @NonNull double[] longitudes) {
+        if (latitudes.length < hashes.length || longitudes.length < hashes.length) {
+            throw new IllegalArgumentException("Output arrays can't hold " + hashes.length + " locations");
+        }
+        double[] bounds = new double[4];
+        for (int i = 0; i < hashes.length; i++) {
+            GeoHash.decodeBoundsUnchecked(hashes[i], bounds, 0);
+            latitudes[i] = (bounds[GeoHashBounds.MIN_LATITUDE] + bounds[GeoHashBounds.MAX_LATITUDE]) / 2;
+            longitudes[i] = (bounds[GeoHashBounds.MIN_LONGITUDE] + bounds[GeoHashBounds.MAX_LONGITUDE]) / 2;
+        }
+    }
+
+    /**
+     * Decodes geohash strings into the bounds of their cells. The bounds of hash i are written to
+     * bounds[4*i ... 4*i + 3] in the order of {@link GeoHashBounds#MIN_LATITUDE}, {@link GeoHashBounds#MIN_LONGITUDE},
+     * {@link GeoHashBounds#MAX_LATITUDE} and {@link GeoHashBounds#MAX_LONGITUDE}.
+     *
+     * @throws IllegalArgumentException If a hash is not a valid base 32 string
+     * @param hashes The geohashes to decode
+     * @param bounds The array to write the bounds into, at least four times as long as hashes
+     */
+    public static void decodeBounds(@NonNull String[] hashes, @NonNull double[] bounds) {
+        checkBoundsLength(hashes.length, bounds.length);
+        for (int i = 0; i < hashes.length; i++) {
+            GeoHash.decodeBoundsUnchecked(hashes[i], bounds, 4 * i);
+        }
+    }
+
+    /**
+     * Decodes geohash bits, see {@link GeoHash#getBits()}, into the bounds of their cells, laid out as in
+     * {@link #decodeBounds(String[], double[])}.
+     *
+     * @param bits The right aligned geohash bits
+     * @param precisionBits The number of bits of every hash, between 0 and MAX_PACKED_PRECISION_BITS
+     * @param bounds The array to write the bounds into, at least four times as long as bits
+     */
+    public static void decodeBounds(@NonNull long[] bits, int precisionBits, @NonNull double[] bounds) {
+        checkBoundsLength(bits.length, bounds.length);
+        if (precisionBits < 0 || precisionBits > GeoHash.MAX_PACKED_PRECISION_BITS) {
+            throw new IllegalArgumentException("Not a valid number of geohash bits: " + precisionBits);
+        }
+        for (int i = 0; i < bits.length; i++) {
+            GeoHash.decodeBitsUnchecked(bits[i], precisionBits, bounds, 4 * i);
+        }
+    }
+
+    private static void encodeBitsRange(double[] lats, int latStride, int latOffset,
+                                        double[] lngs, int lngStride, int lngOffset,
+                                        int precision, long[] out, int from, int to) {
+        int precisionBits = precision * Base32Utils.BITS_PER_BASE32_CHAR;
+        for (int i = from; i < to; i++) {
+            out[i] = GeoHash.encodeBits(lats[i * latStride + latOffset], lngs[i * lngStride + lngOffset], precisionBits);
+        }
+    }
+
+    private static void encodeRange(double[] lats, int latStride, int latOffset,
+                                    double[] lngs, int lngStride, int lngOffset,
+                                    int precision, String[] out, int from, int to) {
+        char[] buffer = new char[precision];
+        for (int i = from; i < to; i++) {
+            GeoHash.encodeUnchecked(lats[i * latStride + latOffset], lngs[i * lngStride + lngOffset], precision,
+                    buffer, 0);
+            out[i] = new String(buffer);
+        }
+    }
+
+    private interface Chunk {
+        void run(int from, int to);
+    }
+
+    private static void runChunked(int count, Executor executor, final Chunk chunk) throws InterruptedException {
+        int chunks = Math.min(Runtime.getRuntime().availableProcessors(),
+                (count + MIN_PARALLEL_CHUNK - 1) / MIN_PARALLEL_CHUNK);
+        if (chunks <= 1) {
+            chunk.run(0, count);
+            return;
+        }
+        int chunkSize = (count + chunks - 1) / chunks;
+        final CountDownLatch done = new CountDownLatch(chunks - 1);
+        final AtomicReference<RuntimeException> failure = new AtomicReference<>();
+        for (int start = chunkSize; start < count; start += chunkSize) {
+            final int from = start;
+            final int to = Math.min(count, start + chunkSize);
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        chunk.run(from, to);
+                    } catch (RuntimeException e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            });
+        }
+        chunk.run(0, Math.min(count, chunkSize));
+        done.await();
+        if (failure.get() != null) {
+            throw failure.get();
+        }
+    }
+
+    private static int checkParallel(double[] latitudes, double[] longitudes, int outLength) {
+        if (latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("Got " + latitudes.length + " latitudes but "
+                    + longitudes.length + " longitudes");
+        }
+        if (outLength < latitudes.length) {
+            throw new IllegalArgumentException("Output of length " + outLength + " can't hold "
+                    + latitudes.length + " geohashes");
+        }
+        return latitudes.length;
+    }
+
+    private static int checkInterleaved(double[] latLngs, int outLength) {
+        if (latLngs.length % 2 != 0) {
+            throw new IllegalArgumentException("Interleaved coordinates must have an even length: " + latLngs.length);
+        }
+        int count = latLngs.length / 2;
+        if (outLength < count) {
+            throw new IllegalArgumentException("Output of length " + outLength + " can't hold " + count
+                    + " geohashes");
+        }
+        return count;
+    }
+
+    private static void checkBoundsLength(int count, int boundsLength) {
+        if (boundsLength / 4 < count) {
+            throw new IllegalArgumentException("Bounds of length " + boundsLength + " can't hold " + count + " cells");
+        }
+    }
+
+    private static void checkPackedPrecision(int precision) {
+        if (precision < 1 || precision > GeoHash.MAX_PACKED_PRECISION) {
+            throw new IllegalArgumentException("Precision of packed GeoHash bits must be between 1 and "
+                    + GeoHash.MAX_PACKED_PRECISION + ": " + precision);
+        }
+    }
+
+    private static void checkCoordinates(double[] lats, int latStride, int latOffset,
+                                         double[] lngs, int lngStride, int lngOffset, int count) {
+        // Non short-circuit operators keep this loop free of branches; NaN fails every comparison
+        boolean valid = true;
+        for (int i = 0; i < count; i++) {
+            double lat = lats[i * latStride + latOffset];
+            double lng = lngs[i * lngStride + lngOffset];
+            valid &= (lat >= -90) & (lat <= 90) & (lng >= -180) & (lng <= 180);
+        }
+        if (!valid) {
+            for (int i = 0; i < count; i++) {
+                GeoHash.checkCoordinates(lats[i * latStride + latOffset], lngs[i * lngStride + lngOffset]);
+            }
+        }
+    }
+}
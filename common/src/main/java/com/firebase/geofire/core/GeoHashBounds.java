@@ -0,0 +1,63 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.core;
+
+/**
+ * A mutable holder for the bounds of a geohash cell. A single instance can be reused to decode many geohashes
+ * without allocating, see {@link GeoHash#decodeBounds(CharSequence, GeoHashBounds)}. Instances are not thread safe.
+ */
+public final class GeoHashBounds {
+
+    // Indices of the bounds in the double[] layout used by the decoding methods
+    public static final int MIN_LATITUDE = 0;
+    public static final int MIN_LONGITUDE = 1;
+    public static final int MAX_LATITUDE = 2;
+    public static final int MAX_LONGITUDE = 3;
+
+    final double[] values = new double[4];
+
+    public double getMinLatitude() {
+        return values[MIN_LATITUDE];
+    }
+
+    public double getMinLongitude() {
+        return values[MIN_LONGITUDE];
+    }
+
+    public double getMaxLatitude() {
+        return values[MAX_LATITUDE];
+    }
+
+    public double getMaxLongitude() {
+        return values[MAX_LONGITUDE];
+    }
+
+    public double getCenterLatitude() {
+        return (values[MIN_LATITUDE] + values[MAX_LATITUDE]) / 2;
+    }
+
+    public double getCenterLongitude() {
+        return (values[MIN_LONGITUDE] + values[MAX_LONGITUDE]) / 2;
+    }
+
+    @Override
+    public String toString() {
+        return "GeoHashBounds{" +
+                "latitude=[" + values[MIN_LATITUDE] + ", " + values[MAX_LATITUDE] + ']' +
+                ", longitude=[" + values[MIN_LONGITUDE] + ", " + values[MAX_LONGITUDE] + ']' +
+                '}';
+    }
+}
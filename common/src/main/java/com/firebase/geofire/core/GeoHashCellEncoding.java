@@ -0,0 +1,75 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.core;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.GeoBoundingBox;
+import com.firebase.geofire.GeoLocation;
+
+import java.util.Set;
+
+/**
+ * The default cell encoding: cells are geohashes, ordered along the Z-order curve. Keys are compatible with all
+ * other GeoFire clients.
+ */
+public final class GeoHashCellEncoding implements CellEncoding {
+
+    // Zero plans queries with cells of a single precision
+    private final int maxRanges;
+
+    public GeoHashCellEncoding() {
+        this.maxRanges = 0;
+    }
+
+    /**
+     * Creates a geohash encoding that plans queries with cells of mixed precisions, see
+     * {@link GeoHashQuery#queriesAtLocation(GeoLocation, double, int)}.
+     *
+     * @param maxRanges The maximal number of ranges per query, at least 1
+     */
+    public GeoHashCellEncoding(int maxRanges) {
+        if (maxRanges < 1) {
+            throw new IllegalArgumentException("The maximal number of ranges must be at least 1: " + maxRanges);
+        }
+        this.maxRanges = maxRanges;
+    }
+
+    @Override
+    public long encodeBits(double latitude, double longitude, int precisionBits) {
+        return GeoHash.encodeBits(latitude, longitude, precisionBits);
+    }
+
+    @Override
+    public void decodeBounds(long bits, int precisionBits, @NonNull double[] bounds, int offset) {
+        GeoHash.decodeBounds(bits, precisionBits, bounds, offset);
+    }
+
+    @NonNull
+    @Override
+    public Set<GeoHashQuery> queriesAtLocation(@NonNull GeoLocation center, double radius) {
+        if (this.maxRanges == 0) {
+            return GeoHashQuery.queriesAtLocation(center, radius);
+        }
+        return GeoHashQuery.queriesAtLocation(center, radius, this.maxRanges);
+    }
+
+    @NonNull
+    @Override
+    public Set<GeoHashQuery> queriesInBoundingBox(@NonNull GeoBoundingBox boundingBox) {
+        return GeoHashQuery.queriesInBoundingBox(boundingBox);
+    }
+}
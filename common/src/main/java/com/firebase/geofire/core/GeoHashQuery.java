@@ -15,11 +15,15 @@
  */
 package com.firebase.geofire.core;
 
+import com.firebase.geofire.GeoBoundingBox;
 import com.firebase.geofire.GeoLocation;
 import com.firebase.geofire.util.Base32Utils;
 import com.firebase.geofire.util.Constants;
 import com.firebase.geofire.util.GeoUtils;
 
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -52,6 +56,12 @@ public class GeoHashQuery {
         }
     }
 
+    // The finest precision of query cells, query bounds longer than the stored keys would exclude keys of their cells
+    private static final int MAX_QUERY_BITS = GeoHash.DEFAULT_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR;
+
+    // The number of cells a bounding box is covered with at most, unless it is smaller than the finest cells
+    private static final int MAX_BOUNDING_BOX_CELLS = 16;
+
     private final String startValue;
     private final String endValue;
 
@@ -61,6 +71,10 @@ public class GeoHashQuery {
     }
 
     public static GeoHashQuery queryForGeoHash(GeoHash geohash, int bits) {
+        if (bits <= geohash.getPrecisionBits() && bits <= GeoHash.MAX_PACKED_PRECISION_BITS
+                && geohash.getPrecision() <= GeoHash.MAX_PACKED_PRECISION) {
+            return queryForBits(geohash.getBits() >>> (geohash.getPrecisionBits() - bits), bits);
+        }
         String hash = geohash.getGeoHashString();
         int precision = (int)Math.ceil((double)bits/Base32Utils.BITS_PER_BASE32_CHAR);
         if (hash.length() < precision) {
@@ -84,10 +98,119 @@ public class GeoHashQuery {
         return new GeoHashQuery(startHash, endHash);
     }
 
+    /**
+     * Returns the query for all geohashes in the cell of the given bits, see {@link GeoHash#getBits()}.
+     *
+     * @param bits The right aligned bits of the cell
+     * @param precisionBits The number of bits between 1 and MAX_PACKED_PRECISION_BITS
+     * @return The query for the cell
+     */
+    public static GeoHashQuery queryForBits(long bits, int precisionBits) {
+        if (precisionBits < 1 || precisionBits > GeoHash.MAX_PACKED_PRECISION_BITS) {
+            throw new IllegalArgumentException("Not a valid number of geohash bits: " + precisionBits);
+        }
+        int precision = (precisionBits + Base32Utils.BITS_PER_BASE32_CHAR - 1) / Base32Utils.BITS_PER_BASE32_CHAR;
+        int unusedBits = precision * Base32Utils.BITS_PER_BASE32_CHAR - precisionBits;
+        String startHash = GeoHash.fromBits(bits << unusedBits, precision * Base32Utils.BITS_PER_BASE32_CHAR)
+                .getGeoHashString();
+        String base = startHash.substring(0, precision - 1);
+        int endValue = Base32Utils.base32CharToValue(startHash.charAt(precision - 1)) + (1 << unusedBits);
+        String endHash;
+        if (endValue > 31) {
+            endHash = base + "~";
+        } else {
+            endHash = base + Base32Utils.valueToBase32Char(endValue);
+        }
+        return new GeoHashQuery(startHash, endHash);
+    }
+
     public static Set<GeoHashQuery> queriesAtLocation(GeoLocation location, double radius) {
-        int queryBits = Math.max(1, Utils.bitsForBoundingBox(location, radius));
-        int geoHashPrecision = (int) Math.ceil((float)queryBits /Base32Utils.BITS_PER_BASE32_CHAR);
+        int queryBits = coveringBits(location, radius);
+        long[] cells = coveringCells(location, radius, queryBits);
+        return queriesForCells(cells, cells.length, queryBits);
+    }
+
+    /**
+     * Returns queries for all geohashes within a circle, using cells of mixed precisions that fetch as little area
+     * outside of the circle as possible with at most the given number of queries.
+     *
+     * @param location The center of the circle
+     * @param radius The radius of the circle, in meters
+     * @param maxRanges The maximal number of queries, at least 1
+     * @return The queries
+     */
+    public static Set<GeoHashQuery> queriesAtLocation(GeoLocation location, double radius, int maxRanges) {
+        if (maxRanges < 1) {
+            throw new IllegalArgumentException("The maximal number of ranges must be at least 1: " + maxRanges);
+        }
+        return AdaptiveCovering.queriesAtLocation(location, radius, maxRanges);
+    }
+
+    /**
+     * Returns queries for all geohashes within a bounding box. The precision is the finest at which the bounding
+     * box spans at most MAX_BOUNDING_BOX_CELLS cells.
+     *
+     * @param boundingBox The bounding box, which may cross the 180th meridian
+     * @return The queries
+     */
+    public static Set<GeoHashQuery> queriesInBoundingBox(GeoBoundingBox boundingBox) {
+        double south = boundingBox.getSouthWest().latitude;
+        double west = boundingBox.getSouthWest().longitude;
+        double north = boundingBox.getNorthEast().latitude;
+        double east = boundingBox.getNorthEast().longitude;
+        if (!boundingBox.crossesAntimeridian()) {
+            return queriesInBounds(south, west, north, east);
+        }
+        Set<GeoHashQuery> queries = new HashSet<>(queriesInBounds(south, west, north, 180));
+        queries.addAll(queriesInBounds(south, -180, north, east));
+        return joinQueries(queries);
+    }
+
+    private static Set<GeoHashQuery> queriesInBounds(double south, double west, double north, double east) {
+        int bits = 1;
+        while (bits < MAX_QUERY_BITS
+                && boundsCells(south, west, north, east, bits + 1) <= MAX_BOUNDING_BOX_CELLS) {
+            bits++;
+        }
+        int latitudeBits = bits / 2;
+        int longitudeBits = bits - latitudeBits;
+        long southRow = GeoHash.quantize(south, -90, 180) >>> (32 - latitudeBits);
+        long northRow = GeoHash.quantize(north, -90, 180) >>> (32 - latitudeBits);
+        long westColumn = GeoHash.quantize(west, -180, 360) >>> (32 - longitudeBits);
+        long eastColumn = GeoHash.quantize(east, -180, 360) >>> (32 - longitudeBits);
+        double cellHeight = 180 / (double) (1L << latitudeBits);
+        double cellWidth = 360 / (double) (1L << longitudeBits);
+
+        long[] cells = new long[(int) ((northRow - southRow + 1) * (eastColumn - westColumn + 1))];
+        int count = 0;
+        for (long row = southRow; row <= northRow; row++) {
+            for (long column = westColumn; column <= eastColumn; column++) {
+                // The center of a cell is well within its bounds at every precision
+                cells[count++] = GeoHash.encodeBits(-90 + (row + 0.5) * cellHeight, -180 + (column + 0.5) * cellWidth,
+                        bits);
+            }
+        }
+        return queriesForCells(cells, count, bits);
+    }
 
+    // Returns the number of cells of a precision the bounds reach into
+    private static long boundsCells(double south, double west, double north, double east, int bits) {
+        int latitudeBits = bits / 2;
+        int longitudeBits = bits - latitudeBits;
+        long rows = (GeoHash.quantize(north, -90, 180) >>> (32 - latitudeBits))
+                - (GeoHash.quantize(south, -90, 180) >>> (32 - latitudeBits)) + 1;
+        long columns = (GeoHash.quantize(east, -180, 360) >>> (32 - longitudeBits))
+                - (GeoHash.quantize(west, -180, 360) >>> (32 - longitudeBits)) + 1;
+        return rows * columns;
+    }
+
+    // Returns the precision of the cells covering the bounding box of a circle
+    static int coveringBits(GeoLocation location, double radius) {
+        return Math.max(1, Math.min(Utils.bitsForBoundingBox(location, radius), MAX_QUERY_BITS));
+    }
+
+    // Returns the cells of a precision that cover the bounding box of a circle
+    static long[] coveringCells(GeoLocation location, double radius, int queryBits) {
         double latitude = location.latitude;
         double longitude = location.longitude;
         double latitudeDegrees = radius/Constants.METERS_PER_DEGREE_LATITUDE;
@@ -97,57 +220,117 @@ public class GeoHashQuery {
         double longitudeDeltaSouth = GeoUtils.distanceToLongitudeDegrees(radius, latitudeSouth);
         double longitudeDelta = Math.max(longitudeDeltaNorth, longitudeDeltaSouth);
 
-        Set<GeoHashQuery> queries = new HashSet<>();
+        // Cover the bounding box with the rectangle of cells around the center cell that it reaches into. Like the
+        // encoder, a cell includes its upper bounds but not its lower bounds.
+        long cell = GeoHash.encodeBits(latitude, longitude, queryBits);
+        double[] bounds = new double[4];
+        GeoHash.decodeBounds(cell, queryBits, bounds, 0);
+        double cellHeight = bounds[GeoHashBounds.MAX_LATITUDE] - bounds[GeoHashBounds.MIN_LATITUDE];
+        double cellWidth = bounds[GeoHashBounds.MAX_LONGITUDE] - bounds[GeoHashBounds.MIN_LONGITUDE];
+        int north = cellsAboveUpperBound(latitudeNorth - bounds[GeoHashBounds.MAX_LATITUDE], cellHeight);
+        int south = cellsBelowLowerBound(bounds[GeoHashBounds.MIN_LATITUDE] - latitudeSouth, cellHeight);
+        int east = cellsAboveUpperBound(longitude + longitudeDelta - bounds[GeoHashBounds.MAX_LONGITUDE], cellWidth);
+        int west = cellsBelowLowerBound(bounds[GeoHashBounds.MIN_LONGITUDE] - (longitude - longitudeDelta), cellWidth);
+        if (bounds[GeoHashBounds.MIN_LATITUDE] == -90) {
+            // The southernmost cells include the pole itself
+            south = 0;
+        }
 
-        GeoHash geoHash = new GeoHash(latitude, longitude, geoHashPrecision);
-        GeoHash geoHashW = new GeoHash(latitude, GeoUtils.wrapLongitude(longitude - longitudeDelta), geoHashPrecision);
-        GeoHash geoHashE = new GeoHash(latitude, GeoUtils.wrapLongitude(longitude + longitudeDelta), geoHashPrecision);
-
-        GeoHash geoHashN = new GeoHash(latitudeNorth, longitude, geoHashPrecision);
-        GeoHash geoHashNW = new GeoHash(latitudeNorth, GeoUtils.wrapLongitude(longitude - longitudeDelta), geoHashPrecision);
-        GeoHash geoHashNE = new GeoHash(latitudeNorth, GeoUtils.wrapLongitude(longitude + longitudeDelta), geoHashPrecision);
-
-        GeoHash geoHashS = new GeoHash(latitudeSouth, longitude, geoHashPrecision);
-        GeoHash geoHashSW = new GeoHash(latitudeSouth, GeoUtils.wrapLongitude(longitude - longitudeDelta), geoHashPrecision);
-        GeoHash geoHashSE = new GeoHash(latitudeSouth, GeoUtils.wrapLongitude(longitude + longitudeDelta), geoHashPrecision);
-
-        queries.add(queryForGeoHash(geoHash, queryBits));
-        queries.add(queryForGeoHash(geoHashE, queryBits));
-        queries.add(queryForGeoHash(geoHashW, queryBits));
-        queries.add(queryForGeoHash(geoHashN, queryBits));
-        queries.add(queryForGeoHash(geoHashNE, queryBits));
-        queries.add(queryForGeoHash(geoHashNW, queryBits));
-        queries.add(queryForGeoHash(geoHashS, queryBits));
-        queries.add(queryForGeoHash(geoHashSE, queryBits));
-        queries.add(queryForGeoHash(geoHashSW, queryBits));
-
-        // Join queries
-        boolean didJoin;
-        do {
-            GeoHashQuery query1 = null;
-            GeoHashQuery query2 = null;
-            for (GeoHashQuery query: queries) {
-                for (GeoHashQuery other: queries) {
-                    if (query != other && query.canJoinWith(other)) {
-                        query1 = query;
-                        query2 = other;
-                        break;
-                    }
-                }
+        int rows = 1 + north;
+        long southWest = cell;
+        for (int i = 0; i < south; i++) {
+            long next = GeoHash.neighborBits(southWest, queryBits, -1, 0);
+            if (next == -1) {
+                break;
             }
-            if (query1 != null && query2 != null) {
-                queries.remove(query1);
-                queries.remove(query2);
-                queries.add(query1.joinWith(query2));
-                didJoin = true;
-            } else {
-                didJoin = false;
+            southWest = next;
+            rows++;
+        }
+        for (int i = 0; i < west; i++) {
+            southWest = GeoHash.neighborBits(southWest, queryBits, 0, -1);
+        }
+        // Longitude wraps around, so more columns than there are cells would only repeat them
+        int longitudeCells = 1 << ((queryBits + 1) / 2);
+        int columns = Math.min(1 + west + east, longitudeCells);
+
+        long[] cells = new long[rows * columns];
+        int count = 0;
+        long rowStart = southWest;
+        for (int row = 0; row < rows && rowStart != -1; row++) {
+            long current = rowStart;
+            for (int column = 0; column < columns; column++) {
+                cells[count++] = current;
+                current = GeoHash.neighborBits(current, queryBits, 0, 1);
             }
-        } while (didJoin);
+            rowStart = GeoHash.neighborBits(rowStart, queryBits, 1, 0);
+        }
+        return Arrays.copyOf(cells, count);
+    }
 
+    /**
+     * Returns the queries for a set of cells of the same precision, with consecutive cells joined into a single
+     * query. The cells are sorted in place.
+     *
+     * @param cells The right aligned bits of the cells, duplicates are allowed
+     * @param count The number of cells to use from the start of the array
+     * @param precisionBits The number of bits between 1 and MAX_PACKED_PRECISION_BITS
+     * @return The joined queries
+     */
+    static Set<GeoHashQuery> queriesForCells(long[] cells, int count, int precisionBits) {
+        Arrays.sort(cells, 0, count);
+        Set<GeoHashQuery> queries = new HashSet<>();
+        int runStart = 0;
+        for (int i = 1; i <= count; i++) {
+            if (i == count || cells[i] > cells[i - 1] + 1) {
+                String start = queryForBits(cells[runStart], precisionBits).getStartValue();
+                String end = queryForBits(cells[i - 1], precisionBits).getEndValue();
+                queries.add(new GeoHashQuery(start, end));
+                runStart = i;
+            }
+        }
         return queries;
     }
 
+    /**
+     * Joins all overlapping and adjacent queries, so that every key is covered by at most one query. The queries
+     * are sorted by their start value and merged in a single pass.
+     *
+     * @param queries The queries to join, of any number and precision
+     * @return The joined queries
+     */
+    public static Set<GeoHashQuery> joinQueries(Collection<GeoHashQuery> queries) {
+        GeoHashQuery[] sorted = queries.toArray(new GeoHashQuery[0]);
+        Arrays.sort(sorted, new Comparator<GeoHashQuery>() {
+            @Override
+            public int compare(GeoHashQuery query1, GeoHashQuery query2) {
+                return query1.startValue.compareTo(query2.startValue);
+            }
+        });
+        Set<GeoHashQuery> joined = new HashSet<>();
+        int i = 0;
+        while (i < sorted.length) {
+            GeoHashQuery first = sorted[i];
+            String endValue = first.endValue;
+            for (i++; i < sorted.length && sorted[i].startValue.compareTo(endValue) <= 0; i++) {
+                if (sorted[i].endValue.compareTo(endValue) > 0) {
+                    endValue = sorted[i].endValue;
+                }
+            }
+            joined.add(new GeoHashQuery(first.startValue, endValue));
+        }
+        return joined;
+    }
+
+    // Returns the number of cells a point reaches into at the given distance above the upper bound of a cell
+    private static int cellsAboveUpperBound(double distance, double cellSize) {
+        return (distance > 0) ? (int) Math.ceil(distance / cellSize) : 0;
+    }
+
+    // Returns the number of cells a point reaches into at the given distance below the lower bound of a cell
+    private static int cellsBelowLowerBound(double distance, double cellSize) {
+        return (distance >= 0) ? (int) Math.floor(distance / cellSize) + 1 : 0;
+    }
+
     private boolean isPrefix(GeoHashQuery other) {
          return (other.endValue.compareTo(this.startValue) >= 0) &&
                 (other.startValue.compareTo(this.startValue) < 0) &&
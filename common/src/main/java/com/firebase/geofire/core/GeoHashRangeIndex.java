@@ -0,0 +1,199 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.core;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.util.Base32Utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * An immutable index over a set of geohash queries that answers whether any of them contains a geohash with a
+ * binary search over integers instead of comparing strings with every query.
+ *
+ * Query bounds and geohashes of up to MAX_PACKED_PRECISION characters are mapped to longs that sort exactly like
+ * their strings: every character is a digit of base 34, where a missing character is 0, a base32 character is its
+ * value plus one and '~' is 33. The ranges are merged into disjoint intervals. Longer bounds and geohashes are
+ * compared as strings.
+ */
+public final class GeoHashRangeIndex {
+
+    private static final int RADIX = 34;
+    private static final int END_DIGIT = RADIX - 1;
+
+    // Disjoint intervals sorted by start, as interleaved [start, end) pairs
+    private final long[] intervals;
+
+    // Queries whose bounds can't be mapped to a long
+    private final GeoHashQuery[] unpackedQueries;
+
+    private final GeoHashQuery[] queries;
+
+    /**
+     * Creates an index over queries.
+     *
+     * @param queries The queries to index
+     */
+    public GeoHashRangeIndex(@NonNull Collection<GeoHashQuery> queries) {
+        this.queries = queries.toArray(new GeoHashQuery[0]);
+        long[] starts = new long[this.queries.length];
+        long[] ends = new long[this.queries.length];
+        List<GeoHashQuery> unpacked = new ArrayList<>();
+        int count = 0;
+        for (GeoHashQuery query: this.queries) {
+            long start = boundPosition(query.getStartValue());
+            long end = boundPosition(query.getEndValue());
+            if (start < 0 || end < 0) {
+                unpacked.add(query);
+            } else if (start < end) {
+                starts[count] = start;
+                ends[count] = end;
+                count++;
+            }
+        }
+        this.unpackedQueries = unpacked.toArray(new GeoHashQuery[0]);
+        this.intervals = merge(starts, ends, count);
+    }
+
+    // Joins overlapping and adjacent ranges. The starts and ends are sorted independently: the i-th smallest start
+    // is never after the i-th smallest end, so there is a gap before the i-th start exactly if it is after the
+    // (i-1)-th end.
+    private static long[] merge(long[] starts, long[] ends, int count) {
+        Arrays.sort(starts, 0, count);
+        Arrays.sort(ends, 0, count);
+        long[] merged = new long[2 * count];
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (i == 0 || starts[i] > ends[i - 1]) {
+                if (size > 0) {
+                    merged[2 * size - 1] = ends[i - 1];
+                }
+                merged[2 * size] = starts[i];
+                size++;
+            }
+        }
+        if (size > 0) {
+            merged[2 * size - 1] = ends[count - 1];
+        }
+        return Arrays.copyOf(merged, 2 * size);
+    }
+
+    // Returns the position of a query bound, or -1 if it is too long or is not base32 with an optional trailing '~'
+    private static long boundPosition(String bound) {
+        int length = bound.endsWith("~") ? bound.length() - 1 : bound.length();
+        if (bound.length() > GeoHash.MAX_PACKED_PRECISION
+                || !Base32Utils.isValidBase32String(bound.subSequence(0, length))) {
+            return -1;
+        }
+        long position = 0;
+        for (int i = 0; i < GeoHash.MAX_PACKED_PRECISION; i++) {
+            int digit = 0;
+            if (i < length) {
+                digit = Base32Utils.base32CharToValue(bound.charAt(i)) + 1;
+            } else if (i == length && length < bound.length()) {
+                digit = END_DIGIT;
+            }
+            position = position * RADIX + digit;
+        }
+        return position;
+    }
+
+    // Returns the position of a packed geohash, read from its bits without building its string
+    private static long hashPosition(long bits, int precision) {
+        long position = 0;
+        for (int i = 0; i < GeoHash.MAX_PACKED_PRECISION; i++) {
+            int digit = 0;
+            if (i < precision) {
+                int shift = (precision - 1 - i) * Base32Utils.BITS_PER_BASE32_CHAR;
+                digit = (int) ((bits >>> shift) & ((1 << Base32Utils.BITS_PER_BASE32_CHAR) - 1)) + 1;
+            }
+            position = position * RADIX + digit;
+        }
+        return position;
+    }
+
+    /**
+     * Returns whether any of the indexed queries contains a geohash, like {@link GeoHashQuery#containsGeoHash}.
+     *
+     * @param hash The geohash
+     * @return Whether the geohash is in any query
+     */
+    public boolean contains(@NonNull GeoHash hash) {
+        if (hash.getPrecisionBits() > GeoHash.MAX_PACKED_PRECISION_BITS) {
+            for (GeoHashQuery query: this.queries) {
+                if (query.containsGeoHash(hash)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        return containsPosition(hashPosition(hash.getBits(), hash.getPrecision()), hash);
+    }
+
+    /**
+     * Returns whether any of the indexed queries contains the geohash of the given bits, without creating it.
+     *
+     * @param bits The right aligned geohash bits, see {@link GeoHash#getBits()}
+     * @param precisionBits The number of bits, a multiple of 5 no larger than MAX_PACKED_PRECISION_BITS
+     * @return Whether the geohash is in any query
+     */
+    public boolean contains(long bits, int precisionBits) {
+        if (precisionBits < Base32Utils.BITS_PER_BASE32_CHAR || precisionBits > GeoHash.MAX_PACKED_PRECISION_BITS
+                || precisionBits % Base32Utils.BITS_PER_BASE32_CHAR != 0) {
+            throw new IllegalArgumentException("Not a valid number of geohash bits: " + precisionBits);
+        }
+        long position = hashPosition(bits, precisionBits / Base32Utils.BITS_PER_BASE32_CHAR);
+        if (this.unpackedQueries.length == 0) {
+            return containsPosition(position, null);
+        }
+        return containsPosition(position, GeoHash.fromBits(bits, precisionBits));
+    }
+
+    // The hash is only compared with unpacked queries, it may be null if there are none
+    private boolean containsPosition(long position, GeoHash hash) {
+        // Find the last interval that starts at or before the position
+        int low = 0;
+        int high = this.intervals.length / 2 - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (this.intervals[2 * mid] <= position) {
+                low = mid + 1;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (high >= 0 && position < this.intervals[2 * high + 1]) {
+            return true;
+        }
+        for (GeoHashQuery query: this.unpackedQueries) {
+            if (query.containsGeoHash(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of disjoint intervals the queries were merged into
+     */
+    public int getIntervalCount() {
+        return this.intervals.length / 2;
+    }
+}
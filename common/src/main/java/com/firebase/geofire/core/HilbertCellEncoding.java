@@ -0,0 +1,214 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.core;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.GeoBoundingBox;
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.util.Base32Utils;
+import com.firebase.geofire.util.Constants;
+import com.firebase.geofire.util.GeoUtils;
+
+import java.util.Set;
+
+/**
+ * A cell encoding that orders cells along a Hilbert curve. At level L the world is split into 2^L by 2^L cells of
+ * equal size in degrees, and the key of a cell is its 2L bit index along the curve.
+ *
+ * Consecutive cells of a Hilbert curve are always adjacent, so a block of cells maps to fewer key ranges than
+ * with geohashes. The query planner uses this to pick the finest level whose covering still fits into a budget of
+ * ranges, which fetches less data outside of the circle.
+ *
+ * Keys are not compatible with geohashes, and therefore not with other GeoFire clients.
+ */
+public final class HilbertCellEncoding implements CellEncoding {
+
+    // The number of ranges planned per query by default
+    private static final int DEFAULT_MAX_RANGES = 4;
+
+    // The finest level used for queries, query bounds longer than the stored keys would exclude keys of their cells
+    private static final int MAX_LEVEL = GeoHash.DEFAULT_PRECISION * Base32Utils.BITS_PER_BASE32_CHAR / 2;
+
+    // Upper bound on the cells enumerated for a single level, keeps planning cheap for tiny cells
+    private static final int MAX_CELLS = 256;
+
+    private final int maxRanges;
+
+    public HilbertCellEncoding() {
+        this(DEFAULT_MAX_RANGES);
+    }
+
+    /**
+     * Creates a new Hilbert encoding.
+     *
+     * @param maxRanges The number of ranges a query should be planned with at most. The coarsest covering is used
+     * if it needs more ranges.
+     */
+    public HilbertCellEncoding(int maxRanges) {
+        if (maxRanges < 1) {
+            throw new IllegalArgumentException("The maximal number of ranges must be at least 1: " + maxRanges);
+        }
+        this.maxRanges = maxRanges;
+    }
+
+    /**
+     * Encodes a location into its Hilbert key. For an odd number of bits the level is precisionBits / 2 and the
+     * last bit of the key is zero.
+     */
+    @Override
+    public long encodeBits(double latitude, double longitude, int precisionBits) {
+        if (precisionBits < 1 || precisionBits > GeoHash.MAX_PACKED_PRECISION_BITS) {
+            throw new IllegalArgumentException("Not a valid number of key bits: " + precisionBits);
+        }
+        int level = precisionBits / 2;
+        return hilbertIndex(cellIndex(longitude, -180, 360, level), cellIndex(latitude, -90, 180, level), level)
+                << (precisionBits % 2);
+    }
+
+    /**
+     * Decodes the cell of a Hilbert key. For an odd number of bits the last bit is ignored.
+     */
+    @Override
+    public void decodeBounds(long bits, int precisionBits, @NonNull double[] bounds, int offset) {
+        if (precisionBits < 0 || precisionBits > GeoHash.MAX_PACKED_PRECISION_BITS) {
+            throw new IllegalArgumentException("Not a valid number of key bits: " + precisionBits);
+        }
+        int level = precisionBits / 2;
+        long index = bits >>> (precisionBits % 2);
+        long x = 0;
+        long y = 0;
+        for (long s = 1; s < (1L << level); s <<= 1) {
+            long rx = 1 & (index >>> 1);
+            long ry = 1 & (index ^ rx);
+            if (ry == 0) {
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                long t = x;
+                x = y;
+                y = t;
+            }
+            x += s * rx;
+            y += s * ry;
+            index >>>= 2;
+        }
+        double lngStep = 360 / (double) (1L << level);
+        double latStep = 180 / (double) (1L << level);
+        bounds[offset + GeoHashBounds.MIN_LATITUDE] = -90 + y * latStep;
+        bounds[offset + GeoHashBounds.MIN_LONGITUDE] = -180 + x * lngStep;
+        bounds[offset + GeoHashBounds.MAX_LATITUDE] = -90 + (y + 1) * latStep;
+        bounds[offset + GeoHashBounds.MAX_LONGITUDE] = -180 + (x + 1) * lngStep;
+    }
+
+    @NonNull
+    @Override
+    public Set<GeoHashQuery> queriesAtLocation(@NonNull GeoLocation center, double radius) {
+        double latitudeDegrees = radius/Constants.METERS_PER_DEGREE_LATITUDE;
+        double latitudeNorth = Math.min(90, center.latitude + latitudeDegrees);
+        double latitudeSouth = Math.max(-90, center.latitude - latitudeDegrees);
+        double longitudeDeltaNorth = GeoUtils.distanceToLongitudeDegrees(radius, latitudeNorth);
+        double longitudeDeltaSouth = GeoUtils.distanceToLongitudeDegrees(radius, latitudeSouth);
+        double longitudeDelta = Math.max(longitudeDeltaNorth, longitudeDeltaSouth);
+
+        return cover(center.longitude, longitudeDelta, latitudeSouth, latitudeNorth);
+    }
+
+    @NonNull
+    @Override
+    public Set<GeoHashQuery> queriesInBoundingBox(@NonNull GeoBoundingBox boundingBox) {
+        double longitudeDelta = boundingBox.getWidth() / 2;
+        return cover(boundingBox.getCenter().longitude, longitudeDelta, boundingBox.getSouthWest().latitude,
+                boundingBox.getNorthEast().latitude);
+    }
+
+    private Set<GeoHashQuery> cover(double longitude, double longitudeDelta, double latitudeSouth,
+                                    double latitudeNorth) {
+        // Start at the finest level at which the bounding box spans at most 2 by 2 cells
+        double latitudeLevel = Math.floor(Math.log(180 / (latitudeNorth - latitudeSouth)) / Math.log(2));
+        double longitudeLevel = Math.floor(Math.log(360 / (2 * longitudeDelta)) / Math.log(2));
+        int startLevel = (int) Math.max(1, Math.min(MAX_LEVEL, Math.min(latitudeLevel, longitudeLevel)));
+
+        Set<GeoHashQuery> best = coverAtLevel(startLevel, longitude, longitudeDelta, latitudeSouth, latitudeNorth);
+        for (int level = startLevel + 1; level <= MAX_LEVEL; level++) {
+            Set<GeoHashQuery> queries = coverAtLevel(level, longitude, longitudeDelta, latitudeSouth, latitudeNorth);
+            if (queries == null || queries.size() > this.maxRanges) {
+                break;
+            }
+            best = queries;
+        }
+        return best;
+    }
+
+    // Returns the merged key ranges of all cells of a level that intersect the bounding box, or null if there are
+    // too many cells
+    private static Set<GeoHashQuery> coverAtLevel(int level, double longitude, double longitudeDelta,
+                                                  double latitudeSouth, double latitudeNorth) {
+        long cellsPerAxis = 1L << level;
+        long west;
+        long columns;
+        if (2 * longitudeDelta + 360.0 / cellsPerAxis >= 360) {
+            west = 0;
+            columns = cellsPerAxis;
+        } else {
+            west = cellIndex(GeoUtils.wrapLongitude(longitude - longitudeDelta), -180, 360, level);
+            long east = cellIndex(GeoUtils.wrapLongitude(longitude + longitudeDelta), -180, 360, level);
+            columns = ((east - west) & (cellsPerAxis - 1)) + 1;
+        }
+        long south = cellIndex(latitudeSouth, -90, 180, level);
+        long rows = cellIndex(latitudeNorth, -90, 180, level) - south + 1;
+        if (rows * columns > MAX_CELLS) {
+            return null;
+        }
+
+        long[] indices = new long[(int) (rows * columns)];
+        int count = 0;
+        for (long row = 0; row < rows; row++) {
+            for (long column = 0; column < columns; column++) {
+                indices[count++] = hilbertIndex((west + column) & (cellsPerAxis - 1), south + row, level);
+            }
+        }
+        return GeoHashQuery.queriesForCells(indices, count, 2 * level);
+    }
+
+    // Returns the index of the cell of a level containing a coordinate, with the same bounds as geohash cells
+    private static long cellIndex(double value, double min, double range, int level) {
+        return GeoHash.quantize(value, min, range) >>> (32 - level);
+    }
+
+    // Returns the position of cell (x, y) along the Hilbert curve of a level,
+    // see: https://en.wikipedia.org/wiki/Hilbert_curve#Applications_and_mapping_algorithms
+    private static long hilbertIndex(long x, long y, int level) {
+        long index = 0;
+        for (long s = (1L << level) >>> 1; s > 0; s >>>= 1) {
+            long rx = ((x & s) != 0) ? 1 : 0;
+            long ry = ((y & s) != 0) ? 1 : 0;
+            index += s * s * ((3 * rx) ^ ry);
+            if (ry == 0) {
+                // Only the bits below s are used from here on, so flipping the higher bits does not matter
+                if (rx == 1) {
+                    x = s - 1 - x;
+                    y = s - 1 - y;
+                }
+                long t = x;
+                x = y;
+                y = t;
+            }
+        }
+        return index;
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.core;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.GeoLocation;
+import com.firebase.geofire.GeoShape;
+import com.firebase.geofire.util.Base32Utils;
+import com.firebase.geofire.util.Constants;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The ranges a query is planned with, together with the area they cover. Use this to compare the number of
+ * database listeners of a plan against the area it downloads outside of the queried circle or shape.
+ *
+ * Areas are computed on a spherical earth. The area of a range is the area of all cells whose keys of
+ * MAX_PACKED_PRECISION characters it contains.
+ */
+public final class QueryPlan {
+
+    private static final int BASE32_RADIX = 1 << Base32Utils.BITS_PER_BASE32_CHAR;
+
+    private final Map<GeoHashQuery, Double> rangeAreas;
+    private final double coveredArea;
+    private final double queryArea;
+    private final long planningTimeNanos;
+
+    private QueryPlan(Map<GeoHashQuery, Double> rangeAreas, double coveredArea, double queryArea,
+                      long planningTimeNanos) {
+        this.rangeAreas = rangeAreas;
+        this.coveredArea = coveredArea;
+        this.queryArea = queryArea;
+        this.planningTimeNanos = planningTimeNanos;
+    }
+
+    /**
+     * Plans a query for a circle and measures the plan.
+     *
+     * @param encoding The encoding to plan the query with
+     * @param center The center of the circle
+     * @param radius The radius of the circle, in meters
+     * @return The plan
+     */
+    @NonNull
+    public static QueryPlan explain(@NonNull CellEncoding encoding, @NonNull GeoLocation center, double radius) {
+        long start = System.nanoTime();
+        Set<GeoHashQuery> queries = encoding.queriesAtLocation(center, radius);
+        long planningTimeNanos = System.nanoTime() - start;
+        double earthRadius = Constants.EARTH_MEAN_RADIUS;
+        double circleArea = 2 * Math.PI * earthRadius * earthRadius * (1 - Math.cos(radius / earthRadius));
+        return measure(encoding, queries, circleArea, planningTimeNanos);
+    }
+
+    /**
+     * Plans a query for a shape and measures the plan.
+     *
+     * @param encoding The encoding to plan the query with
+     * @param shape The shape of the query
+     * @return The plan
+     */
+    @NonNull
+    public static QueryPlan explain(@NonNull CellEncoding encoding, @NonNull GeoShape shape) {
+        long start = System.nanoTime();
+        Set<GeoHashQuery> queries = encoding.queriesInBoundingBox(shape.getBoundingBox());
+        long planningTimeNanos = System.nanoTime() - start;
+        return measure(encoding, queries, shape.getArea(), planningTimeNanos);
+    }
+
+    private static QueryPlan measure(CellEncoding encoding, Set<GeoHashQuery> queries, double queryArea,
+                                     long planningTimeNanos) {
+        Map<GeoHashQuery, Double> rangeAreas = new HashMap<>();
+        double coveredArea = 0;
+        double[] bounds = new double[4];
+        for (GeoHashQuery query: queries) {
+            double area = rangeArea(encoding, keyPosition(query.getStartValue()), keyPosition(query.getEndValue()),
+                    bounds);
+            rangeAreas.put(query, area);
+            coveredArea += area;
+        }
+        return new QueryPlan(Collections.unmodifiableMap(rangeAreas), coveredArea, queryArea, planningTimeNanos);
+    }
+
+    // Returns the position of a key among all keys of MAX_PACKED_PRECISION characters, '~' sorts after all
+    // Base32 characters
+    private static long keyPosition(String key) {
+        long position = 0;
+        for (int i = 0; i < GeoHash.MAX_PACKED_PRECISION; i++) {
+            long value = 0;
+            if (i < key.length()) {
+                value = (key.charAt(i) == '~') ? BASE32_RADIX : Base32Utils.base32CharToValue(key.charAt(i));
+            }
+            position = position * BASE32_RADIX + value;
+        }
+        return position;
+    }
+
+    // Sums the area of all cells in [start, end) by splitting the range into aligned blocks of an even number of
+    // bits, which are cells of every encoding
+    private static double rangeArea(CellEncoding encoding, long start, long end, double[] bounds) {
+        double radius = Constants.EARTH_MEAN_RADIUS;
+        double area = 0;
+        while (start < end) {
+            int blockBits = Long.numberOfTrailingZeros(start | (1L << GeoHash.MAX_PACKED_PRECISION_BITS));
+            while ((1L << blockBits) > end - start) {
+                blockBits--;
+            }
+            blockBits &= ~1;
+            encoding.decodeBounds(start >>> blockBits, GeoHash.MAX_PACKED_PRECISION_BITS - blockBits, bounds, 0);
+            double north = Math.toRadians(bounds[GeoHashBounds.MAX_LATITUDE]);
+            double south = Math.toRadians(bounds[GeoHashBounds.MIN_LATITUDE]);
+            double width = bounds[GeoHashBounds.MAX_LONGITUDE] - bounds[GeoHashBounds.MIN_LONGITUDE];
+            area += radius * radius * Math.toRadians(width) * (Math.sin(north) - Math.sin(south));
+            start += 1L << blockBits;
+        }
+        return area;
+    }
+
+    /**
+     * @return The planned ranges
+     */
+    @NonNull
+    public Set<GeoHashQuery> getQueries() {
+        return this.rangeAreas.keySet();
+    }
+
+    /**
+     * Returns the area covered by one of the planned ranges.
+     *
+     * @throws IllegalArgumentException If the range is not part of this plan
+     * @param query The range
+     * @return The area in square meters
+     */
+    public double getArea(@NonNull GeoHashQuery query) {
+        Double area = this.rangeAreas.get(query);
+        if (area == null) {
+            throw new IllegalArgumentException("Not a range of this plan: " + query);
+        }
+        return area;
+    }
+
+    /**
+     * @return The area covered by all ranges, in square meters
+     */
+    public double getCoveredArea() {
+        return this.coveredArea;
+    }
+
+    /**
+     * @return The area of the queried circle or shape, in square meters
+     */
+    public double getQueryArea() {
+        return this.queryArea;
+    }
+
+    /**
+     * @return The covered area divided by the queried area, 1 means nothing is read outside of the query
+     */
+    public double getOverFetchRatio() {
+        return this.coveredArea / this.queryArea;
+    }
+
+    /**
+     * @return The time it took to plan the ranges, in nanoseconds
+     */
+    public long getPlanningTimeNanos() {
+        return this.planningTimeNanos;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "QueryPlan{ranges=%d, coveredArea=%.0f, queryArea=%.0f, "
+                        + "overFetchRatio=%.2f, planningTime=%dus}", this.rangeAreas.size(), this.coveredArea,
+                this.queryArea, getOverFetchRatio(), this.planningTimeNanos / 1000);
+    }
+}
@@ -20,21 +20,31 @@ public final class Base32Utils {
     /* number of bits per base 32 character */
     public static final int BITS_PER_BASE32_CHAR = 5;
 
-    private static final String BASE32_CHARS = "0123456789bcdefghjkmnpqrstuvwxyz";
+    private static final char[] BASE32_CHARS = "0123456789bcdefghjkmnpqrstuvwxyz".toCharArray();
+
+    /* reverse lookup from an ASCII char to its base 32 value, -1 for chars that are not base 32 */
+    private static final byte[] BASE32_VALUES = new byte[128];
+
+    static {
+        java.util.Arrays.fill(BASE32_VALUES, (byte) -1);
+        for (int i = 0; i < BASE32_CHARS.length; i++) {
+            BASE32_VALUES[BASE32_CHARS[i]] = (byte) i;
+        }
+    }
 
     private Base32Utils() {
         throw new AssertionError("No instances.");
     }
 
     public static char valueToBase32Char(int value) {
-        if (value < 0 || value >= BASE32_CHARS.length()) {
+        if (value < 0 || value >= BASE32_CHARS.length) {
             throw new IllegalArgumentException("Not a valid base32 value: " + value);
         }
-        return BASE32_CHARS.charAt(value);
+        return BASE32_CHARS[value];
     }
 
     public static int base32CharToValue(char base32Char) {
-        int value = BASE32_CHARS.indexOf(base32Char);
+        int value = (base32Char < BASE32_VALUES.length) ? BASE32_VALUES[base32Char] : -1;
         if (value == -1) {
             throw new IllegalArgumentException("Not a valid base32 char: " + base32Char);
         } else {
@@ -42,7 +52,72 @@ public final class Base32Utils {
         }
     }
 
+    public static int base32ByteToValue(byte base32Byte) {
+        int value = (base32Byte >= 0) ? BASE32_VALUES[base32Byte] : -1;
+        if (value == -1) {
+            throw new IllegalArgumentException("Not a valid base32 char: " + (char) (base32Byte & 0xFF));
+        } else {
+            return value;
+        }
+    }
+
     public static boolean isValidBase32String(String string) {
-        return string.matches("^[" + BASE32_CHARS + "]*$");
+        return isValidBase32String((CharSequence) string);
+    }
+
+    public static boolean isValidBase32String(CharSequence string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c >= BASE32_VALUES.length || BASE32_VALUES[c] == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static boolean isValidBase32String(byte[] bytes, int offset, int length) {
+        for (int i = offset; i < offset + length; i++) {
+            byte b = bytes[i];
+            if (b < 0 || BASE32_VALUES[b] == -1) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Decodes a base 32 string of at most 12 characters into its bits, with the first character in the most
+     * significant position.
+     *
+     * @throws IllegalArgumentException If the string is longer than 12 characters or not a base 32 string
+     */
+    public static long base32StringToBits(CharSequence string) {
+        checkBitsLength(string.length());
+        long bits = 0;
+        for (int i = 0; i < string.length(); i++) {
+            bits = (bits << BITS_PER_BASE32_CHAR) | base32CharToValue(string.charAt(i));
+        }
+        return bits;
+    }
+
+    /**
+     * Decodes a base 32 string of at most 12 ASCII bytes into its bits, with the first character in the most
+     * significant position.
+     *
+     * @throws IllegalArgumentException If the string is longer than 12 characters or not a base 32 string
+     */
+    public static long base32StringToBits(byte[] bytes, int offset, int length) {
+        checkBitsLength(length);
+        long bits = 0;
+        for (int i = offset; i < offset + length; i++) {
+            bits = (bits << BITS_PER_BASE32_CHAR) | base32ByteToValue(bytes[i]);
+        }
+        return bits;
+    }
+
+    private static void checkBitsLength(int length) {
+        if (length * BITS_PER_BASE32_CHAR >= Long.SIZE) {
+            throw new IllegalArgumentException("A base32 string of " + length + " chars does not fit in a long");
+        }
     }
 }
@@ -29,6 +29,9 @@ public final class Constants {
     // The meridional radius of the earth in meters
     public static final double EARTH_POLAR_RADIUS = 6357852.3;
 
+    // The mean radius of the earth in meters, used for distances and areas on the sphere
+    public static final double EARTH_MEAN_RADIUS = (EARTH_EQ_RADIUS + EARTH_POLAR_RADIUS) / 2;
+
     /* The following value assumes a polar radius of
      * r_p = 6356752.3
      * and an equatorial radius of
@@ -0,0 +1,182 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire.util;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.GeoBoundingBox;
+import com.firebase.geofire.GeoLocation;
+
+/**
+ * Tests whether locations are within a radius of a center, with the same result as comparing
+ * {@link GeoUtils#distance} against the radius but mostly without computing it.
+ *
+ * Locations outside of the latitude and longitude bounds of the circle are rejected first. The remaining ones are
+ * measured with the equirectangular approximation, and only locations within its error band around the radius are
+ * measured exactly. The error of the approximation relative to the radius stays below an eighth of
+ * theta^2 / cos^2(phi), where theta is the angular radius and phi the largest latitude of the bounds. This filter
+ * uses that bound as its band and falls back to exact distances where the band is wide.
+ */
+public final class DistanceFilter {
+
+    // Circles with a wider error band than this are always measured exactly
+    private static final double MAX_ERROR_BAND = 0.05;
+
+    // Relative slack of the bounds and the band, so rounding never decides a location near the radius
+    private static final double TOLERANCE = 1e-9;
+
+    // Circles that reach above this latitude are always measured exactly
+    private static final double MAX_APPROXIMATE_LATITUDE = 89;
+
+    private final double latitude;
+    private final double longitude;
+    private final double radius;
+    private final double latitudeDelta;
+    private final double longitudeDelta;
+    private final double cosLatitude;
+    private final double sinLatitude;
+    private final boolean approximate;
+    private final double innerSquared;
+    private final double outerSquared;
+
+    /**
+     * Creates a filter for a circle.
+     *
+     * @param center The center of the circle
+     * @param radius The radius of the circle, in meters
+     */
+    public DistanceFilter(@NonNull GeoLocation center, double radius) {
+        this.latitude = center.latitude;
+        this.longitude = center.longitude;
+        this.radius = radius;
+        double theta = radius / Constants.EARTH_MEAN_RADIUS;
+        double latitudeRadians = Math.toRadians(center.latitude);
+        this.cosLatitude = Math.cos(latitudeRadians);
+        this.sinLatitude = Math.sin(latitudeRadians);
+
+        this.latitudeDelta = Math.toDegrees(theta) * (1 + TOLERANCE);
+        if (theta < Math.PI / 2 - Math.abs(latitudeRadians)) {
+            // The widest point of a circle that does not contain a pole
+            this.longitudeDelta = Math.toDegrees(Math.asin(Math.sin(theta) / this.cosLatitude)) * (1 + TOLERANCE);
+        } else {
+            this.longitudeDelta = 360;
+        }
+
+        double maxLatitude = Math.abs(center.latitude) + Math.toDegrees(theta);
+        double band = Double.MAX_VALUE;
+        if (maxLatitude < MAX_APPROXIMATE_LATITUDE) {
+            double cosMaxLatitude = Math.cos(Math.toRadians(maxLatitude));
+            band = theta * theta / (cosMaxLatitude * cosMaxLatitude) + TOLERANCE;
+        }
+        this.approximate = band <= MAX_ERROR_BAND;
+        this.innerSquared = theta * theta * (1 - band) * (1 - band);
+        this.outerSquared = theta * theta * (1 + band) * (1 + band);
+    }
+
+    /**
+     * Returns whether a location is within the radius of the center.
+     *
+     * @param latitude The latitude of the location
+     * @param longitude The longitude of the location
+     * @return Whether the distance to the center is at most the radius
+     */
+    public boolean contains(double latitude, double longitude) {
+        double latitudeDifference = latitude - this.latitude;
+        if (Math.abs(latitudeDifference) > this.latitudeDelta) {
+            return false;
+        }
+        double longitudeDifference = GeoUtils.wrapLongitude(longitude - this.longitude);
+        if (Math.abs(longitudeDifference) > this.longitudeDelta) {
+            return false;
+        }
+        if (this.approximate) {
+            double latitudeRadians = Math.toRadians(latitudeDifference);
+            // The cosine of the mean latitude, to first order
+            double cosMeanLatitude = this.cosLatitude - this.sinLatitude * latitudeRadians / 2;
+            double x = cosMeanLatitude * Math.toRadians(longitudeDifference);
+            double distanceSquared = latitudeRadians * latitudeRadians + x * x;
+            if (distanceSquared <= this.innerSquared) {
+                return true;
+            }
+            if (distanceSquared >= this.outerSquared) {
+                return false;
+            }
+        }
+        return GeoUtils.distance(this.latitude, this.longitude, latitude, longitude) <= this.radius;
+    }
+
+    /**
+     * Returns whether a location is within the radius of the center.
+     *
+     * @param location The location
+     * @return Whether the distance to the center is at most the radius
+     */
+    public boolean contains(@NonNull GeoLocation location) {
+        return contains(location.latitude, location.longitude);
+    }
+
+    /**
+     * Returns a bounding box that contains every location this filter accepts. Circles that contain a pole span all
+     * longitudes.
+     *
+     * @return The bounding box of the circle
+     */
+    @NonNull
+    public GeoBoundingBox getBoundingBox() {
+        double south = Math.max(-90, this.latitude - this.latitudeDelta);
+        double north = Math.min(90, this.latitude + this.latitudeDelta);
+        if (this.longitudeDelta >= 180) {
+            return new GeoBoundingBox(new GeoLocation(south, -180), new GeoLocation(north, 180));
+        }
+        double west = GeoUtils.wrapLongitude(this.longitude - this.longitudeDelta);
+        double east = GeoUtils.wrapLongitude(this.longitude + this.longitudeDelta);
+        return new GeoBoundingBox(new GeoLocation(south, west), new GeoLocation(north, east));
+    }
+
+    /**
+     * Tests many locations held in parallel arrays at once. Bit i of the result, that is bit i % 64 of
+     * inside[i / 64], is set if location i is within the radius, as expected by {@link java.util.BitSet#valueOf}.
+     *
+     * @param latitudes The latitudes of the locations
+     * @param longitudes The longitudes of the locations, same length as latitudes
+     * @param inside The bitmap to write the result into, with at least one bit per location
+     * @return The number of locations within the radius
+     */
+    public int contains(@NonNull double[] latitudes, @NonNull double[] longitudes, @NonNull long[] inside) {
+        if (latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("Got " + latitudes.length + " latitudes but "
+                    + longitudes.length + " longitudes");
+        }
+        int count = latitudes.length;
+        if (inside.length < (count + Long.SIZE - 1) / Long.SIZE) {
+            throw new IllegalArgumentException("Bitmap of length " + inside.length + " can't hold " + count
+                    + " locations");
+        }
+        int insideCount = 0;
+        for (int word = 0; word * Long.SIZE < count; word++) {
+            long bits = 0;
+            int end = Math.min(count, (word + 1) * Long.SIZE);
+            for (int i = word * Long.SIZE; i < end; i++) {
+                if (contains(latitudes[i], longitudes[i])) {
+                    bits |= 1L << i;
+                }
+            }
+            inside[word] = bits;
+            insideCount += Long.bitCount(bits);
+        }
+        return insideCount;
+    }
+}
@@ -22,7 +22,8 @@ import java.util.logging.Logger;
 public final class GeoUtils {
     public static Logger LOGGER = Logger.getLogger("GeoFire");
 
-    private static final double MAX_SUPPORTED_RADIUS = 8587;
+    // The largest radius of a query in kilometers
+    public static final double MAX_SUPPORTED_RADIUS = 8587;
 
     private GeoUtils() {
         throw new AssertionError("No instances.");
@@ -33,8 +34,7 @@ public final class GeoUtils {
     }
 
     public static double distance(double lat1, double long1, double lat2, double long2) {
-        // Earth's mean radius in meters
-        final double radius = (Constants.EARTH_EQ_RADIUS + Constants.EARTH_POLAR_RADIUS)/2;
+        final double radius = Constants.EARTH_MEAN_RADIUS;
         double latDelta = Math.toRadians(lat1 - lat2);
         double lonDelta = Math.toRadians(long1 - long2);
 
@@ -44,6 +44,45 @@ public final class GeoUtils {
         return radius * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
     }
 
+    /**
+     * Computes the distances in meters from one location to many locations held in parallel arrays. The result is
+     * the same as calling {@link #distance(double, double, double, double)} for each location, but the trigonometry
+     * of the center is only computed once and no objects are created.
+     *
+     * @param latitude The latitude of the center
+     * @param longitude The longitude of the center
+     * @param latitudes The latitudes of the locations
+     * @param longitudes The longitudes of the locations, same length as latitudes
+     * @param out The array to write the distances into, at least as long as latitudes
+     */
+    public static void distances(double latitude, double longitude, double[] latitudes, double[] longitudes,
+                                 double[] out) {
+        int count = checkParallel(latitudes, longitudes, out.length);
+        final double radius = Constants.EARTH_MEAN_RADIUS;
+        double cosLatitude = Math.cos(Math.toRadians(latitude));
+        for (int i = 0; i < count; i++) {
+            double latDelta = Math.toRadians(latitudes[i] - latitude);
+            double lonDelta = Math.toRadians(longitudes[i] - longitude);
+            double sinLatDelta = Math.sin(latDelta/2);
+            double sinLonDelta = Math.sin(lonDelta/2);
+            double a = sinLatDelta*sinLatDelta
+                    + cosLatitude*Math.cos(Math.toRadians(latitudes[i]))*sinLonDelta*sinLonDelta;
+            out[i] = radius * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+        }
+    }
+
+    private static int checkParallel(double[] latitudes, double[] longitudes, int outLength) {
+        if (latitudes.length != longitudes.length) {
+            throw new IllegalArgumentException("Got " + latitudes.length + " latitudes but "
+                    + longitudes.length + " longitudes");
+        }
+        if (outLength < latitudes.length) {
+            throw new IllegalArgumentException("Output of length " + outLength + " can't hold "
+                    + latitudes.length + " results");
+        }
+        return latitudes.length;
+    }
+
     public static double distanceToLatitudeDegrees(double distance) {
         return distance/Constants.METERS_PER_DEGREE_LATITUDE;
     }
@@ -29,4 +29,9 @@ class AndroidEventRaiser implements EventRaiser {
     public void raiseEvent(Runnable r) {
         this.mainThreadHandler.post(r);
     }
+
+    @Override
+    public void raiseEventDelayed(Runnable r, long delayMillis) {
+        this.mainThreadHandler.postDelayed(r, delayMillis);
+    }
 }
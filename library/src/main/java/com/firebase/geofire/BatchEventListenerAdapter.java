@@ -0,0 +1,233 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+
+/**
+ * Collects the events of a GeoQuery into batches for a GeoQueryBatchEventListener.
+ *
+ * Unlike other listeners, GeoQuery calls this one directly on the thread that applies its changes instead of posting
+ * every event. The events are coalesced into a batch, which is posted once it holds maxBatchSize keys or maxDelay
+ * after its first event, whichever comes first. Ready and error events are posted right away, after the batches
+ * before them.
+ */
+final class BatchEventListenerAdapter implements GeoQueryDataEventListener {
+    private final GeoQueryBatchEventListener listener;
+    private final EventRaiser eventRaiser;
+    private final int maxBatchSize;
+    private final long maxDelayMillis;
+
+    // Guarded by this
+    private GeoQueryEventBatch.Builder pending = new GeoQueryEventBatch.Builder();
+    // The latest location of every key in the query, so batches can tell whether a key really moved
+    private final Map<String, GeoLocation> locations = new HashMap<>();
+    private final Queue<Runnable> deliveries = new ArrayDeque<>();
+    private boolean flushScheduled;
+    private boolean deliveryScheduled;
+
+    private final Runnable flushTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (BatchEventListenerAdapter.this) {
+                BatchEventListenerAdapter.this.flushScheduled = false;
+                BatchEventListenerAdapter.this.sealPending();
+            }
+            BatchEventListenerAdapter.this.deliver();
+        }
+    };
+
+    private final Runnable deliveryTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (BatchEventListenerAdapter.this) {
+                BatchEventListenerAdapter.this.deliveryScheduled = false;
+            }
+            BatchEventListenerAdapter.this.deliver();
+        }
+    };
+
+    BatchEventListenerAdapter(GeoQueryBatchEventListener listener, EventRaiser eventRaiser, int maxBatchSize,
+                              long maxDelayMillis) {
+        this.listener = listener;
+        this.eventRaiser = eventRaiser;
+        this.maxBatchSize = maxBatchSize;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    @Override
+    public void onDataEntered(DataSnapshot dataSnapshot, GeoLocation location) {
+        this.entered(dataSnapshot.getKey(), dataSnapshot, location);
+    }
+
+    @Override
+    public void onDataExited(DataSnapshot dataSnapshot) {
+        this.exited(dataSnapshot.getKey(), dataSnapshot);
+    }
+
+    @Override
+    public void onDataMoved(DataSnapshot dataSnapshot, GeoLocation location) {
+        this.moved(dataSnapshot.getKey(), dataSnapshot, location);
+    }
+
+    @Override
+    public void onDataChanged(DataSnapshot dataSnapshot, GeoLocation location) {
+        this.changed(dataSnapshot.getKey(), dataSnapshot, location);
+    }
+
+    void entered(String key, DataSnapshot dataSnapshot, GeoLocation location) {
+        synchronized (this) {
+            this.locations.put(key, location);
+            this.pending.entered(key, dataSnapshot, location);
+        }
+        this.scheduleFlush();
+    }
+
+    void exited(String key, DataSnapshot dataSnapshot) {
+        synchronized (this) {
+            this.pending.exited(key, dataSnapshot, this.locations.remove(key));
+        }
+        this.scheduleFlush();
+    }
+
+    void moved(String key, DataSnapshot dataSnapshot, GeoLocation location) {
+        synchronized (this) {
+            this.pending.moved(key, dataSnapshot, this.locations.put(key, location), location);
+        }
+        this.scheduleFlush();
+    }
+
+    void changed(String key, DataSnapshot dataSnapshot, GeoLocation location) {
+        synchronized (this) {
+            this.locations.put(key, location);
+            this.pending.changed(key, dataSnapshot, location);
+        }
+        this.scheduleFlush();
+    }
+
+    @Override
+    public void onGeoQueryReady() {
+        this.scheduleDelivery(new Runnable() {
+            @Override
+            public void run() {
+                listener.onGeoQueryReady();
+            }
+        });
+    }
+
+    @Override
+    public void onGeoQueryError(final DatabaseError error) {
+        this.scheduleDelivery(new Runnable() {
+            @Override
+            public void run() {
+                listener.onGeoQueryError(error);
+            }
+        });
+    }
+
+    // Queues the pending batch for delivery unless its events cancel out. Must hold the lock.
+    private void sealPending() {
+        if (this.pending.size() == 0) {
+            return;
+        }
+        final GeoQueryEventBatch batch = this.pending.build();
+        this.pending = new GeoQueryEventBatch.Builder();
+        if (!batch.isEmpty()) {
+            this.deliveries.add(new Runnable() {
+                @Override
+                public void run() {
+                    listener.onDataBatch(batch);
+                }
+            });
+        }
+    }
+
+    private void scheduleFlush() {
+        boolean postFlush = false;
+        boolean postDelivery = false;
+        synchronized (this) {
+            if (this.pending.size() >= this.maxBatchSize) {
+                this.sealPending();
+                postDelivery = !this.deliveryScheduled;
+                this.deliveryScheduled = true;
+            } else if (!this.flushScheduled) {
+                postFlush = true;
+                this.flushScheduled = true;
+            }
+        }
+        if (postDelivery) {
+            this.eventRaiser.raiseEvent(this.deliveryTask);
+        }
+        if (postFlush) {
+            if (this.maxDelayMillis > 0) {
+                this.eventRaiser.raiseEventDelayed(this.flushTask, this.maxDelayMillis);
+            } else {
+                this.eventRaiser.raiseEvent(this.flushTask);
+            }
+        }
+    }
+
+    // Delivers the pending batch and then the event
+    private void scheduleDelivery(Runnable event) {
+        boolean post;
+        synchronized (this) {
+            this.sealPending();
+            this.deliveries.add(event);
+            post = !this.deliveryScheduled;
+            this.deliveryScheduled = true;
+        }
+        if (post) {
+            this.eventRaiser.raiseEvent(this.deliveryTask);
+        }
+    }
+
+    // Runs on the event thread, so deliveries never run concurrently
+    private void deliver() {
+        while (true) {
+            Runnable delivery;
+            synchronized (this) {
+                delivery = this.deliveries.poll();
+            }
+            if (delivery == null) {
+                return;
+            }
+            delivery.run();
+        }
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        final BatchEventListenerAdapter that = (BatchEventListenerAdapter) o;
+        return listener.equals(that.listener);
+    }
+
+    @Override
+    public int hashCode() {
+        return listener.hashCode();
+    }
+}
@@ -17,4 +17,6 @@ package com.firebase.geofire;
 
 interface EventRaiser {
     void raiseEvent(Runnable r);
+
+    void raiseEventDelayed(Runnable r, long delayMillis);
 }
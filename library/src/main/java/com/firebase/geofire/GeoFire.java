@@ -17,7 +17,9 @@ package com.firebase.geofire;
 
 import androidx.annotation.NonNull;
 
+import com.firebase.geofire.core.CellEncoding;
 import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashCellEncoding;
 import com.google.firebase.database.DataSnapshot;
 import com.google.firebase.database.DatabaseError;
 import com.google.firebase.database.DatabaseException;
@@ -26,6 +28,9 @@ import com.google.firebase.database.ValueEventListener;
 import com.google.firebase.database.GenericTypeIndicator;
 import java.lang.Throwable;
 import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
 import java.util.logging.Logger;
 
 import static com.firebase.geofire.util.GeoUtils.capRadius;
@@ -105,8 +110,21 @@ public class GeoFire {
         }
     }
 
+    // The number of bits of the keys stored in the "g" child, 10 Base32 characters
+    static final int KEY_PRECISION_BITS = 50;
+
     private final DatabaseReference databaseReference;
+    private final CellEncoding cellEncoding;
     private final EventRaiser eventRaiser;
+    // Applies the changes of all queries of this instance, so neither callers nor the database thread apply them
+    private final Executor queryWriter = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        @Override
+        public Thread newThread(@NonNull Runnable r) {
+            Thread thread = new Thread(r, "GeoQuery writer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
 
     /**
      * Creates a new GeoFire instance at the given Firebase reference.
@@ -114,7 +132,20 @@ public class GeoFire {
      * @param databaseReference The Firebase reference this GeoFire instance uses
      */
     public GeoFire(DatabaseReference databaseReference) {
+        this(databaseReference, new GeoHashCellEncoding());
+    }
+
+    /**
+     * Creates a new GeoFire instance at the given Firebase reference that stores and queries locations with the
+     * given cell encoding. All clients of the same data must use the same encoding, and only the default
+     * GeoHashCellEncoding is compatible with other GeoFire clients.
+     *
+     * @param databaseReference The Firebase reference this GeoFire instance uses
+     * @param cellEncoding The encoding of the keys stored for locations
+     */
+    public GeoFire(DatabaseReference databaseReference, CellEncoding cellEncoding) {
         this.databaseReference = databaseReference;
+        this.cellEncoding = cellEncoding;
         EventRaiser eventRaiser;
         try {
             eventRaiser = new AndroidEventRaiser();
@@ -132,10 +163,27 @@ public class GeoFire {
         return this.databaseReference;
     }
 
+    /**
+     * @return The cell encoding this GeoFire instance uses
+     */
+    public CellEncoding getCellEncoding() {
+        return this.cellEncoding;
+    }
+
     DatabaseReference getDatabaseRefForKey(String key) {
         return this.databaseReference.child(key);
     }
 
+    // The key stored in the "g" child for a location, a geohash for the default encoding
+    GeoHash getCellKey(GeoLocation location) {
+        return GeoHash.fromBits(getCellKeyBits(location.latitude, location.longitude), KEY_PRECISION_BITS);
+    }
+
+    // The bits of the key stored in the "g" child for a location, with KEY_PRECISION_BITS bits
+    long getCellKeyBits(double latitude, double longitude) {
+        return this.cellEncoding.encodeBits(latitude, longitude, KEY_PRECISION_BITS);
+    }
+
     /**
      * Sets the location for a given key.
      *
@@ -159,7 +207,7 @@ public class GeoFire {
             throw new NullPointerException();
         }
         DatabaseReference keyRef = this.getDatabaseRefForKey(key);
-        GeoHash geoHash = new GeoHash(location);
+        GeoHash geoHash = this.getCellKey(location);
         Map<String, Object> updates = new HashMap<>();
         updates.put("g", geoHash.getGeoHashString());
         updates.put("l", Arrays.asList(location.latitude, location.longitude));
@@ -232,7 +280,45 @@ public class GeoFire {
         return new GeoQuery(this, center, capRadius(radius));
     }
 
+    /**
+     * Returns a new Query object for all locations within a shape, such as a {@link GeoBoundingBox} or a
+     * {@link GeoPolygon}.
+     *
+     * @param shape The shape of the query
+     * @return The new GeoQuery object
+     */
+    public GeoQuery queryInShape(@NonNull GeoShape shape) {
+        return new GeoQuery(this, shape);
+    }
+
+    /**
+     * Returns a new query that keeps the given number of keys nearest to the center ranked by distance. It searches
+     * a growing radius around the center until it found enough keys, up to the maximum supported radius.
+     *
+     * @param center The center of the query
+     * @param count The number of nearest keys to keep, must be positive
+     * @return The new GeoNearestQuery object
+     */
+    public GeoNearestQuery queryNearest(@NonNull GeoLocation center, int count) {
+        if (count <= 0) {
+            throw new IllegalArgumentException("The number of nearest keys must be positive: " + count);
+        }
+        return new GeoNearestQuery(this, center, count);
+    }
+
     public void raiseEvent(Runnable r) {
         this.eventRaiser.raiseEvent(r);
     }
+
+    void raiseEventDelayed(Runnable r, long delayMillis) {
+        this.eventRaiser.raiseEventDelayed(r, delayMillis);
+    }
+
+    void applyQueryChanges(Runnable r) {
+        this.queryWriter.execute(r);
+    }
+
+    EventRaiser getEventRaiser() {
+        return this.eventRaiser;
+    }
 }
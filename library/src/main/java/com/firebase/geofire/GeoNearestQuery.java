@@ -0,0 +1,383 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import androidx.annotation.NonNull;
+
+import com.firebase.geofire.util.GeoUtils;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A GeoNearestQuery keeps the nearest keys to a center up to date, see GeoFire.queryNearest.
+ *
+ * It runs a GeoQuery around the center and adapts its radius: the radius doubles until the GeoQuery holds enough keys,
+ * and shrinks towards the distance of the farthest nearest key once it holds many more than needed. Once the GeoQuery
+ * is ready for the current center and radius, all keys within its radius are known, so the nearest of them are the
+ * nearest keys overall. Rankings are only reported in that state.
+ *
+ * The keys in the GeoQuery are kept ordered by their distance to the center, so an event only re-ranks the nearest
+ * keys if it affects them. All state is kept on the thread events are raised on, public methods hand their changes
+ * over to that thread.
+ */
+public class GeoNearestQuery {
+
+    // The radius of the first search, in kilometers
+    private static final double INITIAL_RADIUS = 1;
+
+    // The smallest radius the search is shrunk to, in kilometers
+    private static final double MIN_RADIUS = 0.01;
+
+    // The radius is shrunk once the GeoQuery holds this many times the number of requested keys
+    private static final int SHRINK_FACTOR = 4;
+
+    // The radius is shrunk to this many times the distance of the farthest nearest key
+    private static final double SHRINK_MARGIN = 1.5;
+
+    private static class Candidate {
+        final String key;
+        final GeoLocation location;
+        // The distance to the center, in meters
+        final double distance;
+
+        Candidate(String key, GeoLocation location, double distance) {
+            this.key = key;
+            this.location = location;
+            this.distance = distance;
+        }
+    }
+
+    private static final Comparator<Candidate> BY_DISTANCE = new Comparator<Candidate>() {
+        @Override
+        public int compare(Candidate a, Candidate b) {
+            int byDistance = Double.compare(a.distance, b.distance);
+            return (byDistance != 0) ? byDistance : a.key.compareTo(b.key);
+        }
+    };
+
+    private final GeoFire geoFire;
+    private final GeoQuery geoQuery;
+    private final int count;
+    private final GeoQuery.CriteriaReadyListener queryListener = new GeoQuery.CriteriaReadyListener() {
+        @Override
+        public void onDataEntered(DataSnapshot dataSnapshot, GeoLocation location) {
+            GeoNearestQuery.this.putCandidate(dataSnapshot.getKey(), location);
+        }
+
+        @Override
+        public void onDataExited(DataSnapshot dataSnapshot) {
+            GeoNearestQuery.this.removeCandidate(dataSnapshot.getKey());
+        }
+
+        @Override
+        public void onDataMoved(DataSnapshot dataSnapshot, GeoLocation location) {
+            GeoNearestQuery.this.putCandidate(dataSnapshot.getKey(), location);
+        }
+
+        @Override
+        public void onDataChanged(DataSnapshot dataSnapshot, GeoLocation location) {
+            // Moves are reported separately
+        }
+
+        @Override
+        public void onGeoQueryReady() {
+            // The GeoQuery raises onGeoQueryReady(Object) for this listener
+        }
+
+        @Override
+        public void onGeoQueryReady(Object criteriaToken) {
+            GeoNearestQuery.this.criteriaReady(criteriaToken);
+        }
+
+        @Override
+        public void onGeoQueryError(DatabaseError error) {
+            for (GeoNearestQueryEventListener listener: GeoNearestQuery.this.listeners) {
+                listener.onGeoQueryError(error);
+            }
+        }
+    };
+
+    // The listeners as added and removed by callers, the event thread follows them in listeners
+    private final Set<GeoNearestQueryEventListener> registeredListeners =
+            Collections.newSetFromMap(new ConcurrentHashMap<GeoNearestQueryEventListener, Boolean>());
+
+    // Only accessed on the event thread
+    private final List<GeoNearestQueryEventListener> listeners = new ArrayList<>();
+    private final Map<String, Candidate> candidates = new HashMap<>();
+    private final TreeSet<Candidate> ordered = new TreeSet<>(BY_DISTANCE);
+    // The nearest keys as last reported, by rank
+    private final List<Candidate> ranked = new ArrayList<>();
+    private final Set<String> rankedKeys = new HashSet<>();
+    private GeoLocation center;
+    private double radius;
+    // The criteria of the GeoQuery the ranking waits for, ready events for earlier criteria are ignored
+    private Object expectedCriteria;
+    // Whether the GeoQuery is ready for the expected criteria and holds enough keys
+    private boolean ready;
+
+    /**
+     * Creates a new GeoNearestQuery.
+     * @param geoFire The GeoFire object this query uses
+     * @param center The center of this query
+     * @param count The number of nearest keys to keep
+     */
+    GeoNearestQuery(GeoFire geoFire, GeoLocation center, int count) {
+        this.geoFire = geoFire;
+        this.count = count;
+        this.center = center;
+        this.radius = INITIAL_RADIUS;
+        this.geoQuery = geoFire.queryAtLocation(center, INITIAL_RADIUS);
+        this.expectedCriteria = this.geoQuery.getCriteriaToken();
+    }
+
+    private void putCandidate(String key, GeoLocation location) {
+        Candidate candidate = new Candidate(key, location, GeoUtils.distance(this.center, location));
+        Candidate previous = this.candidates.put(key, candidate);
+        if (previous != null) {
+            this.ordered.remove(previous);
+        }
+        this.ordered.add(candidate);
+        if (this.ready) {
+            if (this.rankedKeys.contains(key) || this.ranked.size() < this.count
+                    || BY_DISTANCE.compare(candidate, this.ranked.get(this.ranked.size() - 1)) < 0) {
+                this.updateRanking();
+            }
+            this.adaptRadius();
+        }
+    }
+
+    private void removeCandidate(String key) {
+        Candidate previous = this.candidates.remove(key);
+        if (previous == null) {
+            return;
+        }
+        this.ordered.remove(previous);
+        if (this.ready) {
+            if (this.rankedKeys.contains(key)) {
+                this.updateRanking();
+            }
+            this.adaptRadius();
+        }
+    }
+
+    private void criteriaReady(Object criteriaToken) {
+        if (criteriaToken != this.expectedCriteria) {
+            // Raised for a center or radius that was replaced since
+            return;
+        }
+        boolean wasReady = this.ready;
+        this.ready = true;
+        this.updateRanking();
+        this.adaptRadius();
+        if (this.ready && !wasReady) {
+            for (GeoNearestQueryEventListener listener: this.listeners) {
+                listener.onGeoQueryReady();
+            }
+        }
+    }
+
+    // Reports the changes of the nearest keys, comparing the nearest candidates with the last reported ranking
+    private void updateRanking() {
+        List<Candidate> nearest = new ArrayList<>(Math.min(this.count, this.ordered.size()));
+        Set<String> nearestKeys = new HashSet<>();
+        for (Candidate candidate: this.ordered) {
+            if (nearest.size() == this.count) {
+                break;
+            }
+            nearest.add(candidate);
+            nearestKeys.add(candidate.key);
+        }
+
+        for (Candidate previous: this.ranked) {
+            if (!nearestKeys.contains(previous.key)) {
+                for (GeoNearestQueryEventListener listener: this.listeners) {
+                    listener.onKeyUnranked(previous.key);
+                }
+            }
+        }
+        for (int rank = 0; rank < nearest.size(); rank++) {
+            Candidate candidate = nearest.get(rank);
+            Candidate previous = (rank < this.ranked.size()) ? this.ranked.get(rank) : null;
+            if (previous == null || !previous.key.equals(candidate.key)
+                    || !previous.location.equals(candidate.location)) {
+                for (GeoNearestQueryEventListener listener: this.listeners) {
+                    listener.onKeyRanked(candidate.key, candidate.location, rank);
+                }
+            }
+        }
+        this.ranked.clear();
+        this.ranked.addAll(nearest);
+        this.rankedKeys.clear();
+        this.rankedKeys.addAll(nearestKeys);
+    }
+
+    // Searches farther if the GeoQuery holds too few keys, and closer if it holds many more than needed
+    private void adaptRadius() {
+        if (this.candidates.size() < this.count && this.radius < GeoUtils.MAX_SUPPORTED_RADIUS) {
+            // The keys found so far keep their ranks, farther keys are ranked once they are loaded
+            this.setRadius(Math.min(2 * this.radius, GeoUtils.MAX_SUPPORTED_RADIUS));
+            this.ready = false;
+        } else if (this.candidates.size() > SHRINK_FACTOR * this.count) {
+            double farthest = this.ranked.get(this.ranked.size() - 1).distance / 1000;
+            double shrunk = Math.max(MIN_RADIUS, SHRINK_MARGIN * farthest);
+            if (shrunk < this.radius / 2) {
+                // Only keys beyond the nearest keys exit, so the ranking stays complete
+                this.setRadius(shrunk);
+            }
+        }
+    }
+
+    private void setRadius(double radius) {
+        this.radius = radius;
+        this.geoQuery.setRadius(radius);
+        this.expectedCriteria = this.geoQuery.getCriteriaToken();
+    }
+
+    /**
+     * Adds a new listener to this query. It receives onKeyRanked for the current nearest keys and onGeoQueryReady if
+     * they are complete.
+     *
+     * @throws IllegalArgumentException If this listener was already added
+     *
+     * @param listener The listener to add
+     */
+    public void addGeoNearestQueryEventListener(@NonNull final GeoNearestQueryEventListener listener) {
+        if (!this.registeredListeners.add(listener)) {
+            throw new IllegalArgumentException("Added the same listener twice to a GeoNearestQuery!");
+        }
+        this.geoFire.raiseEvent(new Runnable() {
+            @Override
+            public void run() {
+                listeners.add(listener);
+                if (listeners.size() == 1) {
+                    geoQuery.addGeoQueryDataEventListener(queryListener);
+                    return;
+                }
+                for (int rank = 0; rank < ranked.size(); rank++) {
+                    Candidate candidate = ranked.get(rank);
+                    listener.onKeyRanked(candidate.key, candidate.location, rank);
+                }
+                if (ready) {
+                    listener.onGeoQueryReady();
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes a listener from this query. The database queries are detached once the last listener is removed.
+     *
+     * @throws IllegalArgumentException If the listener was removed already or never added
+     *
+     * @param listener The listener to remove
+     */
+    public void removeGeoNearestQueryEventListener(@NonNull final GeoNearestQueryEventListener listener) {
+        if (!this.registeredListeners.remove(listener)) {
+            throw new IllegalArgumentException("Trying to remove listener that was removed or not added!");
+        }
+        this.geoFire.raiseEvent(new Runnable() {
+            @Override
+            public void run() {
+                listeners.remove(listener);
+                if (listeners.isEmpty()) {
+                    reset();
+                }
+            }
+        });
+    }
+
+    /**
+     * Removes all listeners from this query.
+     */
+    public void removeAllListeners() {
+        this.registeredListeners.clear();
+        this.geoFire.raiseEvent(new Runnable() {
+            @Override
+            public void run() {
+                if (!listeners.isEmpty()) {
+                    listeners.clear();
+                    reset();
+                }
+            }
+        });
+    }
+
+    private void reset() {
+        this.geoQuery.removeGeoQueryEventListener(this.queryListener);
+        this.candidates.clear();
+        this.ordered.clear();
+        this.ranked.clear();
+        this.rankedKeys.clear();
+        this.ready = false;
+    }
+
+    /**
+     * Sets the new center of this query. The nearest keys to the new center are reported once they are known.
+     *
+     * @param center The new center
+     */
+    public void setCenter(@NonNull final GeoLocation center) {
+        // The GeoQuery is only changed on the event thread, so the criteria read back are the ones set here
+        this.geoFire.raiseEvent(new Runnable() {
+            @Override
+            public void run() {
+                GeoNearestQuery.this.moveCenter(center);
+            }
+        });
+    }
+
+    private void moveCenter(GeoLocation center) {
+        this.center = center;
+        this.ready = false;
+        this.geoQuery.setCenter(center);
+        this.expectedCriteria = this.geoQuery.getCriteriaToken();
+        // The ranking is reported again once the GeoQuery is ready for the new center
+        this.ordered.clear();
+        for (Map.Entry<String, Candidate> entry: this.candidates.entrySet()) {
+            Candidate previous = entry.getValue();
+            Candidate candidate = new Candidate(previous.key, previous.location,
+                    GeoUtils.distance(center, previous.location));
+            entry.setValue(candidate);
+            this.ordered.add(candidate);
+        }
+    }
+
+    /**
+     * @return The number of nearest keys this query keeps
+     */
+    public int getCount() {
+        return this.count;
+    }
+
+    /**
+     * @return The GeoQuery this query uses to find keys around its center
+     */
+    @NonNull
+    public GeoQuery getGeoQuery() {
+        return this.geoQuery;
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.google.firebase.database.DatabaseError;
+
+/**
+ * GeoNearestQuery notifies listeners with this interface about changes of the nearest keys to its center.
+ */
+public interface GeoNearestQueryEventListener {
+
+    /**
+     * Called if a key became one of the nearest keys, or if the rank or location of one of the nearest keys changed.
+     * This method is called for every key currently among the nearest keys at the time of adding the listener.
+     *
+     * @param key The key
+     * @param location The location of the key
+     * @param rank The rank of the key, 0 for the nearest key
+     */
+    void onKeyRanked(String key, GeoLocation location, int rank);
+
+    /**
+     * Called if a key is no longer one of the nearest keys. This method is only called if onKeyRanked was called for
+     * the key.
+     *
+     * @param key The key
+     */
+    void onKeyUnranked(String key);
+
+    /**
+     * Called once the nearest keys are known, that is once the query found the requested number of keys or searched
+     * as far as it can. It is called again after the nearest keys were updated for a new center, or after the query
+     * had to search farther because keys left. Shrinking the search does not call it again.
+     */
+    void onGeoQueryReady();
+
+    /**
+     * Called in case an error occurred while retrieving locations for a query, e.g. violating security rules.
+     * @param error The error that occurred while retrieving the query
+     */
+    void onGeoQueryError(DatabaseError error);
+}
@@ -17,8 +17,10 @@ package com.firebase.geofire;
 
 import androidx.annotation.NonNull;
 
-import com.firebase.geofire.core.GeoHash;
 import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.GeoHashRangeIndex;
+import com.firebase.geofire.core.QueryPlan;
+import com.firebase.geofire.util.DistanceFilter;
 import com.firebase.geofire.util.GeoUtils;
 import com.google.firebase.database.ChildEventListener;
 import com.google.firebase.database.DataSnapshot;
@@ -27,75 +29,211 @@ import com.google.firebase.database.DatabaseReference;
 import com.google.firebase.database.Query;
 import com.google.firebase.database.ValueEventListener;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.logging.Level;
 
 import static com.firebase.geofire.util.GeoUtils.capRadius;
 
 /**
- * A GeoQuery object can be used for geo queries in a given circle. The GeoQuery class is thread safe.
+ * A GeoQuery object can be used for geo queries in a given circle or shape. The GeoQuery class is thread safe.
+ *
+ * All changes to the state of a query, from callers as well as from the database, are queued and applied one after
+ * the other on a writer thread of the GeoFire instance. Callers and the database thread only queue their changes, so
+ * neither side ever waits for the other. The criteria of the query are published as immutable snapshots and can be
+ * read at any time, invalid arguments are still rejected before a change is queued.
  */
 public class GeoQuery {
     private static final int KILOMETER_TO_METER = 1000;
 
-    private static class LocationInfo {
-        final GeoLocation location;
-        final boolean inGeoQuery;
-        final GeoHash geoHash;
-        final DataSnapshot dataSnapshot;
+    private static final int DEFAULT_MAX_BATCH_SIZE = 1000;
+
+    // How long a removed child is kept to see whether another database query reports it
+    private static final long REMOVAL_WINDOW_MILLIS = 100;
+
+    // The weight of the latest center update in the smoothed movement of the center
+    private static final double MOVEMENT_SMOOTHING = 0.5;
 
-        public LocationInfo(GeoLocation location, boolean inGeoQuery, DataSnapshot dataSnapshot) {
-            this.location = location;
-            this.inGeoQuery = inGeoQuery;
-            this.geoHash = new GeoHash(location);
-            this.dataSnapshot = dataSnapshot;
+    private static class Criteria {
+        final GeoLocation center;
+        final double radius;
+        final GeoShape shape;
+
+        Criteria(GeoLocation center, double radius, GeoShape shape) {
+            this.center = center;
+            this.radius = radius;
+            this.shape = shape;
+        }
+    }
+
+    // A listener whose ready events tell which criteria they were raised for, see getCriteriaToken
+    interface CriteriaReadyListener extends GeoQueryDataEventListener {
+        void onGeoQueryReady(Object criteriaToken);
+    }
+
+    private static class RetainedQuery {
+        final GeoLocation center;
+        final long retainedSince;
+
+        RetainedQuery(GeoLocation center, long retainedSince) {
+            this.center = center;
+            this.retainedSince = retainedSince;
         }
     }
 
     private final ChildEventListener childEventLister = new ChildEventListener() {
         @Override
-        public void onChildAdded(@NonNull DataSnapshot dataSnapshot, String s) {
-            synchronized (GeoQuery.this) {
-                GeoQuery.this.childAdded(dataSnapshot);
-            }
+        public void onChildAdded(@NonNull final DataSnapshot dataSnapshot, String s) {
+            GeoQuery.this.enqueue(new Runnable() {
+                @Override
+                public void run() {
+                    GeoQuery.this.childAdded(dataSnapshot);
+                }
+            });
         }
 
         @Override
-        public void onChildChanged(@NonNull DataSnapshot dataSnapshot, String s) {
-            synchronized (GeoQuery.this) {
-                GeoQuery.this.childChanged(dataSnapshot);
-            }
+        public void onChildChanged(@NonNull final DataSnapshot dataSnapshot, String s) {
+            GeoQuery.this.enqueue(new Runnable() {
+                @Override
+                public void run() {
+                    GeoQuery.this.childChanged(dataSnapshot);
+                }
+            });
         }
 
         @Override
-        public void onChildRemoved(@NonNull DataSnapshot dataSnapshot) {
-            synchronized (GeoQuery.this) {
-                GeoQuery.this.childRemoved(dataSnapshot);
-            }
+        public void onChildRemoved(@NonNull final DataSnapshot dataSnapshot) {
+            GeoQuery.this.enqueue(new Runnable() {
+                @Override
+                public void run() {
+                    GeoQuery.this.childRemoved(dataSnapshot);
+                }
+            });
         }
 
         @Override
-        public synchronized void onChildMoved(@NonNull DataSnapshot dataSnapshot, String s) {
+        public void onChildMoved(@NonNull DataSnapshot dataSnapshot, String s) {
             // ignore, this should be handled by onChildChanged
         }
 
         @Override
-        public synchronized void onCancelled(@NonNull DatabaseError databaseError) {
+        public void onCancelled(@NonNull DatabaseError databaseError) {
             // ignore, our API does not support onCancelled
         }
     };
 
     private final GeoFire geoFire;
-    private final Set<GeoQueryDataEventListener> eventListeners = new HashSet<>();
+
+    // Changes to apply, and the number of changes that were queued but not applied yet
+    private final Queue<Runnable> mutations = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingMutations = new AtomicInteger();
+    private final Runnable applyMutationsTask = new Runnable() {
+        @Override
+        public void run() {
+            GeoQuery.this.applyMutations();
+        }
+    };
+
+    // Published to all threads
+    private final AtomicReference<Criteria> criteria = new AtomicReference<>();
+    private final Set<GeoQueryDataEventListener> registeredListeners =
+            Collections.newSetFromMap(new ConcurrentHashMap<GeoQueryDataEventListener, Boolean>());
+
+    private final Runnable updateListenersTask = new Runnable() {
+        @Override
+        public void run() {
+            GeoQuery.this.updateListeners();
+        }
+    };
+    private final Runnable reportThrottledUpdatesTask = new Runnable() {
+        @Override
+        public void run() {
+            GeoQuery.this.reportThrottledUpdates();
+        }
+    };
+    // Posted when held back updates are due, applies them like any other change
+    private final Runnable throttleTimerTask = new Runnable() {
+        @Override
+        public void run() {
+            GeoQuery.this.enqueue(GeoQuery.this.reportThrottledUpdatesTask);
+        }
+    };
+    private final Runnable detachExpiredQueriesTask = new Runnable() {
+        @Override
+        public void run() {
+            GeoQuery.this.detachExpiredQueries();
+        }
+    };
+    // Posted when the time margin of a retained query runs out, detaches it like any other change
+    private final Runnable retentionTimerTask = new Runnable() {
+        @Override
+        public void run() {
+            GeoQuery.this.enqueue(GeoQuery.this.detachExpiredQueriesTask);
+        }
+    };
+    private final Runnable updateCriteriaTask = new Runnable() {
+        @Override
+        public void run() {
+            GeoQuery.this.updateCriteria();
+        }
+    };
+
+    // Only accessed while applying changes
+    private final List<GeoQueryDataEventListener> eventListeners = new ArrayList<>();
+    private GeoQueryDataEventListener[] postedListeners = new GeoQueryDataEventListener[0];
+    private BatchEventListenerAdapter[] batchListeners = new BatchEventListenerAdapter[0];
     private final Map<GeoHashQuery, Query> firebaseQueries = new HashMap<>();
     private final Set<GeoHashQuery> outstandingQueries = new HashSet<>();
-    private final Map<String, LocationInfo> locationInfos = new HashMap<>();
+    private final LocationStore locations = new LocationStore();
+    private final Map<GeoHashQuery, RetainedQuery> retainedQueries = new HashMap<>();
+    private final Set<GeoHashQuery> warmQueries = new HashSet<>();
+    private final LocationStore.SlotVisitor updateLocationVisitor = new LocationStore.SlotVisitor() {
+        @Override
+        public void visit(int slot) {
+            GeoQuery.this.updateLocation(slot, locations.getSnapshot(slot), locations.getLatitude(slot),
+                    locations.getLongitude(slot));
+        }
+    };
+    // The criteria last taken over, ready events are raised for them
+    private Criteria appliedCriteria;
     private GeoLocation center;
     private double radius;
+    private GeoShape shape;
+    // Created for the current center and radius when first needed
+    private DistanceFilter distanceFilter;
+    // The bounds of the criteria the locations were last evaluated for, all locations in the query are within them
+    private GeoBoundingBox evaluatedBounds;
     private Set<GeoHashQuery> queries;
+    // All attached queries, that is the current, retained and warm ones
+    private GeoHashRangeIndex queryIndex;
+    private GeoLocation queriesCenter;
+    private double retainDistance;
+    private long retainNanos;
+    private boolean retentionScheduled;
+    private long retentionDeadline;
+    private int prefetchSteps;
+    private double latitudeStep;
+    private double longitudeStep;
+    private GeoLocation movementCenter;
+    private double minUpdateDistance;
+    private long updateIntervalNanos;
+    // Keys whose updates are held back by the update throttle
+    private final Set<String> throttledKeys = new HashSet<>();
+    private boolean throttleScheduled;
+    private long throttleDeadline;
 
     /**
      * Creates a new GeoQuery object centered at the given location and with the given radius.
@@ -106,68 +244,300 @@ public class GeoQuery {
      */
     GeoQuery(GeoFire geoFire, GeoLocation center, double radius) {
         this.geoFire = geoFire;
-        this.center = center;
-        this.radius = radius * KILOMETER_TO_METER; // Convert from kilometers to meters.
+        this.criteria.set(new Criteria(center, radius * KILOMETER_TO_METER, null)); // Convert from kilometers to meters.
+        this.applyCriteria();
+        this.movementCenter = center;
+    }
+
+    /**
+     * Creates a new GeoQuery object for the given shape.
+     * @param geoFire The GeoFire object this GeoQuery uses
+     * @param shape The shape of this query
+     */
+    GeoQuery(GeoFire geoFire, GeoShape shape) {
+        this.geoFire = geoFire;
+        this.criteria.set(new Criteria(shape.getBoundingBox().getCenter(), 0, shape));
+        this.applyCriteria();
     }
 
-    private boolean locationIsInQuery(GeoLocation location) {
-        return GeoUtils.distance(location, center) <= this.radius;
+    // Queues a change for the writer thread, which is only handed the query if no change is pending already
+    private void enqueue(Runnable mutation) {
+        this.mutations.offer(mutation);
+        if (this.pendingMutations.getAndIncrement() == 0) {
+            this.geoFire.applyQueryChanges(this.applyMutationsTask);
+        }
     }
 
-    private void updateLocationInfo(final DataSnapshot dataSnapshot, final GeoLocation location) {
-        String key = dataSnapshot.getKey();
-        LocationInfo oldInfo = this.locationInfos.get(key);
-        boolean isNew = oldInfo == null;
-        final boolean changedLocation = oldInfo != null && !oldInfo.location.equals(location);
-        boolean wasInQuery = oldInfo != null && oldInfo.inGeoQuery;
+    // Applies the queued changes on the writer thread, including the ones queued meanwhile. Errors are rethrown once
+    // the queue is drained, so the count of pending changes stays consistent.
+    private void applyMutations() {
+        Error error = null;
+        do {
+            Runnable next = this.mutations.poll();
+            try {
+                next.run();
+            } catch (RuntimeException e) {
+                // Keep applying the other changes, a failed change must not stall the query
+                GeoUtils.LOGGER.log(Level.SEVERE, "Failed to update GeoQuery", e);
+            } catch (Error e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        } while (this.pendingMutations.decrementAndGet() != 0);
+        if (error != null) {
+            throw error;
+        }
+    }
 
-        boolean isInQuery = this.locationIsInQuery(location);
-        if ((isNew || !wasInQuery) && isInQuery) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
+    // Takes over the latest published criteria, returns false if they were applied already
+    private boolean applyCriteria() {
+        Criteria latest = this.criteria.get();
+        this.appliedCriteria = latest;
+        if (latest.center == this.center && latest.radius == this.radius && latest.shape == this.shape) {
+            return false;
+        }
+        this.center = latest.center;
+        this.radius = latest.radius;
+        this.shape = latest.shape;
+        this.distanceFilter = null;
+        return true;
+    }
+
+    // Applies the latest criteria and updates the database queries if they changed
+    private void updateCriteria() {
+        Criteria previous = this.appliedCriteria;
+        if (this.applyCriteria()) {
+            if (this.hasListeners()) {
+                this.setupQueries();
+            }
+        } else if (this.appliedCriteria != previous && this.hasListeners()) {
+            // The same criteria were set again, they are ready once the current ones are
+            this.checkAndFireReady();
+        }
+    }
+
+    // Raises the ready event for a listener, with the criteria it was raised for if the listener asks for them
+    private static void raiseReady(GeoQueryDataEventListener listener, Object criteriaToken) {
+        if (listener instanceof CriteriaReadyListener) {
+            ((CriteriaReadyListener) listener).onGeoQueryReady(criteriaToken);
+        } else {
+            listener.onGeoQueryReady();
+        }
+    }
+
+    private DistanceFilter getDistanceFilter() {
+        if (this.distanceFilter == null) {
+            this.distanceFilter = new DistanceFilter(this.center, this.radius);
+        }
+        return this.distanceFilter;
+    }
+
+    private GeoBoundingBox getCriteriaBounds() {
+        return (this.shape != null) ? this.shape.getBoundingBox() : this.getDistanceFilter().getBoundingBox();
+    }
+
+    private boolean locationIsInQuery(double latitude, double longitude) {
+        if (this.shape != null) {
+            return this.shape.contains(latitude, longitude);
+        }
+        return this.getDistanceFilter().contains(latitude, longitude);
+    }
+
+    private void updateLocation(DataSnapshot dataSnapshot, GeoLocation location) {
+        this.updateLocation(this.locations.indexOf(dataSnapshot.getKey()), dataSnapshot, location.latitude,
+                location.longitude);
+    }
+
+    // Updates the location in a slot of the store, or adds it if the slot is -1, and raises the events of the change
+    private void updateLocation(int slot, final DataSnapshot dataSnapshot, double latitude, double longitude) {
+        boolean isNew = slot < 0;
+        final boolean changedLocation = !isNew && (Double.compare(this.locations.getLatitude(slot), latitude) != 0
+                || Double.compare(this.locations.getLongitude(slot), longitude) != 0);
+        boolean wasInQuery = !isNew && this.locations.isInQuery(slot);
+
+        boolean isInQuery = this.locationIsInQuery(latitude, longitude);
+        if (isNew) {
+            long cellBits = this.geoFire.getCellKeyBits(latitude, longitude);
+            slot = this.locations.add(dataSnapshot.getKey(), latitude, longitude, cellBits, isInQuery, dataSnapshot);
+        } else {
+            long cellBits = changedLocation
+                    ? this.geoFire.getCellKeyBits(latitude, longitude) : this.locations.getCellBits(slot);
+            this.locations.set(slot, latitude, longitude, cellBits, isInQuery, dataSnapshot);
+        }
+        if (!isInQuery && !wasInQuery) {
+            return;
+        }
+        if (!wasInQuery) {
+            this.locations.setReported(slot, latitude, longitude, System.nanoTime());
+            this.raiseDataEntered(dataSnapshot, new GeoLocation(latitude, longitude));
+        } else if (isInQuery) {
+            this.reportUpdate(slot, changedLocation);
+        } else {
+            this.locations.clearUpdatePending(slot);
+            this.raiseDataExited(dataSnapshot);
+        }
+    }
+
+    // Raises the moved and changed events of a location that stays in the query, unless the update throttle holds
+    // them back
+    private void reportUpdate(int slot, boolean moved) {
+        double latitude = this.locations.getLatitude(slot);
+        double longitude = this.locations.getLongitude(slot);
+        if (moved && this.minUpdateDistance > 0 && GeoUtils.distance(this.locations.getReportedLatitude(slot),
+                this.locations.getReportedLongitude(slot), latitude, longitude) < this.minUpdateDistance) {
+            // Too small to report, a later event carries the latest state and the move
+            this.locations.setMovePending(slot);
+            return;
+        }
+        long now = System.nanoTime();
+        long deadline = this.locations.getReportedNanos(slot) + this.updateIntervalNanos;
+        if (now - deadline < 0) {
+            this.locations.setUpdatePending(slot, moved);
+            this.throttledKeys.add(this.locations.getKey(slot));
+            this.scheduleThrottledUpdates(deadline);
+            return;
+        }
+        moved |= this.locations.isMovePending(slot);
+        this.locations.setReported(slot, latitude, longitude, now);
+        this.raiseDataChanged(this.locations.getSnapshot(slot), new GeoLocation(latitude, longitude), moved);
+    }
+
+    // Makes sure the held back updates are reported at the deadline. Timers that fire early do no harm.
+    private void scheduleThrottledUpdates(long deadline) {
+        if (this.throttleScheduled && this.throttleDeadline - deadline <= 0) {
+            return;
+        }
+        this.throttleScheduled = true;
+        this.throttleDeadline = deadline;
+        long delayNanos = Math.max(0, deadline - System.nanoTime());
+        this.geoFire.raiseEventDelayed(this.throttleTimerTask, TimeUnit.NANOSECONDS.toMillis(delayNanos) + 1);
+    }
+
+    // Reports the held back updates that are due and schedules the next ones
+    private void reportThrottledUpdates() {
+        this.throttleScheduled = false;
+        long now = System.nanoTime();
+        boolean pending = false;
+        long nextDeadline = 0;
+        Iterator<String> it = this.throttledKeys.iterator();
+        while (it.hasNext()) {
+            int slot = this.locations.indexOf(it.next());
+            if (slot < 0 || !this.locations.isUpdatePending(slot) || !this.locations.isInQuery(slot)) {
+                it.remove();
+                continue;
+            }
+            long deadline = this.locations.getReportedNanos(slot) + this.updateIntervalNanos;
+            if (now - deadline >= 0) {
+                it.remove();
+                this.reportUpdate(slot, false);
+            } else if (!pending || deadline - nextDeadline < 0) {
+                pending = true;
+                nextDeadline = deadline;
+            }
+        }
+        if (pending) {
+            this.scheduleThrottledUpdates(nextDeadline);
+        }
+    }
+
+    // Every event is posted once for all listeners in the current listener array. Batching listeners collect the
+    // events on the writer thread instead and post the batches themselves.
+    private void raiseDataEntered(final DataSnapshot dataSnapshot, final GeoLocation location) {
+        for (BatchEventListenerAdapter listener: this.batchListeners) {
+            listener.onDataEntered(dataSnapshot, location);
+        }
+        final GeoQueryDataEventListener[] listeners = this.postedListeners;
+        if (listeners.length > 0) {
+            this.geoFire.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    for (GeoQueryDataEventListener listener: listeners) {
                         listener.onDataEntered(dataSnapshot, location);
                     }
-                });
+                }
+            });
+        }
+    }
+
+    private void raiseDataChanged(final DataSnapshot dataSnapshot, final GeoLocation location, final boolean moved) {
+        for (BatchEventListenerAdapter listener: this.batchListeners) {
+            if (moved) {
+                listener.onDataMoved(dataSnapshot, location);
             }
-        } else if (!isNew && isInQuery) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        if (changedLocation) {
+            listener.onDataChanged(dataSnapshot, location);
+        }
+        final GeoQueryDataEventListener[] listeners = this.postedListeners;
+        if (listeners.length > 0) {
+            this.geoFire.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    for (GeoQueryDataEventListener listener: listeners) {
+                        if (moved) {
                             listener.onDataMoved(dataSnapshot, location);
                         }
 
                         listener.onDataChanged(dataSnapshot, location);
                     }
-                });
-            }
-        } else if (wasInQuery && !isInQuery) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
+                }
+            });
+        }
+    }
+
+    private void raiseDataExited(final DataSnapshot dataSnapshot) {
+        for (BatchEventListenerAdapter listener: this.batchListeners) {
+            listener.onDataExited(dataSnapshot);
+        }
+        final GeoQueryDataEventListener[] listeners = this.postedListeners;
+        if (listeners.length > 0) {
+            this.geoFire.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    for (GeoQueryDataEventListener listener: listeners) {
                         listener.onDataExited(dataSnapshot);
                     }
-                });
-            }
+                }
+            });
         }
-        LocationInfo newInfo = new LocationInfo(location, this.locationIsInQuery(location), dataSnapshot);
-        this.locationInfos.put(key, newInfo);
     }
 
-    private boolean geoHashQueriesContainGeoHash(GeoHash geoHash) {
-        if (this.queries == null) {
-            return false;
+    private void raiseReady() {
+        for (BatchEventListenerAdapter listener: this.batchListeners) {
+            listener.onGeoQueryReady();
         }
-        for (GeoHashQuery query: this.queries) {
-            if (query.containsGeoHash(geoHash)) {
-                return true;
-            }
+        final GeoQueryDataEventListener[] listeners = this.postedListeners;
+        final Criteria readyCriteria = this.appliedCriteria;
+        if (listeners.length > 0) {
+            this.geoFire.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    for (GeoQueryDataEventListener listener: listeners) {
+                        raiseReady(listener, readyCriteria);
+                    }
+                }
+            });
         }
-        return false;
+    }
+
+    private void raiseError(final DatabaseError error) {
+        for (BatchEventListenerAdapter listener: this.batchListeners) {
+            listener.onGeoQueryError(error);
+        }
+        final GeoQueryDataEventListener[] listeners = this.postedListeners;
+        if (listeners.length > 0) {
+            this.geoFire.raiseEvent(new Runnable() {
+                @Override
+                public void run() {
+                    for (GeoQueryDataEventListener listener: listeners) {
+                        listener.onGeoQueryError(error);
+                    }
+                }
+            });
+        }
+    }
+
+    private boolean geoHashQueriesContainCell(long cellBits) {
+        return this.queryIndex != null && this.queryIndex.contains(cellBits, GeoFire.KEY_PRECISION_BITS);
     }
 
     private void reset() {
@@ -176,8 +546,15 @@ public class GeoQuery {
         }
         this.outstandingQueries.clear();
         this.firebaseQueries.clear();
+        this.retainedQueries.clear();
+        this.warmQueries.clear();
         this.queries = null;
-        this.locationInfos.clear();
+        this.queryIndex = null;
+        this.queriesCenter = null;
+        this.locations.clear();
+        this.evaluatedBounds = null;
+        this.throttledKeys.clear();
+        this.retentionScheduled = false;
     }
 
     private boolean hasListeners() {
@@ -185,19 +562,18 @@ public class GeoQuery {
     }
 
     private boolean canFireReady() {
-        return this.outstandingQueries.isEmpty();
+        // Only the queries of the current criteria have to be loaded, retained and warm queries are not waited for
+        for (GeoHashQuery query: this.outstandingQueries) {
+            if (this.queries != null && this.queries.contains(query)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     private void checkAndFireReady() {
         if (canFireReady()) {
-            for (final GeoQueryDataEventListener listener: this.eventListeners) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onGeoQueryReady();
-                    }
-                });
-            }
+            this.raiseReady();
         }
     }
 
@@ -205,72 +581,213 @@ public class GeoQuery {
         firebase.addListenerForSingleValueEvent(new ValueEventListener() {
             @Override
             public void onDataChange(@NonNull DataSnapshot dataSnapshot) {
-                synchronized (GeoQuery.this) {
-                    GeoQuery.this.outstandingQueries.remove(query);
-                    GeoQuery.this.checkAndFireReady();
-                }
+                GeoQuery.this.enqueue(new Runnable() {
+                    @Override
+                    public void run() {
+                        boolean removed = GeoQuery.this.outstandingQueries.remove(query);
+                        if (removed && GeoQuery.this.queries != null && GeoQuery.this.queries.contains(query)) {
+                            GeoQuery.this.checkAndFireReady();
+                        }
+                    }
+                });
             }
 
             @Override
             public void onCancelled(@NonNull final DatabaseError databaseError) {
-                synchronized (GeoQuery.this) {
-                    for (final GeoQueryDataEventListener listener : GeoQuery.this.eventListeners) {
-                        GeoQuery.this.geoFire.raiseEvent(new Runnable() {
-                            @Override
-                            public void run() {
-                                listener.onGeoQueryError(databaseError);
-                            }
-                        });
+                GeoQuery.this.enqueue(new Runnable() {
+                    @Override
+                    public void run() {
+                        GeoQuery.this.raiseError(databaseError);
                     }
-                }
+                });
             }
         });
     }
 
     private void setupQueries() {
         Set<GeoHashQuery> oldQueries = (this.queries == null) ? new HashSet<GeoHashQuery>() : this.queries;
-        Set<GeoHashQuery> newQueries = GeoHashQuery.queriesAtLocation(center, radius);
+        Set<GeoHashQuery> newQueries = (this.shape != null)
+                ? this.geoFire.getCellEncoding().queriesInBoundingBox(this.shape.getBoundingBox())
+                : this.geoFire.getCellEncoding().queriesAtLocation(center, radius);
+        Set<GeoHashQuery> newWarmQueries = this.prefetchQueries(newQueries);
+        long now = System.nanoTime();
         this.queries = newQueries;
         for (GeoHashQuery query: oldQueries) {
-            if (!newQueries.contains(query)) {
-                firebaseQueries.get(query).removeEventListener(this.childEventLister);
-                firebaseQueries.remove(query);
-                outstandingQueries.remove(query);
+            if (!newQueries.contains(query) && !newWarmQueries.contains(query)) {
+                this.retainedQueries.put(query, new RetainedQuery(this.queriesCenter, now));
             }
         }
+        for (GeoHashQuery query: this.warmQueries) {
+            if (!newQueries.contains(query) && !newWarmQueries.contains(query)) {
+                this.retainedQueries.put(query, new RetainedQuery(this.queriesCenter, now));
+            }
+        }
+        this.warmQueries.clear();
+        this.warmQueries.addAll(newWarmQueries);
+        this.queriesCenter = this.center;
+        boolean detached = false;
+        Iterator<Map.Entry<GeoHashQuery, RetainedQuery>> retained = this.retainedQueries.entrySet().iterator();
+        while (retained.hasNext()) {
+            Map.Entry<GeoHashQuery, RetainedQuery> entry = retained.next();
+            GeoHashQuery query = entry.getKey();
+            if (newQueries.contains(query) || newWarmQueries.contains(query)) {
+                retained.remove();
+            } else if (!this.isRetained(entry.getValue(), now)) {
+                this.detachQuery(query);
+                retained.remove();
+                detached = true;
+            }
+        }
+        this.scheduleRetentionCheck();
+        this.updateQueryIndex();
         for (final GeoHashQuery query: newQueries) {
-            if (!oldQueries.contains(query)) {
-                outstandingQueries.add(query);
-                DatabaseReference databaseReference = this.geoFire.getDatabaseReference();
-                Query firebaseQuery = databaseReference.orderByChild("g").startAt(query.getStartValue()).endAt(query.getEndValue());
-                firebaseQuery.addChildEventListener(this.childEventLister);
-                addValueToReadyListener(firebaseQuery, query);
-                firebaseQueries.put(query, firebaseQuery);
+            this.attachQuery(query);
+        }
+        for (final GeoHashQuery query: newWarmQueries) {
+            this.attachQuery(query);
+        }
+        // Only locations within the old or the new bounds can enter or exit the query
+        GeoBoundingBox bounds = this.getCriteriaBounds();
+        this.locations.fitGrid(bounds);
+        this.locations.forEachInBounds(bounds, this.evaluatedBounds, this.updateLocationVisitor);
+        this.evaluatedBounds = bounds;
+        if (detached) {
+            this.removeDetachedLocations();
+        }
+
+        checkAndFireReady();
+    }
+
+    private void detachQuery(GeoHashQuery query) {
+        this.firebaseQueries.get(query).removeEventListener(this.childEventLister);
+        this.firebaseQueries.remove(query);
+        this.outstandingQueries.remove(query);
+    }
+
+    private void updateQueryIndex() {
+        Set<GeoHashQuery> attachedQueries = new HashSet<>(this.queries);
+        attachedQueries.addAll(this.retainedQueries.keySet());
+        attachedQueries.addAll(this.warmQueries);
+        this.queryIndex = new GeoHashRangeIndex(attachedQueries);
+    }
+
+    // Removes locations that are not part of any attached query anymore, from the end as removing moves the last slot
+    private void removeDetachedLocations() {
+        for (int slot = this.locations.size() - 1; slot >= 0; slot--) {
+            if (!this.geoHashQueriesContainCell(this.locations.getCellBits(slot))) {
+                this.locations.remove(slot);
             }
         }
-        for (Map.Entry<String, LocationInfo> info: this.locationInfos.entrySet()) {
-            LocationInfo oldLocationInfo = info.getValue();
+    }
 
-            if (oldLocationInfo != null) {
-                updateLocationInfo(oldLocationInfo.dataSnapshot, oldLocationInfo.location);
+    // Makes sure retained queries are checked again when the first of their time margins runs out. Timers that fire
+    // early do no harm.
+    private void scheduleRetentionCheck() {
+        if (this.retainNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        boolean pending = false;
+        long deadline = 0;
+        for (RetainedQuery query: this.retainedQueries.values()) {
+            // Queries whose time margin ran out already are only kept by the distance margin until the center moves
+            long queryDeadline = query.retainedSince + this.retainNanos;
+            if (queryDeadline - now > 0 && (!pending || queryDeadline - deadline < 0)) {
+                pending = true;
+                deadline = queryDeadline;
             }
         }
-        // remove locations that are not part of the geo query anymore
-        Iterator<Map.Entry<String, LocationInfo>> it = this.locationInfos.entrySet().iterator();
-        while (it.hasNext()) {
-            Map.Entry<String, LocationInfo> entry = it.next();
-            if (!this.geoHashQueriesContainGeoHash(entry.getValue().geoHash)) {
-                it.remove();
+        if (!pending || (this.retentionScheduled && this.retentionDeadline - deadline <= 0)) {
+            return;
+        }
+        long delayNanos = deadline - now;
+        this.retentionScheduled = true;
+        this.retentionDeadline = deadline;
+        this.geoFire.raiseEventDelayed(this.retentionTimerTask, TimeUnit.NANOSECONDS.toMillis(delayNanos) + 1);
+    }
+
+    // Detaches the retained queries whose margins are exceeded, without waiting for the center or radius to change
+    private void detachExpiredQueries() {
+        this.retentionScheduled = false;
+        if (this.queries == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        boolean detached = false;
+        Iterator<Map.Entry<GeoHashQuery, RetainedQuery>> retained = this.retainedQueries.entrySet().iterator();
+        while (retained.hasNext()) {
+            Map.Entry<GeoHashQuery, RetainedQuery> entry = retained.next();
+            if (!this.isRetained(entry.getValue(), now)) {
+                this.detachQuery(entry.getKey());
+                retained.remove();
+                detached = true;
             }
         }
+        this.scheduleRetentionCheck();
+        if (detached) {
+            this.updateQueryIndex();
+            this.removeDetachedLocations();
+        }
+    }
 
-        checkAndFireReady();
+    private void attachQuery(GeoHashQuery query) {
+        if (!firebaseQueries.containsKey(query)) {
+            outstandingQueries.add(query);
+            DatabaseReference databaseReference = this.geoFire.getDatabaseReference();
+            Query firebaseQuery = databaseReference.orderByChild("g").startAt(query.getStartValue()).endAt(query.getEndValue());
+            firebaseQuery.addChildEventListener(this.childEventLister);
+            addValueToReadyListener(firebaseQuery, query);
+            firebaseQueries.put(query, firebaseQuery);
+        }
+    }
+
+    // Returns the queries of the circle where the center is extrapolated to be after the next prefetch steps, without
+    // the queries that are needed already
+    private Set<GeoHashQuery> prefetchQueries(Set<GeoHashQuery> queries) {
+        Set<GeoHashQuery> prefetchQueries = new HashSet<>();
+        if (this.shape != null || this.prefetchSteps == 0 || (this.latitudeStep == 0 && this.longitudeStep == 0)) {
+            return prefetchQueries;
+        }
+        double latitude = this.center.latitude + this.latitudeStep * this.prefetchSteps;
+        double longitude = this.center.longitude + this.longitudeStep * this.prefetchSteps;
+        GeoLocation prefetchCenter = new GeoLocation(Math.max(-90, Math.min(90, latitude)),
+                GeoUtils.wrapLongitude(longitude));
+        for (GeoHashQuery query: this.geoFire.getCellEncoding().queriesAtLocation(prefetchCenter, this.radius)) {
+            if (!queries.contains(query)) {
+                prefetchQueries.add(query);
+            }
+        }
+        return prefetchQueries;
+    }
+
+    // Updates the smoothed movement of the center per center update
+    private void trackMovement(GeoLocation newCenter) {
+        if (this.movementCenter != null) {
+            double latitudeDelta = newCenter.latitude - this.movementCenter.latitude;
+            double longitudeDelta = GeoUtils.wrapLongitude(newCenter.longitude - this.movementCenter.longitude);
+            this.latitudeStep = MOVEMENT_SMOOTHING * latitudeDelta + (1 - MOVEMENT_SMOOTHING) * this.latitudeStep;
+            this.longitudeStep = MOVEMENT_SMOOTHING * longitudeDelta + (1 - MOVEMENT_SMOOTHING) * this.longitudeStep;
+        }
+        this.movementCenter = newCenter;
+    }
+
+    private void resetMovement(GeoLocation newCenter) {
+        this.latitudeStep = 0;
+        this.longitudeStep = 0;
+        this.movementCenter = newCenter;
+    }
+
+    // A query that left the plan stays attached while the center is close to where it was last planned, or while it
+    // left the plan only recently
+    private boolean isRetained(RetainedQuery query, long now) {
+        return GeoUtils.distance(query.center, this.center) < this.retainDistance
+                || now - query.retainedSince < this.retainNanos;
     }
 
     private void childAdded(DataSnapshot dataSnapshot) {
         GeoLocation location = GeoFire.getLocationValue(dataSnapshot);
         if (location != null) {
-            this.updateLocationInfo(dataSnapshot, location);
+            this.updateLocation(dataSnapshot, location);
         } else {
             throw new AssertionError("Got Datasnapshot without location with key " + dataSnapshot.getKey());
         }
@@ -279,43 +796,147 @@ public class GeoQuery {
     private void childChanged(DataSnapshot dataSnapshot) {
         GeoLocation location = GeoFire.getLocationValue(dataSnapshot);
         if (location != null) {
-            this.updateLocationInfo(dataSnapshot, location);
+            this.updateLocation(dataSnapshot, location);
         } else {
             throw new AssertionError("Got Datasnapshot without location with key " + dataSnapshot.getKey());
         }
     }
 
+    // A child removed from one database query is either gone or moved into another attached query, whose child added
+    // or changed event is raised right after. The location is only dropped if no such event arrives.
     private void childRemoved(DataSnapshot dataSnapshot) {
         final String key = dataSnapshot.getKey();
-        final LocationInfo info = this.locationInfos.get(key);
-        if (info != null) {
-            this.geoFire.getDatabaseRefForKey(key).addListenerForSingleValueEvent(new ValueEventListener() {
+        int slot = this.locations.indexOf(key);
+        if (slot < 0) {
+            return;
+        }
+        GeoLocation removedLocation = GeoFire.getLocationValue(dataSnapshot);
+        if (removedLocation != null && (Double.compare(removedLocation.latitude, this.locations.getLatitude(slot)) != 0
+                || Double.compare(removedLocation.longitude, this.locations.getLongitude(slot)) != 0)) {
+            // Another query reported the new location already
+            return;
+        }
+        final DataSnapshot removedSnapshot = this.locations.getSnapshot(slot);
+        final Runnable removeTask = new Runnable() {
+            @Override
+            public void run() {
+                GeoQuery.this.removeIfUnchanged(key, removedSnapshot);
+            }
+        };
+        this.geoFire.raiseEventDelayed(new Runnable() {
+            @Override
+            public void run() {
+                GeoQuery.this.enqueue(removeTask);
+            }
+        }, REMOVAL_WINDOW_MILLIS);
+    }
+
+    // Drops a location and raises its exit, unless an event for it arrived since the snapshot was stored
+    private void removeIfUnchanged(String key, DataSnapshot snapshot) {
+        int slot = this.locations.indexOf(key);
+        if (slot >= 0 && this.locations.getSnapshot(slot) == snapshot) {
+            boolean wasInQuery = this.locations.isInQuery(slot);
+            this.locations.remove(slot);
+            if (wasInQuery) {
+                this.raiseDataExited(snapshot);
+            }
+        }
+    }
+
+    // Brings the listeners that receive events in line with the registered listeners. New listeners get the
+    // entered events of all locations in the query and the ready event if it fired already.
+    private void updateListeners() {
+        boolean hadListeners = this.hasListeners();
+        Iterator<GeoQueryDataEventListener> it = this.eventListeners.iterator();
+        while (it.hasNext()) {
+            if (!this.registeredListeners.contains(it.next())) {
+                it.remove();
+            }
+        }
+        List<GeoQueryDataEventListener> added = new ArrayList<>();
+        for (GeoQueryDataEventListener listener: this.registeredListeners) {
+            if (!this.eventListeners.contains(listener)) {
+                added.add(listener);
+            }
+        }
+        this.eventListeners.addAll(added);
+        this.updateListenerArrays();
+
+        if (!this.hasListeners()) {
+            if (hadListeners) {
+                this.reset();
+            }
+        } else if (this.queries == null) {
+            this.applyCriteria();
+            this.setupQueries();
+        } else if (!added.isEmpty()) {
+            this.replayLocations(added);
+        }
+    }
+
+    // Captures the listeners into the arrays the events are raised for. Raised events keep the arrays they were
+    // raised with, so the arrays are replaced rather than changed.
+    private void updateListenerArrays() {
+        List<GeoQueryDataEventListener> posted = new ArrayList<>();
+        List<BatchEventListenerAdapter> batching = new ArrayList<>();
+        for (GeoQueryDataEventListener listener: this.eventListeners) {
+            if (listener instanceof BatchEventListenerAdapter) {
+                batching.add((BatchEventListenerAdapter) listener);
+            } else {
+                posted.add(listener);
+            }
+        }
+        this.postedListeners = posted.toArray(new GeoQueryDataEventListener[0]);
+        this.batchListeners = batching.toArray(new BatchEventListenerAdapter[0]);
+    }
+
+    // Raises the entered events of all locations in the query for new listeners, and the ready event if it fired
+    // already, in one task for all of them
+    private void replayLocations(List<GeoQueryDataEventListener> added) {
+        int count = 0;
+        for (int slot = 0; slot < this.locations.size(); slot++) {
+            if (this.locations.isInQuery(slot)) {
+                count++;
+            }
+        }
+        final DataSnapshot[] enteredSnapshots = new DataSnapshot[count];
+        final GeoLocation[] enteredLocations = new GeoLocation[count];
+        for (int slot = 0, i = 0; slot < this.locations.size(); slot++) {
+            if (this.locations.isInQuery(slot)) {
+                enteredSnapshots[i] = this.locations.getSnapshot(slot);
+                enteredLocations[i] = this.locations.getLocation(slot);
+                i++;
+            }
+        }
+        final boolean ready = this.canFireReady();
+        final Criteria readyCriteria = this.appliedCriteria;
+        List<GeoQueryDataEventListener> posted = new ArrayList<>();
+        for (GeoQueryDataEventListener listener: added) {
+            if (listener instanceof BatchEventListenerAdapter) {
+                for (int i = 0; i < count; i++) {
+                    listener.onDataEntered(enteredSnapshots[i], enteredLocations[i]);
+                }
+                if (ready) {
+                    listener.onGeoQueryReady();
+                }
+            } else {
+                posted.add(listener);
+            }
+        }
+        if (!posted.isEmpty()) {
+            final GeoQueryDataEventListener[] listeners = posted.toArray(new GeoQueryDataEventListener[0]);
+            this.geoFire.raiseEvent(new Runnable() {
                 @Override
-                public void onDataChange(@NonNull final DataSnapshot dataSnapshot) {
-                    synchronized(GeoQuery.this) {
-                        GeoLocation location = GeoFire.getLocationValue(dataSnapshot);
-                        GeoHash hash = (location != null) ? new GeoHash(location) : null;
-                        if (hash == null || !GeoQuery.this.geoHashQueriesContainGeoHash(hash)) {
-                            final LocationInfo info = locationInfos.remove(key);
-
-                            if (info != null && info.inGeoQuery) {
-                                for (final GeoQueryDataEventListener listener: GeoQuery.this.eventListeners) {
-                                    GeoQuery.this.geoFire.raiseEvent(new Runnable() {
-                                        @Override
-                                        public void run() {
-                                            listener.onDataExited(info.dataSnapshot);
-                                        }
-                                    });
-                                }
-                            }
+                public void run() {
+                    for (GeoQueryDataEventListener listener: listeners) {
+                        for (int i = 0; i < enteredSnapshots.length; i++) {
+                            listener.onDataEntered(enteredSnapshots[i], enteredLocations[i]);
+                        }
+                        if (ready) {
+                            raiseReady(listener, readyCriteria);
                         }
                     }
                 }
-
-                @Override
-                public void onCancelled(@NonNull DatabaseError databaseError) {
-                    // tough luck
-                }
             });
         }
     }
@@ -327,7 +948,7 @@ public class GeoQuery {
      *
      * @param listener The listener to add
      */
-    public synchronized void addGeoQueryEventListener(final GeoQueryEventListener listener) {
+    public void addGeoQueryEventListener(final GeoQueryEventListener listener) {
         addGeoQueryDataEventListener(new EventListenerBridge(listener));
     }
 
@@ -338,36 +959,60 @@ public class GeoQuery {
      *
      * @param listener The listener to add
      */
-    public synchronized void addGeoQueryDataEventListener(final GeoQueryDataEventListener listener) {
-        if (eventListeners.contains(listener)) {
+    public void addGeoQueryDataEventListener(final GeoQueryDataEventListener listener) {
+        if (!this.registeredListeners.add(listener)) {
             throw new IllegalArgumentException("Added the same listener twice to a GeoQuery!");
         }
-        eventListeners.add(listener);
-        if (this.queries == null) {
-            this.setupQueries();
-        } else {
-            for (final Map.Entry<String, LocationInfo> entry: this.locationInfos.entrySet()) {
-                final String key = entry.getKey();
-                final LocationInfo info = entry.getValue();
-
-                if (info.inGeoQuery) {
-                    this.geoFire.raiseEvent(new Runnable() {
-                        @Override
-                        public void run() {
-                            listener.onDataEntered(info.dataSnapshot, info.location);
-                        }
-                    });
-                }
-            }
-            if (this.canFireReady()) {
-                this.geoFire.raiseEvent(new Runnable() {
-                    @Override
-                    public void run() {
-                        listener.onGeoQueryReady();
-                    }
-                });
-            }
+        this.enqueue(this.updateListenersTask);
+    }
+
+    /**
+     * Adds a new GeoQueryBatchEventListener to this GeoQuery that receives the events of up to 1000 keys at a time,
+     * delivered once per event dispatch.
+     *
+     * @throws IllegalArgumentException If this listener was already added
+     *
+     * @param listener The listener to add
+     */
+    public void addGeoQueryBatchEventListener(final GeoQueryBatchEventListener listener) {
+        addGeoQueryBatchEventListener(listener, DEFAULT_MAX_BATCH_SIZE, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Adds a new GeoQueryBatchEventListener to this GeoQuery. Events are coalesced into a batch, which is delivered
+     * once it holds maxBatchSize keys or maxDelay after its first event, whichever comes first. A delay of 0 delivers
+     * all events raised before the next event dispatch in one batch.
+     *
+     * @throws IllegalArgumentException If this listener was already added, or maxBatchSize is not positive or
+     * maxDelay is negative
+     *
+     * @param listener The listener to add
+     * @param maxBatchSize The largest number of keys in a batch
+     * @param maxDelay The longest time to hold an event back
+     * @param unit The unit of maxDelay
+     */
+    public void addGeoQueryBatchEventListener(final GeoQueryBatchEventListener listener, int maxBatchSize,
+                                              long maxDelay, TimeUnit unit) {
+        if (maxBatchSize <= 0) {
+            throw new IllegalArgumentException("The batch size must be positive: " + maxBatchSize);
         }
+        if (maxDelay < 0) {
+            throw new IllegalArgumentException("The delay must not be negative: " + maxDelay);
+        }
+        addGeoQueryDataEventListener(new BatchEventListenerAdapter(listener, this.geoFire.getEventRaiser(),
+                maxBatchSize, unit.toMillis(maxDelay)));
+    }
+
+    /**
+     * Removes an event listener.
+     *
+     * @throws IllegalArgumentException If the listener was removed already or never added
+     *
+     * @param listener The listener to remove
+     */
+    public void removeGeoQueryEventListener(GeoQueryBatchEventListener listener) {
+        removeGeoQueryEventListener(new BatchEventListenerAdapter(listener, this.geoFire.getEventRaiser(),
+                DEFAULT_MAX_BATCH_SIZE, 0));
     }
 
     /**
@@ -377,7 +1022,7 @@ public class GeoQuery {
      *
      * @param listener The listener to remove
      */
-    public synchronized void removeGeoQueryEventListener(GeoQueryEventListener listener) {
+    public void removeGeoQueryEventListener(GeoQueryEventListener listener) {
         removeGeoQueryEventListener(new EventListenerBridge(listener));
     }
 
@@ -388,77 +1033,217 @@ public class GeoQuery {
      *
      * @param listener The listener to remove
      */
-    public synchronized void removeGeoQueryEventListener(final GeoQueryDataEventListener listener) {
-        if (!eventListeners.contains(listener)) {
+    public void removeGeoQueryEventListener(final GeoQueryDataEventListener listener) {
+        if (!this.registeredListeners.remove(listener)) {
             throw new IllegalArgumentException("Trying to remove listener that was removed or not added!");
         }
-        eventListeners.remove(listener);
-        if (!this.hasListeners()) {
-            reset();
-        }
+        this.enqueue(this.updateListenersTask);
     }
 
     /**
      * Removes all event listeners from this GeoQuery.
      */
-    public synchronized void removeAllListeners() {
-        eventListeners.clear();
-        reset();
+    public void removeAllListeners() {
+        this.registeredListeners.clear();
+        this.enqueue(this.updateListenersTask);
+    }
+
+    // Identifies the latest criteria, the ready events for them are raised with the same token
+    Object getCriteriaToken() {
+        return this.criteria.get();
     }
 
     /**
-     * Returns the current center of this query.
+     * Returns the current center of this query. For a shape this is the center of its bounding box.
      * @return The current center
      */
-    public synchronized GeoLocation getCenter() {
-        return center;
+    public GeoLocation getCenter() {
+        return this.criteria.get().center;
     }
 
     /**
      * Sets the new center of this query and triggers new events if necessary.
+     * @throws IllegalStateException If this query is for a shape
      * @param center The new center
      */
-    public synchronized void setCenter(GeoLocation center) {
-        this.center = center;
-        if (this.hasListeners()) {
-            this.setupQueries();
-        }
+    public void setCenter(final GeoLocation center) {
+        Criteria current;
+        do {
+            current = this.criteria.get();
+            checkIsCircle(current);
+        } while (!this.criteria.compareAndSet(current, new Criteria(center, current.radius, null)));
+        this.enqueue(new Runnable() {
+            @Override
+            public void run() {
+                GeoQuery.this.trackMovement(center);
+                GeoQuery.this.updateCriteria();
+            }
+        });
     }
 
     /**
      * Returns the radius of the query, in kilometers.
+     * @throws IllegalStateException If this query is for a shape
      * @return The radius of this query, in kilometers
      */
-    public synchronized double getRadius() {
+    public double getRadius() {
+        Criteria current = this.criteria.get();
+        checkIsCircle(current);
         // convert from meters
-        return radius / KILOMETER_TO_METER;
+        return current.radius / KILOMETER_TO_METER;
     }
 
     /**
      * Sets the radius of this query, in kilometers, and triggers new events if necessary.
+     * @throws IllegalStateException If this query is for a shape
      * @param radius The radius of the query, in kilometers. The maximum radius that is
      * supported is about 8587km. If a radius bigger than this is passed we'll cap it.
      */
-    public synchronized void setRadius(double radius) {
+    public void setRadius(double radius) {
         // convert to meters
-        this.radius = capRadius(radius) * KILOMETER_TO_METER;
-        if (this.hasListeners()) {
-            this.setupQueries();
-        }
+        double meters = capRadius(radius) * KILOMETER_TO_METER;
+        Criteria current;
+        do {
+            current = this.criteria.get();
+            checkIsCircle(current);
+        } while (!this.criteria.compareAndSet(current, new Criteria(current.center, meters, null)));
+        this.enqueue(this.updateCriteriaTask);
     }
 
     /**
-     * Sets the center and radius (in kilometers) of this query, and triggers new events if necessary.
+     * Sets the center and radius (in kilometers) of this query, and triggers new events if necessary. A query for
+     * a shape becomes a query for the circle.
      * @param center The new center
      * @param radius The radius of the query, in kilometers. The maximum radius that is
      * supported is about 8587km. If a radius bigger than this is passed we'll cap it.
      */
-    public synchronized void setLocation(GeoLocation center, double radius) {
-        this.center = center;
+    public void setLocation(final GeoLocation center, double radius) {
         // convert radius to meters
-        this.radius = capRadius(radius) * KILOMETER_TO_METER;
-        if (this.hasListeners()) {
-            this.setupQueries();
+        this.criteria.set(new Criteria(center, capRadius(radius) * KILOMETER_TO_METER, null));
+        this.enqueue(new Runnable() {
+            @Override
+            public void run() {
+                GeoQuery.this.resetMovement(center);
+                GeoQuery.this.updateCriteria();
+            }
+        });
+    }
+
+    /**
+     * Returns the shape of this query.
+     * @return The shape, or null if this query is for a circle
+     */
+    public GeoShape getShape() {
+        return this.criteria.get().shape;
+    }
+
+    /**
+     * Sets the shape of this query, for example the visible region of a map, and triggers new events if necessary.
+     * A query for a circle becomes a query for the shape.
+     * @param shape The new shape
+     */
+    public void setShape(@NonNull GeoShape shape) {
+        final GeoLocation center = shape.getBoundingBox().getCenter();
+        this.criteria.set(new Criteria(center, 0, shape));
+        this.enqueue(new Runnable() {
+            @Override
+            public void run() {
+                GeoQuery.this.resetMovement(center);
+                GeoQuery.this.updateCriteria();
+            }
+        });
+    }
+
+    /**
+     * Plans the database queries for the current criteria and measures how much area they read, without changing
+     * this query.
+     * @return The plan
+     */
+    public QueryPlan explain() {
+        Criteria current = this.criteria.get();
+        if (current.shape != null) {
+            return QueryPlan.explain(this.geoFire.getCellEncoding(), current.shape);
+        }
+        return QueryPlan.explain(this.geoFire.getCellEncoding(), current.center, current.radius);
+    }
+
+    private static void checkIsCircle(Criteria criteria) {
+        if (criteria.shape != null) {
+            throw new IllegalStateException("This query is for a shape, not for a circle");
         }
     }
+
+    /**
+     * Keeps database queries that are no longer needed for the current center and radius attached for a while, so
+     * that a center that moves back and forth across a cell border does not detach and re-attach the same queries
+     * and download their data again. Locations of retained queries keep being tracked, but only locations within
+     * the radius are reported as entered.
+     *
+     * A retained query is detached once both margins are exceeded, that is when its time margin runs out while the
+     * center is farther away than the distance margin, or when the center moves away after that. By default both
+     * margins are zero, and queries are detached as soon as they are no longer needed.
+     *
+     * @param distance The distance in kilometers the center may move away from where a query was last needed
+     * @param durationMillis The time in milliseconds a query is kept after it was last needed
+     */
+    public void setRetentionMargin(final double distance, final long durationMillis) {
+        if (distance < 0 || durationMillis < 0) {
+            throw new IllegalArgumentException("Retention margins must not be negative");
+        }
+        this.enqueue(new Runnable() {
+            @Override
+            public void run() {
+                GeoQuery.this.retainDistance = distance * KILOMETER_TO_METER;
+                GeoQuery.this.retainNanos = TimeUnit.MILLISECONDS.toNanos(durationMillis);
+                GeoQuery.this.detachExpiredQueries();
+            }
+        });
+    }
+
+    /**
+     * Attaches database queries in advance for where the center is heading, so that data is already loaded when the
+     * center gets there. The direction and speed are extrapolated from the recent calls to {@link #setCenter}.
+     *
+     * Locations of prefetched queries are tracked but only reported as entered once they are within the radius, and
+     * prefetched queries do not delay {@link GeoQueryDataEventListener#onGeoQueryReady()}. By default nothing is
+     * prefetched. Queries for shapes are never prefetched.
+     *
+     * @param steps The number of center updates to look ahead, or 0 to disable prefetching
+     */
+    public void setPrefetchSteps(final int steps) {
+        if (steps < 0) {
+            throw new IllegalArgumentException("Prefetch steps must not be negative: " + steps);
+        }
+        this.enqueue(new Runnable() {
+            @Override
+            public void run() {
+                GeoQuery.this.prefetchSteps = steps;
+            }
+        });
+    }
+
+    /**
+     * Limits how often onDataMoved and onDataChanged are raised for each key, for locations that are updated more
+     * often than they need to be shown. Entered and exited events are never held back.
+     *
+     * An update within the interval after the last event of a key is held back, and the latest state of the key is
+     * reported at the end of the interval. A move shorter than the distance from the last reported location is not
+     * reported at all, until a later update of the key is reported. By default both are zero and every update is
+     * reported right away.
+     *
+     * @param distance The distance in kilometers a key has to move from its last reported location
+     * @param intervalMillis The time in milliseconds between two reported updates of a key
+     */
+    public void setUpdateThrottle(final double distance, final long intervalMillis) {
+        if (distance < 0 || intervalMillis < 0) {
+            throw new IllegalArgumentException("Update throttle limits must not be negative");
+        }
+        this.enqueue(new Runnable() {
+            @Override
+            public void run() {
+                GeoQuery.this.minUpdateDistance = distance * KILOMETER_TO_METER;
+                GeoQuery.this.updateIntervalNanos = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+            }
+        });
+    }
 }
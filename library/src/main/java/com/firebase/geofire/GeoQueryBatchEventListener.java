@@ -0,0 +1,47 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DatabaseError;
+
+/**
+ * GeoQuery notifies listeners with this interface about dataSnapshots that entered, exited, moved or changed within
+ * the query, many at a time instead of one event per call. See GeoQuery.addGeoQueryBatchEventListener.
+ */
+public interface GeoQueryBatchEventListener {
+
+    /**
+     * Called with the events of a batch. When the listener is added, the first batches contain the dataSnapshots
+     * currently in the search area.
+     *
+     * @param batch The net changes of the batch, every key is in at most one of entered, exited and moved
+     */
+    void onDataBatch(@NonNull GeoQueryEventBatch batch);
+
+    /**
+     * Called once all initial GeoFire data has been loaded and the relevant events have been delivered for this
+     * query. All batches with events raised before are delivered first.
+     */
+    void onGeoQueryReady();
+
+    /**
+     * Called in case an error occurred while retrieving locations for a query, e.g. violating security rules.
+     * @param error The error that occurred while retrieving the query
+     */
+    void onGeoQueryError(DatabaseError error);
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import androidx.annotation.NonNull;
+
+import com.google.firebase.database.DataSnapshot;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The events of a GeoQuery within one batch, coalesced per key into the net change of the batch. A key that entered
+ * and exited again within the batch is left out. A key that stayed in the query is reported as moved if its location
+ * differs from the start of the batch, and as changed if it moved or any of its data changed.
+ */
+public final class GeoQueryEventBatch {
+
+    /**
+     * A dataSnapshot with its location.
+     */
+    public static final class DataEvent {
+        private final DataSnapshot dataSnapshot;
+        private final GeoLocation location;
+
+        DataEvent(DataSnapshot dataSnapshot, GeoLocation location) {
+            this.dataSnapshot = dataSnapshot;
+            this.location = location;
+        }
+
+        @NonNull
+        public DataSnapshot getDataSnapshot() {
+            return this.dataSnapshot;
+        }
+
+        @NonNull
+        public GeoLocation getLocation() {
+            return this.location;
+        }
+    }
+
+    // The state of a key within a batch that is being collected
+    private static final class KeyChange {
+        final boolean wasInQuery;
+        // The snapshot and location at the start of the batch, if the key was in the query
+        final DataSnapshot startSnapshot;
+        final GeoLocation startLocation;
+        boolean inQuery;
+        boolean changed;
+        DataSnapshot dataSnapshot;
+        GeoLocation location;
+
+        KeyChange(boolean wasInQuery, DataSnapshot startSnapshot, GeoLocation startLocation) {
+            this.wasInQuery = wasInQuery;
+            this.inQuery = wasInQuery;
+            this.startSnapshot = startSnapshot;
+            this.startLocation = startLocation;
+        }
+    }
+
+    /**
+     * Collects events in order and coalesces them into a batch. The events of keys that were in the query before
+     * come with the location the key had before the event. Not thread safe.
+     */
+    static final class Builder {
+        private final Map<String, KeyChange> changes = new LinkedHashMap<>();
+
+        private KeyChange change(String key, DataSnapshot dataSnapshot, boolean wasInQuery,
+                                 GeoLocation previousLocation) {
+            KeyChange change = this.changes.get(key);
+            if (change == null) {
+                change = wasInQuery
+                        ? new KeyChange(true, dataSnapshot, previousLocation)
+                        : new KeyChange(false, null, null);
+                this.changes.put(key, change);
+            }
+            change.dataSnapshot = dataSnapshot;
+            return change;
+        }
+
+        void entered(String key, DataSnapshot dataSnapshot, GeoLocation location) {
+            KeyChange change = this.change(key, dataSnapshot, false, null);
+            change.inQuery = true;
+            change.location = location;
+            if (change.wasInQuery && dataSnapshot != change.startSnapshot) {
+                change.changed = true;
+            }
+        }
+
+        void exited(String key, DataSnapshot dataSnapshot, GeoLocation previousLocation) {
+            this.change(key, dataSnapshot, true, previousLocation).inQuery = false;
+        }
+
+        void moved(String key, DataSnapshot dataSnapshot, GeoLocation previousLocation, GeoLocation location) {
+            KeyChange change = this.change(key, dataSnapshot, true, previousLocation);
+            change.location = location;
+            change.changed = true;
+        }
+
+        void changed(String key, DataSnapshot dataSnapshot, GeoLocation location) {
+            KeyChange change = this.change(key, dataSnapshot, true, location);
+            change.location = location;
+            change.changed = true;
+        }
+
+        /**
+         * @return The number of keys with events
+         */
+        int size() {
+            return this.changes.size();
+        }
+
+        GeoQueryEventBatch build() {
+            List<DataEvent> entered = new ArrayList<>();
+            List<DataSnapshot> exited = new ArrayList<>();
+            List<DataEvent> moved = new ArrayList<>();
+            List<DataEvent> changed = new ArrayList<>();
+            for (KeyChange change: this.changes.values()) {
+                if (!change.wasInQuery) {
+                    if (change.inQuery) {
+                        entered.add(new DataEvent(change.dataSnapshot, change.location));
+                    }
+                } else if (!change.inQuery) {
+                    exited.add(change.dataSnapshot);
+                } else {
+                    boolean keyMoved = !change.location.equals(change.startLocation);
+                    if (keyMoved || change.changed) {
+                        DataEvent event = new DataEvent(change.dataSnapshot, change.location);
+                        if (keyMoved) {
+                            moved.add(event);
+                        }
+                        changed.add(event);
+                    }
+                }
+            }
+            return new GeoQueryEventBatch(entered, exited, moved, changed);
+        }
+    }
+
+    private final List<DataEvent> entered;
+    private final List<DataSnapshot> exited;
+    private final List<DataEvent> moved;
+    private final List<DataEvent> changed;
+
+    private GeoQueryEventBatch(List<DataEvent> entered, List<DataSnapshot> exited, List<DataEvent> moved,
+                               List<DataEvent> changed) {
+        this.entered = Collections.unmodifiableList(entered);
+        this.exited = Collections.unmodifiableList(exited);
+        this.moved = Collections.unmodifiableList(moved);
+        this.changed = Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * @return The dataSnapshots that entered the search area, see GeoQueryDataEventListener.onDataEntered
+     */
+    @NonNull
+    public List<DataEvent> getEntered() {
+        return this.entered;
+    }
+
+    /**
+     * @return The dataSnapshots that exited the search area, see GeoQueryDataEventListener.onDataExited
+     */
+    @NonNull
+    public List<DataSnapshot> getExited() {
+        return this.exited;
+    }
+
+    /**
+     * @return The dataSnapshots that moved within the search area, with their latest location. Every one of them is
+     * also in getChanged.
+     */
+    @NonNull
+    public List<DataEvent> getMoved() {
+        return this.moved;
+    }
+
+    /**
+     * @return The dataSnapshots that changed within the search area, see GeoQueryDataEventListener.onDataChanged
+     */
+    @NonNull
+    public List<DataEvent> getChanged() {
+        return this.changed;
+    }
+
+    /**
+     * @return True if the batch has no events
+     */
+    public boolean isEmpty() {
+        return this.entered.isEmpty() && this.exited.isEmpty() && this.moved.isEmpty() && this.changed.isEmpty();
+    }
+}
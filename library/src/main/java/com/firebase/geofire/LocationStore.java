@@ -0,0 +1,442 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.google.firebase.database.DataSnapshot;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The locations tracked by a GeoQuery, held in parallel arrays instead of one object per location.
+ *
+ * Every location has a slot between 0 and size() - 1. Slots are dense: removing a location moves the location of the
+ * last slot into the freed one. Keys are found through an open addressing hash table of slots with linear probing,
+ * so no map entries or boxed values are allocated per location.
+ *
+ * The slots are also linked into the cells of a uniform latitude and longitude grid, so the locations within a
+ * bounding box can be visited without visiting all of them. The cell size follows the size of the bounding boxes that
+ * are searched, see fitGrid.
+ *
+ * This class is not thread safe.
+ */
+final class LocationStore {
+
+    /**
+     * Receives the slots found by a search of the store.
+     */
+    interface SlotVisitor {
+        void visit(int slot);
+    }
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // The grid cell sizes are powers of two degrees with these exponents, from about 2 meters to 16 degrees
+    private static final int MIN_GRID_EXPONENT = -16;
+    private static final int MAX_GRID_EXPONENT = 4;
+
+    // The grid is sized so searched bounding boxes span about this many cells in latitude
+    private static final int CELLS_PER_BOUNDS = 4;
+
+    private String[] keys = new String[INITIAL_CAPACITY];
+    private double[] latitudes = new double[INITIAL_CAPACITY];
+    private double[] longitudes = new double[INITIAL_CAPACITY];
+    private long[] cellBits = new long[INITIAL_CAPACITY];
+    private boolean[] inQuery = new boolean[INITIAL_CAPACITY];
+    private DataSnapshot[] snapshots = new DataSnapshot[INITIAL_CAPACITY];
+    private int size;
+
+    // The location and time of the last event reported for each slot, and whether a later update is held back
+    private double[] reportedLatitudes = new double[INITIAL_CAPACITY];
+    private double[] reportedLongitudes = new double[INITIAL_CAPACITY];
+    private long[] reportedNanos = new long[INITIAL_CAPACITY];
+    private boolean[] updatePending = new boolean[INITIAL_CAPACITY];
+    private boolean[] movePending = new boolean[INITIAL_CAPACITY];
+
+    // Slot + 1 of the key hashed to each bucket, 0 for empty buckets. Always at least twice as long as the slots.
+    private int[] table = new int[2 * INITIAL_CAPACITY];
+
+    // The grid cell of each slot and the doubly linked lists of the slots per cell, -1 ends a list
+    private long[] gridCells = new long[INITIAL_CAPACITY];
+    private int[] gridNext = new int[INITIAL_CAPACITY];
+    private int[] gridPrevious = new int[INITIAL_CAPACITY];
+    private final Map<Long, Integer> gridHeads = new HashMap<>();
+    private int gridExponent;
+    private double gridSize = 1;
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return The slot of a key, or -1 if the key is not in the store
+     */
+    int indexOf(String key) {
+        int mask = this.table.length - 1;
+        for (int bucket = bucketOf(key, mask); this.table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int slot = this.table[bucket] - 1;
+            if (this.keys[slot].equals(key)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a key that is not in the store yet.
+     *
+     * @return The slot of the key
+     */
+    int add(String key, double latitude, double longitude, long cellBits, boolean inQuery, DataSnapshot snapshot) {
+        if (this.size == this.keys.length) {
+            this.grow();
+        }
+        int slot = this.size++;
+        this.keys[slot] = key;
+        this.latitudes[slot] = latitude;
+        this.longitudes[slot] = longitude;
+        this.cellBits[slot] = cellBits;
+        this.inQuery[slot] = inQuery;
+        this.snapshots[slot] = snapshot;
+        this.setReported(slot, latitude, longitude, 0);
+        this.link(slot, gridCell(latitude, longitude));
+        int mask = this.table.length - 1;
+        int bucket = bucketOf(key, mask);
+        while (this.table[bucket] != 0) {
+            bucket = (bucket + 1) & mask;
+        }
+        this.table[bucket] = slot + 1;
+        return slot;
+    }
+
+    void set(int slot, double latitude, double longitude, long cellBits, boolean inQuery, DataSnapshot snapshot) {
+        long gridCell = gridCell(latitude, longitude);
+        if (gridCell != this.gridCells[slot]) {
+            this.unlink(slot);
+            this.link(slot, gridCell);
+        }
+        this.latitudes[slot] = latitude;
+        this.longitudes[slot] = longitude;
+        this.cellBits[slot] = cellBits;
+        this.inQuery[slot] = inQuery;
+        this.snapshots[slot] = snapshot;
+    }
+
+    /**
+     * Removes the location of a slot. The location of the last slot takes its place.
+     */
+    void remove(int slot) {
+        this.removeFromTable(slot);
+        this.unlink(slot);
+        int last = --this.size;
+        if (slot != last) {
+            this.keys[slot] = this.keys[last];
+            this.latitudes[slot] = this.latitudes[last];
+            this.longitudes[slot] = this.longitudes[last];
+            this.cellBits[slot] = this.cellBits[last];
+            this.inQuery[slot] = this.inQuery[last];
+            this.snapshots[slot] = this.snapshots[last];
+            this.reportedLatitudes[slot] = this.reportedLatitudes[last];
+            this.reportedLongitudes[slot] = this.reportedLongitudes[last];
+            this.reportedNanos[slot] = this.reportedNanos[last];
+            this.updatePending[slot] = this.updatePending[last];
+            this.movePending[slot] = this.movePending[last];
+            this.moveLinks(last, slot);
+            int mask = this.table.length - 1;
+            int bucket = bucketOf(this.keys[slot], mask);
+            while (this.table[bucket] != last + 1) {
+                bucket = (bucket + 1) & mask;
+            }
+            this.table[bucket] = slot + 1;
+        }
+        this.keys[last] = null;
+        this.snapshots[last] = null;
+    }
+
+    void clear() {
+        Arrays.fill(this.keys, 0, this.size, null);
+        Arrays.fill(this.snapshots, 0, this.size, null);
+        Arrays.fill(this.table, 0);
+        this.gridHeads.clear();
+        this.size = 0;
+    }
+
+    /**
+     * Sizes the grid for searches of bounding boxes like the given one. The grid is only rebuilt if its cell size is
+     * off by more than a factor of two.
+     */
+    void fitGrid(GeoBoundingBox bounds) {
+        double height = bounds.getNorthEast().latitude - bounds.getSouthWest().latitude;
+        int exponent = Math.getExponent(Math.max(height, Double.MIN_NORMAL) / CELLS_PER_BOUNDS);
+        exponent = Math.max(MIN_GRID_EXPONENT, Math.min(MAX_GRID_EXPONENT, exponent));
+        if (Math.abs(exponent - this.gridExponent) <= 1) {
+            return;
+        }
+        this.gridExponent = exponent;
+        this.gridSize = Math.scalb(1.0, exponent);
+        this.gridHeads.clear();
+        for (int slot = 0; slot < this.size; slot++) {
+            this.link(slot, gridCell(this.latitudes[slot], this.longitudes[slot]));
+        }
+    }
+
+    /**
+     * Visits the slots of all locations within either of two bounding boxes, each slot once. Slots in the grid cells
+     * at the edges of the boxes are visited too, even if their locations are outside of the boxes. The visitor must
+     * not add or remove locations, or move them to other grid cells.
+     *
+     * @param first A bounding box
+     * @param second Another bounding box, or null to only search the first one
+     * @param visitor The visitor to pass the slots to
+     */
+    void forEachInBounds(GeoBoundingBox first, GeoBoundingBox second, SlotVisitor visitor) {
+        int[] firstCells = this.cellRanges(first);
+        int[] secondCells = (second != null) ? this.cellRanges(second) : null;
+        long cellCount = cellCount(firstCells) + ((secondCells != null) ? cellCount(secondCells) : 0);
+        if (cellCount >= this.size) {
+            // Looking up the cells would cost more than visiting every location
+            for (int slot = 0; slot < this.size; slot++) {
+                visitor.visit(slot);
+            }
+            return;
+        }
+        this.visitCells(firstCells, null, visitor);
+        if (secondCells != null) {
+            this.visitCells(secondCells, firstCells, visitor);
+        }
+    }
+
+    String getKey(int slot) {
+        return this.keys[slot];
+    }
+
+    double getLatitude(int slot) {
+        return this.latitudes[slot];
+    }
+
+    double getLongitude(int slot) {
+        return this.longitudes[slot];
+    }
+
+    GeoLocation getLocation(int slot) {
+        return new GeoLocation(this.latitudes[slot], this.longitudes[slot]);
+    }
+
+    long getCellBits(int slot) {
+        return this.cellBits[slot];
+    }
+
+    boolean isInQuery(int slot) {
+        return this.inQuery[slot];
+    }
+
+    DataSnapshot getSnapshot(int slot) {
+        return this.snapshots[slot];
+    }
+
+    /**
+     * Records the location and time of an event reported for a slot. Clears its pending update.
+     */
+    void setReported(int slot, double latitude, double longitude, long nanos) {
+        this.reportedLatitudes[slot] = latitude;
+        this.reportedLongitudes[slot] = longitude;
+        this.reportedNanos[slot] = nanos;
+        this.updatePending[slot] = false;
+        this.movePending[slot] = false;
+    }
+
+    double getReportedLatitude(int slot) {
+        return this.reportedLatitudes[slot];
+    }
+
+    double getReportedLongitude(int slot) {
+        return this.reportedLongitudes[slot];
+    }
+
+    long getReportedNanos(int slot) {
+        return this.reportedNanos[slot];
+    }
+
+    /**
+     * Marks an update of a slot as held back, a move stays pending until the update is reported.
+     */
+    void setUpdatePending(int slot, boolean moved) {
+        this.updatePending[slot] = true;
+        this.movePending[slot] |= moved;
+    }
+
+    /**
+     * Marks a move of a slot as not reported yet, it is reported with the next update of the slot.
+     */
+    void setMovePending(int slot) {
+        this.movePending[slot] = true;
+    }
+
+    void clearUpdatePending(int slot) {
+        this.updatePending[slot] = false;
+        this.movePending[slot] = false;
+    }
+
+    boolean isUpdatePending(int slot) {
+        return this.updatePending[slot];
+    }
+
+    boolean isMovePending(int slot) {
+        return this.movePending[slot];
+    }
+
+    private long gridCell(double latitude, double longitude) {
+        long row = (long) Math.floor((latitude + 90) / this.gridSize);
+        long column = (long) Math.floor((longitude + 180) / this.gridSize);
+        return (row << 32) | column;
+    }
+
+    private void link(int slot, long gridCell) {
+        Integer head = this.gridHeads.put(gridCell, slot);
+        this.gridCells[slot] = gridCell;
+        this.gridPrevious[slot] = -1;
+        this.gridNext[slot] = (head != null) ? head : -1;
+        if (head != null) {
+            this.gridPrevious[head] = slot;
+        }
+    }
+
+    private void unlink(int slot) {
+        int previous = this.gridPrevious[slot];
+        int next = this.gridNext[slot];
+        if (previous >= 0) {
+            this.gridNext[previous] = next;
+        } else if (next >= 0) {
+            this.gridHeads.put(this.gridCells[slot], next);
+        } else {
+            this.gridHeads.remove(this.gridCells[slot]);
+        }
+        if (next >= 0) {
+            this.gridPrevious[next] = previous;
+        }
+    }
+
+    // Puts a linked slot in the place of another one in the list of its cell
+    private void moveLinks(int from, int to) {
+        int previous = this.gridPrevious[from];
+        int next = this.gridNext[from];
+        this.gridCells[to] = this.gridCells[from];
+        this.gridPrevious[to] = previous;
+        this.gridNext[to] = next;
+        if (previous >= 0) {
+            this.gridNext[previous] = to;
+        } else {
+            this.gridHeads.put(this.gridCells[to], to);
+        }
+        if (next >= 0) {
+            this.gridPrevious[next] = to;
+        }
+    }
+
+    // The rows and at most two column ranges of the cells that overlap a bounding box, as inclusive bounds
+    private int[] cellRanges(GeoBoundingBox bounds) {
+        int lastColumn = (int) Math.floor(360 / this.gridSize);
+        int south = (int) Math.floor((bounds.getSouthWest().latitude + 90) / this.gridSize);
+        int north = (int) Math.floor((bounds.getNorthEast().latitude + 90) / this.gridSize);
+        int west = (int) Math.floor((bounds.getSouthWest().longitude + 180) / this.gridSize);
+        int east = (int) Math.floor((bounds.getNorthEast().longitude + 180) / this.gridSize);
+        if (bounds.crossesAntimeridian()) {
+            return new int[] {south, north, west, lastColumn, 0, east};
+        }
+        return new int[] {south, north, west, east, 0, -1};
+    }
+
+    private static long cellCount(int[] ranges) {
+        long columns = (ranges[3] - ranges[2] + 1) + Math.max(0, ranges[5] - ranges[4] + 1);
+        return (ranges[1] - ranges[0] + 1) * columns;
+    }
+
+    private static boolean inRanges(int[] ranges, int row, int column) {
+        return row >= ranges[0] && row <= ranges[1]
+                && ((column >= ranges[2] && column <= ranges[3]) || (column >= ranges[4] && column <= ranges[5]));
+    }
+
+    // Visits the slots in the cells of the ranges, except for the cells in the excluded ranges
+    private void visitCells(int[] ranges, int[] excluded, SlotVisitor visitor) {
+        for (int row = ranges[0]; row <= ranges[1]; row++) {
+            for (int part = 2; part < ranges.length; part += 2) {
+                for (int column = ranges[part]; column <= ranges[part + 1]; column++) {
+                    if (excluded != null && inRanges(excluded, row, column)) {
+                        continue;
+                    }
+                    Integer head = this.gridHeads.get(((long) row << 32) | column);
+                    int slot = (head != null) ? head : -1;
+                    while (slot >= 0) {
+                        int next = this.gridNext[slot];
+                        visitor.visit(slot);
+                        slot = next;
+                    }
+                }
+            }
+        }
+    }
+
+    private static int bucketOf(String key, int mask) {
+        int hash = key.hashCode();
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    // Empties the bucket of a slot and moves later keys of the same probe sequence back, so lookups still find them
+    private void removeFromTable(int slot) {
+        int mask = this.table.length - 1;
+        int hole = bucketOf(this.keys[slot], mask);
+        while (this.table[hole] != slot + 1) {
+            hole = (hole + 1) & mask;
+        }
+        for (int bucket = (hole + 1) & mask; this.table[bucket] != 0; bucket = (bucket + 1) & mask) {
+            int home = bucketOf(this.keys[this.table[bucket] - 1], mask);
+            // The key can fill the hole if its home bucket is not between the hole and its bucket
+            if (((bucket - home) & mask) >= ((bucket - hole) & mask)) {
+                this.table[hole] = this.table[bucket];
+                hole = bucket;
+            }
+        }
+        this.table[hole] = 0;
+    }
+
+    private void grow() {
+        int capacity = 2 * this.keys.length;
+        this.keys = Arrays.copyOf(this.keys, capacity);
+        this.latitudes = Arrays.copyOf(this.latitudes, capacity);
+        this.longitudes = Arrays.copyOf(this.longitudes, capacity);
+        this.cellBits = Arrays.copyOf(this.cellBits, capacity);
+        this.inQuery = Arrays.copyOf(this.inQuery, capacity);
+        this.snapshots = Arrays.copyOf(this.snapshots, capacity);
+        this.reportedLatitudes = Arrays.copyOf(this.reportedLatitudes, capacity);
+        this.reportedLongitudes = Arrays.copyOf(this.reportedLongitudes, capacity);
+        this.reportedNanos = Arrays.copyOf(this.reportedNanos, capacity);
+        this.updatePending = Arrays.copyOf(this.updatePending, capacity);
+        this.movePending = Arrays.copyOf(this.movePending, capacity);
+        this.gridCells = Arrays.copyOf(this.gridCells, capacity);
+        this.gridNext = Arrays.copyOf(this.gridNext, capacity);
+        this.gridPrevious = Arrays.copyOf(this.gridPrevious, capacity);
+        this.table = new int[2 * capacity];
+        int mask = this.table.length - 1;
+        for (int slot = 0; slot < this.size; slot++) {
+            int bucket = bucketOf(this.keys[slot], mask);
+            while (this.table[bucket] != 0) {
+                bucket = (bucket + 1) & mask;
+            }
+            this.table[bucket] = slot + 1;
+        }
+    }
+}
@@ -15,19 +15,25 @@
  */
 package com.firebase.geofire;
 
-import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
 class ThreadEventRaiser implements EventRaiser {
 
-    private final ExecutorService executorService;
+    private final ScheduledExecutorService executorService;
 
     public ThreadEventRaiser() {
-        this.executorService = Executors.newSingleThreadExecutor();
+        this.executorService = Executors.newSingleThreadScheduledExecutor();
     }
 
     @Override
     public void raiseEvent(Runnable r) {
         this.executorService.submit(r);
     }
+
+    @Override
+    public void raiseEventDelayed(Runnable r, long delayMillis) {
+        this.executorService.schedule(r, delayMillis, TimeUnit.MILLISECONDS);
+    }
 }
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.util.GeoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class AdaptiveCoveringTest {
+
+    private static boolean inQueries(Set<GeoHashQuery> queries, double latitude, double longitude) {
+        GeoHash hash = new GeoHash(latitude, longitude);
+        for (GeoHashQuery query: queries) {
+            if (query.containsGeoHash(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void subMeterRadiiContainTheirCenter() {
+        for (int i = 0; i < 1000; i++) {
+            double centerLat = Math.random()*180 - 90;
+            double centerLong = Math.random()*360 - 180;
+            double radius = Math.random();
+            Set<GeoHashQuery> queries = GeoHashQuery.queriesAtLocation(new GeoLocation(centerLat, centerLong),
+                    radius, 4);
+            Assert.assertTrue(inQueries(queries, centerLat, centerLong));
+        }
+    }
+
+    @Test
+    public void pointsJustInsideTheRadius() {
+        for (int maxRanges = 1; maxRanges <= 16; maxRanges *= 2) {
+            for (int i = 0; i < 200; i++) {
+                double centerLat = Math.random()*170 - 85;
+                double centerLong = Math.random()*360 - 180;
+                double radius = Math.pow(10, Math.random()*5);
+                double radiusDegrees = GeoUtils.distanceToLatitudeDegrees(radius);
+                double longitudeDegrees = GeoUtils.distanceToLongitudeDegrees(radius, centerLat);
+                Set<GeoHashQuery> queries = GeoHashQuery.queriesAtLocation(new GeoLocation(centerLat, centerLong),
+                        radius, maxRanges);
+                for (int j = 0; j < 200; j++) {
+                    // A point on the circle, pulled slightly towards the center
+                    double angle = Math.random()*2*Math.PI;
+                    double scale = 1.02;
+                    double pointLat = centerLat + Math.sin(angle)*radiusDegrees*scale;
+                    double pointLong = GeoUtils.wrapLongitude(centerLong + Math.cos(angle)*longitudeDegrees*scale);
+                    double distance = GeoUtils.distance(centerLat, centerLong, pointLat, pointLong);
+                    while (distance >= radius) {
+                        scale *= 0.999;
+                        pointLat = centerLat + Math.sin(angle)*radiusDegrees*scale;
+                        pointLong = GeoUtils.wrapLongitude(centerLong + Math.cos(angle)*longitudeDegrees*scale);
+                        distance = GeoUtils.distance(centerLat, centerLong, pointLat, pointLong);
+                    }
+                    Assert.assertTrue(inQueries(queries, pointLat, pointLong));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.firebase.geofire.util.Base32Utils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.nio.charset.Charset;
+
+@RunWith(JUnit4.class)
+public class Base32UtilsTest {
+
+    private static final String BASE32_CHARS = "0123456789bcdefghjkmnpqrstuvwxyz";
+
+    @Test
+    public void charValues() {
+        for (int i = 0; i < BASE32_CHARS.length(); i++) {
+            Assert.assertEquals(BASE32_CHARS.charAt(i), Base32Utils.valueToBase32Char(i));
+            Assert.assertEquals(i, Base32Utils.base32CharToValue(BASE32_CHARS.charAt(i)));
+            Assert.assertEquals(i, Base32Utils.base32ByteToValue((byte) BASE32_CHARS.charAt(i)));
+        }
+        for (char c : new char[] { 'a', 'i', 'l', 'o', 'A', '~', ' ', '\u00e9', '\u4e2d' }) {
+            try {
+                Base32Utils.base32CharToValue(c);
+                Assert.fail("Exception was not thrown for " + c);
+            } catch (IllegalArgumentException expected) {
+            }
+        }
+        try {
+            Base32Utils.base32ByteToValue((byte) 0xC3);
+            Assert.fail("Exception was not thrown!");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void validStrings() {
+        Assert.assertTrue(Base32Utils.isValidBase32String(""));
+        Assert.assertTrue(Base32Utils.isValidBase32String(BASE32_CHARS));
+        Assert.assertTrue(Base32Utils.isValidBase32String(new StringBuilder("9q8yy")));
+        Assert.assertFalse(Base32Utils.isValidBase32String("9q8ya"));
+        Assert.assertFalse(Base32Utils.isValidBase32String("9q8y~"));
+        Assert.assertFalse(Base32Utils.isValidBase32String("9Q8YY"));
+        Assert.assertFalse(Base32Utils.isValidBase32String("9q8y\u00e9"));
+
+        byte[] bytes = "~9q8yy~".getBytes(Charset.forName("US-ASCII"));
+        Assert.assertTrue(Base32Utils.isValidBase32String(bytes, 1, 5));
+        Assert.assertFalse(Base32Utils.isValidBase32String(bytes, 0, 5));
+        Assert.assertFalse(Base32Utils.isValidBase32String(new byte[] { (byte) 0xC3 }, 0, 1));
+    }
+
+    @Test
+    public void stringToBits() {
+        Assert.assertEquals(0L, Base32Utils.base32StringToBits(""));
+        Assert.assertEquals(31L, Base32Utils.base32StringToBits("z"));
+        Assert.assertEquals((9L << 5) | 22, Base32Utils.base32StringToBits("9q"));
+        Assert.assertEquals((1L << 60) - 1, Base32Utils.base32StringToBits("zzzzzzzzzzzz"));
+
+        byte[] bytes = "~9q~".getBytes(Charset.forName("US-ASCII"));
+        Assert.assertEquals((9L << 5) | 22, Base32Utils.base32StringToBits(bytes, 1, 2));
+
+        try {
+            Base32Utils.base32StringToBits("zzzzzzzzzzzzz");
+            Assert.fail("Exception was not thrown!");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            Base32Utils.base32StringToBits("9a");
+            Assert.fail("Exception was not thrown!");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
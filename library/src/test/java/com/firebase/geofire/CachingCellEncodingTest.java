@@ -0,0 +1,118 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.CachingCellEncoding;
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashCellEncoding;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.HilbertCellEncoding;
+import com.firebase.geofire.util.GeoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class CachingCellEncodingTest {
+
+    @Test
+    public void nearbyCentersShareAPlan() {
+        CachingCellEncoding cache = new CachingCellEncoding(new GeoHashCellEncoding(), 16);
+        Set<GeoHashQuery> plan = cache.queriesAtLocation(new GeoLocation(37.7749, -122.4194), 1000);
+        // A few meters further and with a slightly smaller radius
+        Set<GeoHashQuery> next = cache.queriesAtLocation(new GeoLocation(37.77491, -122.41941), 990);
+        Assert.assertSame(plan, next);
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+        Assert.assertEquals(1, cache.size());
+
+        cache.queriesAtLocation(new GeoLocation(37.7749, -122.4194), 5000);
+        Assert.assertEquals(2, cache.getMissCount());
+        Assert.assertEquals(2, cache.size());
+
+        cache.clear();
+        Assert.assertEquals(0, cache.getHitCount());
+        Assert.assertEquals(0, cache.getMissCount());
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void leastRecentlyUsedPlansAreEvicted() {
+        CachingCellEncoding cache = new CachingCellEncoding(new GeoHashCellEncoding(), 2);
+        cache.queriesAtLocation(new GeoLocation(10, 10), 1000);
+        cache.queriesAtLocation(new GeoLocation(20, 20), 1000);
+        cache.queriesAtLocation(new GeoLocation(10, 10), 1000);
+        cache.queriesAtLocation(new GeoLocation(30, 30), 1000);
+        Assert.assertEquals(2, cache.size());
+        cache.queriesAtLocation(new GeoLocation(10, 10), 1000);
+        Assert.assertEquals(2, cache.getHitCount());
+        cache.queriesAtLocation(new GeoLocation(20, 20), 1000);
+        Assert.assertEquals(2, cache.getHitCount());
+        Assert.assertEquals(4, cache.getMissCount());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void plansAreImmutable() {
+        CachingCellEncoding cache = new CachingCellEncoding(new GeoHashCellEncoding(), 16);
+        cache.queriesAtLocation(new GeoLocation(37.7749, -122.4194), 1000).clear();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidSizeException() {
+        new CachingCellEncoding(new GeoHashCellEncoding(), 0);
+    }
+
+    @Test
+    public void cachedPlansContainAllPoints() {
+        CachingCellEncoding geoHashCache = new CachingCellEncoding(new GeoHashCellEncoding(), 64);
+        CachingCellEncoding hilbertCache = new CachingCellEncoding(new HilbertCellEncoding(), 64);
+        for (int i = 0; i < 200; i++) {
+            double centerLat = Math.random()*170 - 85;
+            double centerLong = Math.random()*360 - 180;
+            double radius = Math.random()*100000;
+            double radiusDegrees = GeoUtils.distanceToLatitudeDegrees(radius);
+            for (int step = 0; step < 10; step++) {
+                // Move the center a little to hit cached plans
+                GeoLocation center = new GeoLocation(centerLat + step*radiusDegrees/100, centerLong);
+                Set<GeoHashQuery> geoHashQueries = geoHashCache.queriesAtLocation(center, radius);
+                Set<GeoHashQuery> hilbertQueries = hilbertCache.queriesAtLocation(center, radius);
+                for (int j = 0; j < 100; j++) {
+                    double pointLat = Math.max(-90, Math.min(90, center.latitude + (Math.random()*2 - 1)*radiusDegrees));
+                    double pointLong = GeoUtils.wrapLongitude(center.longitude + (Math.random()*2 - 1)*radiusDegrees);
+                    if (GeoUtils.distance(center.latitude, center.longitude, pointLat, pointLong) < radius) {
+                        Assert.assertTrue(contains(geoHashQueries, GeoHash.fromBits(
+                                geoHashCache.encodeBits(pointLat, pointLong, 50), 50)));
+                        Assert.assertTrue(contains(hilbertQueries, GeoHash.fromBits(
+                                hilbertCache.encodeBits(pointLat, pointLong, 50), 50)));
+                    }
+                }
+            }
+        }
+        Assert.assertTrue(geoHashCache.getHitCount() > 0);
+    }
+
+    private static boolean contains(Set<GeoHashQuery> queries, GeoHash hash) {
+        for (GeoHashQuery query: queries) {
+            if (query.containsGeoHash(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
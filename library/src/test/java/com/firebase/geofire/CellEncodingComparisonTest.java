@@ -0,0 +1,69 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.CellEncoding;
+import com.firebase.geofire.core.GeoHashCellEncoding;
+import com.firebase.geofire.core.HilbertCellEncoding;
+import com.firebase.geofire.core.QueryPlan;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Random;
+
+/**
+ * Compares the mean number of ranges and the mean over-fetch of the cell encodings for realistic query radii. The
+ * over-fetch is the area covered by the ranges of a query divided by the area of its circle.
+ */
+@RunWith(JUnit4.class)
+public class CellEncodingComparisonTest {
+
+    private static final double[] RADII = { 100, 1000, 10000, 100000 };
+    private static final int QUERIES = 100;
+
+    @Test
+    public void compareEncodings() {
+        CellEncoding geoHash = new GeoHashCellEncoding();
+        CellEncoding hilbert = new HilbertCellEncoding();
+        CellEncoding narrowHilbert = new HilbertCellEncoding(2);
+        CellEncoding adaptiveGeoHash = new GeoHashCellEncoding(4);
+        for (double radius: RADII) {
+            Random random = new Random(42);
+            double[] geoHashStats = new double[2];
+            double[] hilbertStats = new double[2];
+            double[] narrowHilbertStats = new double[2];
+            double[] adaptiveGeoHashStats = new double[2];
+            for (int i = 0; i < QUERIES; i++) {
+                GeoLocation center = new GeoLocation(random.nextDouble()*170 - 85, random.nextDouble()*360 - 180);
+                measure(geoHash, center, radius, geoHashStats);
+                measure(hilbert, center, radius, hilbertStats);
+                measure(narrowHilbert, center, radius, narrowHilbertStats);
+                measure(adaptiveGeoHash, center, radius, adaptiveGeoHashStats);
+            }
+            Assert.assertTrue(hilbertStats[1] < geoHashStats[1]);
+            Assert.assertTrue(narrowHilbertStats[0] < geoHashStats[0]);
+            Assert.assertTrue(adaptiveGeoHashStats[1] < geoHashStats[1]);
+        }
+    }
+
+    private static void measure(CellEncoding encoding, GeoLocation center, double radius, double[] stats) {
+        QueryPlan plan = QueryPlan.explain(encoding, center, radius);
+        stats[0] += plan.getQueries().size();
+        stats[1] += plan.getOverFetchRatio();
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.firebase.geofire.util.Constants;
+import com.firebase.geofire.util.DistanceFilter;
+import com.firebase.geofire.util.GeoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class DistanceFilterTest {
+
+    private static void assertMatchesDistance(DistanceFilter filter, GeoLocation center, double radius,
+                                              double latitude, double longitude) {
+        boolean expected = GeoUtils.distance(center.latitude, center.longitude, latitude, longitude) <= radius;
+        Assert.assertEquals(expected, filter.contains(latitude, longitude));
+    }
+
+    @Test
+    public void simpleCases() {
+        DistanceFilter filter = new DistanceFilter(new GeoLocation(37, -122), 1000);
+        Assert.assertTrue(filter.contains(37, -122));
+        Assert.assertTrue(filter.contains(37.0089, -122));
+        Assert.assertFalse(filter.contains(37.0091, -122));
+        Assert.assertFalse(filter.contains(-37, 58));
+        Assert.assertFalse(filter.contains(37, -121));
+    }
+
+    @Test
+    public void antimeridianAndPoles() {
+        DistanceFilter filter = new DistanceFilter(new GeoLocation(0, 179.999), 1000);
+        Assert.assertTrue(filter.contains(0, -179.999));
+        Assert.assertFalse(filter.contains(0, -179.99));
+
+        filter = new DistanceFilter(new GeoLocation(89.99, 0), 10000);
+        Assert.assertTrue(filter.contains(89.99, 180));
+        Assert.assertTrue(filter.contains(90, 0));
+        Assert.assertFalse(filter.contains(89.9, 0));
+
+        filter = new DistanceFilter(new GeoLocation(0, 0), Math.PI * Constants.EARTH_MEAN_RADIUS);
+        Assert.assertTrue(filter.contains(0, 180));
+    }
+
+    @Test
+    public void pointsNearTheRadius() {
+        for (int i = 0; i < 2000; i++) {
+            GeoLocation center = new GeoLocation(Math.random()*180 - 90, Math.random()*360 - 180);
+            double radius = Math.pow(10, Math.random()*7);
+            DistanceFilter filter = new DistanceFilter(center, radius);
+            double centerLatitude = Math.toRadians(center.latitude);
+            for (int j = 0; j < 100; j++) {
+                // A point in a random direction at a distance that differs from the radius by up to 1e-9 to 100%
+                double angle = radius / Constants.EARTH_MEAN_RADIUS
+                        * (1 + (Math.random()*2 - 1) * Math.pow(10, -Math.random()*9));
+                double bearing = Math.random()*2*Math.PI;
+                double latitude = Math.asin(Math.sin(centerLatitude)*Math.cos(angle)
+                        + Math.cos(centerLatitude)*Math.sin(angle)*Math.cos(bearing));
+                double longitude = Math.toRadians(center.longitude) + Math.atan2(
+                        Math.sin(bearing)*Math.sin(angle)*Math.cos(centerLatitude),
+                        Math.cos(angle) - Math.sin(centerLatitude)*Math.sin(latitude));
+                assertMatchesDistance(filter, center, radius, Math.toDegrees(latitude),
+                        GeoUtils.wrapLongitude(Math.toDegrees(longitude)));
+            }
+        }
+    }
+
+    @Test
+    public void randomPoints() {
+        for (int i = 0; i < 2000; i++) {
+            GeoLocation center = new GeoLocation(Math.random()*180 - 90, Math.random()*360 - 180);
+            double radius = Math.pow(10, Math.random()*7);
+            DistanceFilter filter = new DistanceFilter(center, radius);
+            double radiusDegrees = GeoUtils.distanceToLatitudeDegrees(radius);
+            for (int j = 0; j < 100; j++) {
+                double latitude = Math.max(-90, Math.min(90, center.latitude + (Math.random()*4 - 2)*radiusDegrees));
+                double longitude = GeoUtils.wrapLongitude(center.longitude + (Math.random()*4 - 2)*radiusDegrees);
+                assertMatchesDistance(filter, center, radius, latitude, longitude);
+            }
+        }
+    }
+
+    @Test
+    public void boundingBoxContainsCircle() {
+        for (int i = 0; i < 2000; i++) {
+            GeoLocation center = new GeoLocation(Math.random()*180 - 90, Math.random()*360 - 180);
+            double radius = Math.pow(10, Math.random()*7);
+            DistanceFilter filter = new DistanceFilter(center, radius);
+            GeoBoundingBox boundingBox = filter.getBoundingBox();
+            double radiusDegrees = GeoUtils.distanceToLatitudeDegrees(radius);
+            for (int j = 0; j < 100; j++) {
+                double latitude = Math.max(-90, Math.min(90, center.latitude + (Math.random()*2 - 1)*radiusDegrees));
+                double longitude = GeoUtils.wrapLongitude(center.longitude
+                        + (Math.random()*2 - 1)*radiusDegrees/Math.max(0.01, Math.cos(Math.toRadians(latitude))));
+                if (filter.contains(latitude, longitude)) {
+                    Assert.assertTrue(boundingBox.contains(latitude, longitude));
+                }
+            }
+        }
+    }
+}
@@ -9,6 +9,9 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.BitSet;
 import java.util.List;
 
 @RunWith(JUnit4.class)
@@ -23,11 +26,85 @@ public class GeoFireUtilsTest {
         Assert.assertEquals(GeoFireUtils.getGeoHashForLocation(NEW_YORK_CITY), "dr5regw3pp");
     }
 
+    @Test
+    public void testGetGeoHashForLocationIntoBuffers() {
+        char[] chars = new char[14];
+        Assert.assertEquals(10, GeoFireUtils.getGeoHashForLocation(SAN_FRANCISCO, 10, chars, 2));
+        Assert.assertEquals("9q8yyk8ytp", new String(chars, 2, 10));
+
+        StringBuilder builder = new StringBuilder("g:");
+        Assert.assertEquals(10, GeoFireUtils.getGeoHashForLocation(NEW_YORK_CITY, 10, builder));
+        Assert.assertEquals("g:dr5regw3pp", builder.toString());
+
+        ByteBuffer bytes = ByteBuffer.allocate(22);
+        Assert.assertEquals(22, GeoFireUtils.getGeoHashForLocation(SAN_FRANCISCO, 22, bytes));
+        Assert.assertEquals(22, bytes.position());
+        Assert.assertEquals(GeoFireUtils.getGeoHashForLocation(SAN_FRANCISCO, 22),
+                new String(bytes.array(), Charset.forName("US-ASCII")));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void testGetGeoHashForLocationBufferTooSmall() {
+        GeoFireUtils.getGeoHashForLocation(SAN_FRANCISCO, 10, new char[12], 3);
+    }
+
+    @Test
+    public void testGetGeoHashesForLocations() {
+        double[] latitudes = { SAN_FRANCISCO.latitude, NEW_YORK_CITY.latitude };
+        double[] longitudes = { SAN_FRANCISCO.longitude, NEW_YORK_CITY.longitude };
+        String[] hashes = new String[2];
+        GeoFireUtils.getGeoHashesForLocations(latitudes, longitudes, 10, hashes);
+        Assert.assertEquals("9q8yyk8ytp", hashes[0]);
+        Assert.assertEquals("dr5regw3pp", hashes[1]);
+    }
+
     @Test
     public void testGetDistanceBetween() {
         Assert.assertEquals(Math.floor(GeoFireUtils.getDistanceBetween(SAN_FRANCISCO, NEW_YORK_CITY)), 4127138.0);
     }
 
+    @Test
+    public void testGetDistancesBetween() {
+        double[] latitudes = new double[1000];
+        double[] longitudes = new double[1000];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = Math.random()*180 - 90;
+            longitudes[i] = Math.random()*360 - 180;
+        }
+        double[] distances = new double[latitudes.length];
+        GeoFireUtils.getDistancesBetween(SAN_FRANCISCO, latitudes, longitudes, distances);
+        for (int i = 0; i < latitudes.length; i++) {
+            Assert.assertEquals(GeoFireUtils.getDistanceBetween(SAN_FRANCISCO,
+                    new GeoLocation(latitudes[i], longitudes[i])), distances[i]);
+        }
+    }
+
+    @Test
+    public void testGetLocationsInRadius() {
+        double radius = 50000;
+        double[] latitudes = new double[1000];
+        double[] longitudes = new double[1000];
+        for (int i = 0; i < latitudes.length; i++) {
+            latitudes[i] = SAN_FRANCISCO.latitude + Math.random() - 0.5;
+            longitudes[i] = SAN_FRANCISCO.longitude + Math.random() - 0.5;
+        }
+        long[] inside = new long[16];
+        int count = GeoFireUtils.getLocationsInRadius(SAN_FRANCISCO, radius, latitudes, longitudes, inside);
+        BitSet expected = new BitSet();
+        for (int i = 0; i < latitudes.length; i++) {
+            if (GeoFireUtils.getDistanceBetween(SAN_FRANCISCO, new GeoLocation(latitudes[i], longitudes[i])) <= radius) {
+                expected.set(i);
+            }
+        }
+        Assert.assertEquals(expected, BitSet.valueOf(inside));
+        Assert.assertEquals(expected.cardinality(), count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testGetLocationsInRadiusBitmapTooSmall() {
+        GeoFireUtils.getLocationsInRadius(SAN_FRANCISCO, 1000, new double[65], new double[65], new long[1]);
+    }
+
     @Test
     public void testGetGeoHashQueryBounds() {
         double radiusInM = 50000;
@@ -49,4 +126,22 @@ public class GeoFireUtilsTest {
 
     }
 
+    @Test
+    public void testGetGeoHashQueryBoundsWithBudget() {
+        double radiusInM = 50000;
+        for (int maxBounds = 1; maxBounds <= 8; maxBounds++) {
+            List<GeoQueryBounds> bounds = GeoFireUtils.getGeoHashQueryBounds(SAN_FRANCISCO, radiusInM, maxBounds);
+            Assert.assertTrue(bounds.size() >= 1 && bounds.size() <= maxBounds);
+
+            String hash = GeoFireUtils.getGeoHashForLocation(SAN_FRANCISCO);
+            boolean inBounds = false;
+            for (GeoQueryBounds b : bounds) {
+                if (b.startHash.compareTo(hash) <= 0 && b.endHash.compareTo(hash) > 0) {
+                    inBounds = true;
+                }
+            }
+            Assert.assertTrue(inBounds);
+        }
+    }
+
 }
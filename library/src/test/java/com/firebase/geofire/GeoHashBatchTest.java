@@ -0,0 +1,171 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashBatch;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@RunWith(JUnit4.class)
+public class GeoHashBatchTest {
+
+    private static double[] randomLatitudes(int count) {
+        double[] latitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            latitudes[i] = Math.random()*180 - 90;
+        }
+        return latitudes;
+    }
+
+    private static double[] randomLongitudes(int count) {
+        double[] longitudes = new double[count];
+        for (int i = 0; i < count; i++) {
+            longitudes[i] = Math.random()*360 - 180;
+        }
+        return longitudes;
+    }
+
+    @Test
+    public void encodeMatchesGeoHash() {
+        double[] lats = randomLatitudes(1000);
+        double[] lngs = randomLongitudes(1000);
+        double[] latLngs = new double[2000];
+        for (int i = 0; i < 1000; i++) {
+            latLngs[2*i] = lats[i];
+            latLngs[2*i + 1] = lngs[i];
+        }
+
+        for (int precision : new int[] { 1, 10, 12, 22 }) {
+            String[] hashes = new String[1000];
+            String[] interleavedHashes = new String[1000];
+            GeoHashBatch.encode(lats, lngs, precision, hashes);
+            GeoHashBatch.encode(latLngs, precision, interleavedHashes);
+            for (int i = 0; i < 1000; i++) {
+                String expected = new GeoHash(lats[i], lngs[i], precision).getGeoHashString();
+                Assert.assertEquals(expected, hashes[i]);
+                Assert.assertEquals(expected, interleavedHashes[i]);
+            }
+        }
+
+        long[] bits = new long[1000];
+        long[] interleavedBits = new long[1000];
+        GeoHashBatch.encodeBits(lats, lngs, 10, bits);
+        GeoHashBatch.encodeBits(latLngs, 10, interleavedBits);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(new GeoHash(lats[i], lngs[i]).getBits(), bits[i]);
+        }
+        Assert.assertArrayEquals(bits, interleavedBits);
+    }
+
+    @Test
+    public void encodeWithExecutor() throws InterruptedException {
+        int count = 50000;
+        double[] lats = randomLatitudes(count);
+        double[] lngs = randomLongitudes(count);
+        long[] expected = new long[count];
+        GeoHashBatch.encodeBits(lats, lngs, 12, expected);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            long[] bits = new long[count];
+            GeoHashBatch.encodeBits(lats, lngs, 12, bits, executor);
+            Assert.assertArrayEquals(expected, bits);
+
+            String[] hashes = new String[count];
+            GeoHashBatch.encode(lats, lngs, 12, hashes, executor);
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(GeoHash.fromBits(expected[i], 60).getGeoHashString(), hashes[i]);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void decodeMatchesGeoHash() {
+        double[] lats = randomLatitudes(1000);
+        double[] lngs = randomLongitudes(1000);
+        String[] hashes = new String[1000];
+        long[] bits = new long[1000];
+        GeoHashBatch.encode(lats, lngs, 10, hashes);
+        GeoHashBatch.encodeBits(lats, lngs, 10, bits);
+
+        double[] centerLats = new double[1000];
+        double[] centerLngs = new double[1000];
+        double[] bounds = new double[4000];
+        double[] bitsBounds = new double[4000];
+        GeoHashBatch.decode(hashes, centerLats, centerLngs);
+        GeoHashBatch.decodeBounds(hashes, bounds);
+        GeoHashBatch.decodeBounds(bits, 50, bitsBounds);
+        Assert.assertArrayEquals(bounds, bitsBounds, 0);
+
+        double[] expected = new double[4];
+        for (int i = 0; i < 1000; i++) {
+            GeoLocation center = GeoHash.locationFromHash(hashes[i]);
+            Assert.assertEquals(center.latitude, centerLats[i], 0);
+            Assert.assertEquals(center.longitude, centerLngs[i], 0);
+            GeoHash.decodeBounds(hashes[i], expected);
+            for (int j = 0; j < 4; j++) {
+                Assert.assertEquals(expected[j], bounds[4*i + j], 0);
+            }
+        }
+    }
+
+    @Test
+    public void invalidCoordinates() {
+        double[] lats = { 10, 20, 91 };
+        double[] lngs = { 10, 20, 30 };
+        try {
+            GeoHashBatch.encode(lats, lngs, 10, new String[3]);
+            Assert.fail("Exception was not thrown!");
+        } catch (IllegalArgumentException expected) {
+            Assert.assertTrue(expected.getMessage().contains("91"));
+        }
+
+        try {
+            GeoHashBatch.encodeBits(new double[] { 0, Double.NaN }, 10, new long[1]);
+            Assert.fail("Exception was not thrown!");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    @Test
+    public void invalidArguments() {
+        try {
+            GeoHashBatch.encode(new double[2], new double[3], 10, new String[3]);
+            Assert.fail("Exception was not thrown!");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            GeoHashBatch.encode(new double[3], 10, new String[3]);
+            Assert.fail("Exception was not thrown!");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        try {
+            GeoHashBatch.encodeBits(new double[2], new double[2], 13, new long[2]);
+            Assert.fail("Exception was not thrown!");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
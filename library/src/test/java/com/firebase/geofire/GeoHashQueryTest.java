@@ -23,6 +23,12 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 @RunWith(JUnit4.class)
@@ -64,6 +70,39 @@ public class GeoHashQueryTest {
         }
     }
 
+    @Test
+    public void pointsAroundPoles() {
+        for (int i = 0; i < 200; i++) {
+            double centerLat = (Math.random() < 0.5 ? -1 : 1) * (80 + Math.random()*10);
+            double centerLong = Math.random()*360 - 180;
+            double radius = Math.random()*2000000;
+            Set<GeoHashQuery> queries = GeoHashQuery.queriesAtLocation(new GeoLocation(centerLat, centerLong), radius);
+            for (int j = 0; j < 1000; j++) {
+                double pointLat = Math.random()*180 - 90;
+                double pointLong = Math.random()*360 - 180;
+                if (GeoUtils.distance(centerLat, centerLong, pointLat, pointLong) < radius) {
+                    GeoHash geoHash = new GeoHash(pointLat, pointLong);
+                    boolean inQuery = false;
+                    for (GeoHashQuery query: queries) {
+                        if (query.containsGeoHash(geoHash)) {
+                            inQuery = true;
+                        }
+                    }
+                    Assert.assertTrue(inQuery);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void queryForBits() {
+        GeoHash hash = new GeoHash("64m9yn96mx");
+        for (int bits = 1; bits <= 50; bits++) {
+            Assert.assertEquals(GeoHashQuery.queryForGeoHash(new GeoHash("64m9yn96mx"), bits),
+                    GeoHashQuery.queryForBits(hash.getBits() >>> (50 - bits), bits));
+        }
+    }
+
     @Test
     public void canJoinWith() {
         Assert.assertTrue(new GeoHashQuery("abcd", "abce").canJoinWith(new GeoHashQuery("abce", "abcf")));
@@ -111,4 +150,163 @@ public class GeoHashQueryTest {
         } catch(IllegalArgumentException expected) {
         }
     }
+
+    @Test
+    public void joinQueries() {
+        Set<GeoHashQuery> queries = new HashSet<>(Arrays.asList(
+                new GeoHashQuery("abcd", "abce"),
+                new GeoHashQuery("abce", "abcf"),
+                new GeoHashQuery("abc", "abc~"),
+                new GeoHashQuery("dce", "dcf"),
+                new GeoHashQuery("dcg", "dch")));
+        Set<GeoHashQuery> expected = new HashSet<>(Arrays.asList(
+                new GeoHashQuery("abc", "abc~"),
+                new GeoHashQuery("dce", "dcf"),
+                new GeoHashQuery("dcg", "dch")));
+        Assert.assertEquals(expected, GeoHashQuery.joinQueries(queries));
+
+        // All children of a cell join into the query of the cell
+        List<GeoHashQuery> children = new ArrayList<>();
+        for (GeoHash child: new GeoHash("9q8y").getChildren()) {
+            children.add(GeoHashQuery.queryForGeoHash(child, 25));
+        }
+        Assert.assertEquals(Collections.singleton(new GeoHashQuery("9q8y0", "9q8y~")),
+                GeoHashQuery.joinQueries(children));
+    }
+
+    @Test
+    public void joinQueriesMatchesPairwiseJoin() {
+        Random random = new Random(0);
+        for (int i = 0; i < 200; i++) {
+            Set<GeoHashQuery> queries = new HashSet<>();
+            int seeds = 1 + random.nextInt(40);
+            for (int j = 0; j < seeds; j++) {
+                GeoHash hash = new GeoHash(random.nextDouble()*2 + 37, random.nextDouble()*2 - 122, 6);
+                queries.add(GeoHashQuery.queryForGeoHash(hash, 10 + random.nextInt(15)));
+            }
+            Assert.assertEquals(pairwiseJoin(queries), GeoHashQuery.joinQueries(queries));
+        }
+    }
+
+    private static Set<GeoHashQuery> pairwiseJoin(Set<GeoHashQuery> seeds) {
+        Set<GeoHashQuery> queries = new HashSet<>(seeds);
+        boolean didJoin;
+        do {
+            didJoin = false;
+            outer:
+            for (GeoHashQuery query: queries) {
+                for (GeoHashQuery other: queries) {
+                    if (query != other && query.canJoinWith(other)) {
+                        queries.remove(query);
+                        queries.remove(other);
+                        queries.add(query.joinWith(other));
+                        didJoin = true;
+                        break outer;
+                    }
+                }
+            }
+        } while (didJoin);
+        return queries;
+    }
+
+    @Test
+    public void adaptivePointsInQueries() {
+        for (int maxRanges = 1; maxRanges <= 16; maxRanges *= 2) {
+            for (int i = 0; i < 200; i++) {
+                double centerLat = Math.pow(Math.random(), 5)*(Math.random() < 0.5 ? -90 : 90);
+                double centerLong = Math.pow(Math.random(), 5)*(Math.random() < 0.5 ? -180 : 180);
+                double radius = Math.random()*Math.random()*100000;
+                double radiusDegrees = GeoUtils.distanceToLatitudeDegrees(radius);
+                Set<GeoHashQuery> queries = GeoHashQuery.queriesAtLocation(new GeoLocation(centerLat, centerLong),
+                        radius, maxRanges);
+                Assert.assertTrue(queries.size() <= maxRanges);
+                for (int j = 0; j < 1000; j++) {
+                    double pointLat = Math.max(-90, Math.min(90, centerLat + (Math.random()*2 - 1)*radiusDegrees));
+                    double pointLong = GeoUtils.wrapLongitude(centerLong + (Math.random()*2 - 1)*radiusDegrees);
+                    if (GeoUtils.distance(centerLat, centerLong, pointLat, pointLong) < radius) {
+                        GeoHash hash = new GeoHash(pointLat, pointLong);
+                        boolean inQuery = false;
+                        for (GeoHashQuery query: queries) {
+                            if (query.containsGeoHash(hash)) {
+                                inQuery = true;
+                            }
+                        }
+                        Assert.assertTrue(inQuery);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void adaptiveInvalidRangesException() {
+        GeoHashQuery.queriesAtLocation(new GeoLocation(0, 0), 1000, 0);
+    }
+
+    @Test
+    public void pointsInBoundingBoxQueries() {
+        for (int i = 0; i < 500; i++) {
+            double south = Math.random()*180 - 90;
+            double north = Math.min(90, south + Math.random()*Math.random()*10);
+            double west = Math.random()*360 - 180;
+            double width = Math.random()*Math.random()*20;
+            double east = GeoUtils.wrapLongitude(west + width);
+            GeoBoundingBox box = new GeoBoundingBox(new GeoLocation(south, west), new GeoLocation(north, east));
+            Set<GeoHashQuery> queries = GeoHashQuery.queriesInBoundingBox(box);
+            for (int j = 0; j < 1000; j++) {
+                double pointLat = south + Math.random()*(north - south);
+                double pointLong = GeoUtils.wrapLongitude(west + Math.random()*width);
+                GeoHash hash = new GeoHash(pointLat, pointLong);
+                boolean inQuery = false;
+                for (GeoHashQuery query: queries) {
+                    if (query.containsGeoHash(hash)) {
+                        inQuery = true;
+                    }
+                }
+                Assert.assertTrue(inQuery);
+            }
+        }
+    }
+
+    @Test
+    public void tinyBoundingBoxQueriesContainStoredKeys() {
+        for (int i = 0; i < 2000; i++) {
+            double south = Math.random()*179 - 89.5;
+            double west = Math.random()*359 - 179.5;
+            // About a meter wide, or a single point for every fourth box
+            double size = (i % 4 == 0) ? 0 : Math.random()*1e-5;
+            GeoBoundingBox box = new GeoBoundingBox(new GeoLocation(south, west),
+                    new GeoLocation(south + size, west + size));
+            Set<GeoHashQuery> queries = GeoHashQuery.queriesInBoundingBox(box);
+            double pointLat = south + Math.random()*size;
+            double pointLong = west + Math.random()*size;
+            // The key stored for a location has the default precision
+            GeoHash hash = new GeoHash(pointLat, pointLong);
+            boolean inQuery = false;
+            for (GeoHashQuery query: queries) {
+                if (query.containsGeoHash(hash)) {
+                    inQuery = true;
+                }
+            }
+            Assert.assertTrue(inQuery);
+        }
+    }
+
+    @Test
+    public void tinyRadiusQueriesContainTheirCenter() {
+        for (int i = 0; i < 2000; i++) {
+            double centerLat = Math.random()*180 - 90;
+            double centerLong = Math.random()*360 - 180;
+            Set<GeoHashQuery> queries = GeoHashQuery.queriesAtLocation(new GeoLocation(centerLat, centerLong),
+                    Math.random());
+            GeoHash hash = new GeoHash(centerLat, centerLong);
+            boolean inQuery = false;
+            for (GeoHashQuery query: queries) {
+                if (query.containsGeoHash(hash)) {
+                    inQuery = true;
+                }
+            }
+            Assert.assertTrue(inQuery);
+        }
+    }
 }
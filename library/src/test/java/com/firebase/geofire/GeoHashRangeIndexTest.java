@@ -0,0 +1,138 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.GeoHashRangeIndex;
+import com.firebase.geofire.core.HilbertCellEncoding;
+import com.firebase.geofire.util.GeoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class GeoHashRangeIndexTest {
+
+    private static boolean linearContains(Set<GeoHashQuery> queries, GeoHash hash) {
+        for (GeoHashQuery query: queries) {
+            if (query.containsGeoHash(hash)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void prefixes() {
+        GeoHashRangeIndex index = new GeoHashRangeIndex(Arrays.asList(new GeoHashQuery("9q8y", "9q8y~"),
+                new GeoHashQuery("dr5r", "dr5s")));
+        Assert.assertTrue(index.contains(new GeoHash("9q8y")));
+        Assert.assertTrue(index.contains(new GeoHash("9q8yzzzzzz")));
+        Assert.assertFalse(index.contains(new GeoHash("9q8")));
+        Assert.assertFalse(index.contains(new GeoHash("9q8z")));
+        Assert.assertTrue(index.contains(new GeoHash("dr5r")));
+        Assert.assertTrue(index.contains(new GeoHash("dr5r0")));
+        Assert.assertFalse(index.contains(new GeoHash("dr5")));
+        Assert.assertFalse(index.contains(new GeoHash("dr5s")));
+        Assert.assertFalse(index.contains(new GeoHash("dr5s0")));
+        Assert.assertEquals(2, index.getIntervalCount());
+    }
+
+    @Test
+    public void overlappingRangesAreMerged() {
+        GeoHashRangeIndex index = new GeoHashRangeIndex(Arrays.asList(new GeoHashQuery("9q8", "9q9"),
+                new GeoHashQuery("9q8y", "9q8z"), new GeoHashQuery("9q9", "9qb"), new GeoHashQuery("b", "c")));
+        Assert.assertEquals(2, index.getIntervalCount());
+        Assert.assertTrue(index.contains(new GeoHash("9q9b")));
+        Assert.assertFalse(index.contains(new GeoHash("9qb0")));
+    }
+
+    @Test
+    public void emptyIndex() {
+        GeoHashRangeIndex index = new GeoHashRangeIndex(Collections.<GeoHashQuery>emptyList());
+        Assert.assertFalse(index.contains(new GeoHash("9q8y")));
+        Assert.assertEquals(0, index.getIntervalCount());
+    }
+
+    @Test
+    public void longBoundsAndHashes() {
+        List<GeoHashQuery> queries = Arrays.asList(new GeoHashQuery("9q8yyyyyyyyyy", "9q8yyyyyyyyyz"),
+                new GeoHashQuery("dr5r", "dr5s"));
+        GeoHashRangeIndex index = new GeoHashRangeIndex(queries);
+        Assert.assertTrue(index.contains(new GeoHash("9q8yyyyyyyyyyk")));
+        Assert.assertFalse(index.contains(new GeoHash("9q8yyyyyyyyy")));
+        Assert.assertTrue(index.contains(new GeoHash("dr5rzzzzzzzzzzzzzz")));
+        Assert.assertFalse(index.contains(new GeoHash("dr5szzzzzzzzzzzzzz")));
+    }
+
+    @Test
+    public void matchesLinearScan() {
+        HilbertCellEncoding hilbert = new HilbertCellEncoding();
+        for (int i = 0; i < 200; i++) {
+            GeoLocation center = new GeoLocation(Math.random()*170 - 85, Math.random()*360 - 180);
+            double radius = Math.random()*Math.random()*100000;
+            Set<GeoHashQuery> queries = new HashSet<>(GeoHashQuery.queriesAtLocation(center, radius));
+            queries.addAll(GeoHashQuery.queriesAtLocation(center, radius * 2, 8));
+            queries.addAll(hilbert.queriesAtLocation(center, radius));
+            GeoHashRangeIndex index = new GeoHashRangeIndex(queries);
+            double radiusDegrees = 3 * radius / 111000;
+            for (int j = 0; j < 200; j++) {
+                double latitude = Math.max(-90, Math.min(90, center.latitude + (Math.random()*2 - 1)*radiusDegrees));
+                double longitude = GeoUtils.wrapLongitude(center.longitude + (Math.random()*2 - 1)*radiusDegrees);
+                int precision = 1 + (int) (Math.random() * GeoHash.MAX_PRECISION);
+                GeoHash hash = new GeoHash(latitude, longitude, precision);
+                Assert.assertEquals(linearContains(queries, hash), index.contains(hash));
+            }
+        }
+    }
+
+    @Test
+    public void nestedAndDisjointRanges() {
+        String base32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+        for (int i = 0; i < 200; i++) {
+            Set<GeoHashQuery> queries = new HashSet<>();
+            for (int j = 0; j < 10; j++) {
+                String start = "";
+                String end = "";
+                int length = 1 + (int) (Math.random() * 3);
+                for (int k = 0; k < length; k++) {
+                    start += base32.charAt((int) (Math.random() * 32));
+                    end += base32.charAt((int) (Math.random() * 32));
+                }
+                if (start.compareTo(end) > 0) {
+                    String swap = start;
+                    start = end;
+                    end = swap;
+                }
+                queries.add(new GeoHashQuery(start, Math.random() < 0.3 ? start + "~" : end));
+            }
+            GeoHashRangeIndex index = new GeoHashRangeIndex(queries);
+            for (int j = 0; j < 200; j++) {
+                int precision = 1 + (int) (Math.random() * 4);
+                GeoHash hash = new GeoHash(Math.random()*180 - 90, Math.random()*360 - 180, precision);
+                Assert.assertEquals(linearContains(queries, hash), index.contains(hash));
+            }
+        }
+    }
+}
@@ -16,6 +16,8 @@
 package com.firebase.geofire;
 
 import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashBounds;
+import com.firebase.geofire.util.GeoUtils;
 import org.junit.Assert;
 import org.junit.Rule;
 import org.junit.Test;
@@ -92,6 +94,183 @@ public class GeoHashTest {
         Assert.assertEquals(new GeoHash("4w2kg3s54"), new GeoHash(-54, -67, 9));
     }
 
+    @Test
+    public void packedEncodingMatchesBisection() {
+        double[][] locations = {
+                {0, 0}, {90, 180}, {-90, -180}, {45, 90}, {-45, -90}, {22.5, 45}, {89.99999999, 179.99999999},
+                {37.7853074, -122.4054274}, {-54.933333, -67.616667}, {1e-300, -1e-300}
+        };
+        for (double[] location : locations) {
+            assertPackedMatchesBisection(location[0], location[1]);
+        }
+        for (int i = 0; i < 10000; i++) {
+            assertPackedMatchesBisection(Math.random()*180 - 90, Math.random()*360 - 180);
+        }
+        // Values exactly on cell boundaries at different depths
+        for (int depth = 1; depth < 30; depth++) {
+            double step = 180 / Math.pow(2, depth);
+            assertPackedMatchesBisection(-90 + step, -180 + 2*step);
+            assertPackedMatchesBisection(90 - step, 180 - 2*step);
+        }
+    }
+
+    private void assertPackedMatchesBisection(double lat, double lng) {
+        String expected = bisectionHash(lat, lng, GeoHash.MAX_PRECISION);
+        for (int precision = 1; precision <= GeoHash.MAX_PRECISION; precision++) {
+            Assert.assertEquals(expected.substring(0, precision), new GeoHash(lat, lng, precision).getGeoHashString());
+        }
+    }
+
+    // The reference geohash algorithm, see: https://en.wikipedia.org/wiki/Geohash#Algorithm_and_example
+    private static String bisectionHash(double lat, double lng, int precision) {
+        String base32 = "0123456789bcdefghjkmnpqrstuvwxyz";
+        double[] lngRange = { -180, 180 };
+        double[] latRange = { -90, 90 };
+        StringBuilder hash = new StringBuilder();
+        for (int i = 0; i < precision; i++) {
+            int value = 0;
+            for (int j = 0; j < 5; j++) {
+                boolean even = ((i*5 + j) % 2) == 0;
+                double val = even ? lng : lat;
+                double[] range = even ? lngRange : latRange;
+                double mid = (range[0] + range[1])/2;
+                if (val > mid) {
+                    value = (value << 1) + 1;
+                    range[0] = mid;
+                } else {
+                    value = value << 1;
+                    range[1] = mid;
+                }
+            }
+            hash.append(base32.charAt(value));
+        }
+        return hash.toString();
+    }
+
+    @Test
+    public void bitsRoundtrip() {
+        GeoHash hash = new GeoHash(37.7853074, -122.4054274);
+        Assert.assertEquals(50, hash.getPrecisionBits());
+        Assert.assertEquals(10, hash.getPrecision());
+        Assert.assertEquals(new GeoHash("9q8yywe56g").getBits(), hash.getBits());
+        Assert.assertEquals(hash, GeoHash.fromBits(hash.getBits(), hash.getPrecisionBits()));
+        Assert.assertEquals("9q8yywe56g", GeoHash.fromBits(hash.getBits(), 50).getGeoHashString());
+        Assert.assertEquals(hash.hashCode(), new GeoHash("9q8yywe56g").hashCode());
+
+        Assert.assertEquals(0L, new GeoHash("0").getBits());
+        Assert.assertEquals(31L, new GeoHash("z").getBits());
+        Assert.assertEquals((1L << 60) - 1, new GeoHash("zzzzzzzzzzzz").getBits());
+        Assert.assertFalse(new GeoHash("0").equals(new GeoHash("00")));
+    }
+
+    @Test
+    public void decodeBounds() {
+        double[] bounds = new double[4];
+        GeoHash.decodeBounds("s", bounds);
+        Assert.assertArrayEquals(new double[] { 0, 0, 45, 45 }, bounds, 0);
+        GeoHash.decodeBounds("", bounds);
+        Assert.assertArrayEquals(new double[] { -90, -180, 90, 180 }, bounds, 0);
+        GeoHash.decodeBounds(0b11000L, 5, bounds, 0);
+        Assert.assertArrayEquals(new double[] { 0, 0, 45, 45 }, bounds, 0);
+        GeoHash.decodeBounds(0b1L, 1, bounds, 0);
+        Assert.assertArrayEquals(new double[] { -90, 0, 90, 180 }, bounds, 0);
+
+        GeoHashBounds holder = new GeoHashBounds();
+        for (int i = 0; i < 1000; i++) {
+            double lat = Math.random()*180 - 90;
+            double lng = Math.random()*360 - 180;
+            for (int precision : new int[] { 1, 5, 10, 12, 13, 22 }) {
+                GeoHash hash = new GeoHash(lat, lng, precision);
+                hash.getBounds(holder);
+                int lngBits = (precision*5 + 1)/2;
+                int latBits = precision*5/2;
+                Assert.assertEquals(360 / Math.pow(2, lngBits), holder.getMaxLongitude() - holder.getMinLongitude(), 1e-12);
+                Assert.assertEquals(180 / Math.pow(2, latBits), holder.getMaxLatitude() - holder.getMinLatitude(), 1e-12);
+                Assert.assertTrue(lat >= holder.getMinLatitude() && lat <= holder.getMaxLatitude());
+                Assert.assertTrue(lng >= holder.getMinLongitude() && lng <= holder.getMaxLongitude());
+
+                GeoLocation center = GeoHash.locationFromHash(hash.getGeoHashString());
+                Assert.assertEquals(holder.getCenterLatitude(), center.latitude, 0);
+                Assert.assertEquals(holder.getCenterLongitude(), center.longitude, 0);
+                if (precision < GeoHash.MAX_PRECISION) {
+                    // The center of the smallest cells is not representable as a double
+                    Assert.assertEquals(hash, new GeoHash(center.latitude, center.longitude, precision));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void neighbors() {
+        GeoHash hash = new GeoHash("9q8yy");
+        GeoHash[] neighbors = hash.getNeighbors();
+        Assert.assertArrayEquals(new GeoHash[] {
+                new GeoHash("9q8zn"), new GeoHash("9q8zp"), new GeoHash("9q8yz"), new GeoHash("9q8yx"),
+                new GeoHash("9q8yw"), new GeoHash("9q8yt"), new GeoHash("9q8yv"), new GeoHash("9q8zj")
+        }, neighbors);
+
+        // Longitude wraps around the antimeridian, latitude stops at the poles
+        Assert.assertEquals(new GeoHash("p"), new GeoHash("0").getNeighbor(0, -1));
+        Assert.assertEquals(new GeoHash("0"), new GeoHash("p").getNeighbor(0, 1));
+        Assert.assertNull(new GeoHash("0").getNeighbor(-1, 0));
+        Assert.assertNull(new GeoHash("z").getNeighbor(1, 1));
+        Assert.assertEquals(-1, GeoHash.neighborBits(0, 1, 1, 0));
+        Assert.assertEquals(0, GeoHash.neighborBits(1, 1, 0, 1));
+
+        // Neighbors are the cells of points just past the cell bounds
+        GeoHashBounds bounds = new GeoHashBounds();
+        for (int i = 0; i < 1000; i++) {
+            double lat = Math.random()*170 - 85;
+            double lng = Math.random()*360 - 180;
+            GeoHash center = new GeoHash(lat, lng, 6);
+            center.getBounds(bounds);
+            double height = bounds.getMaxLatitude() - bounds.getMinLatitude();
+            double width = bounds.getMaxLongitude() - bounds.getMinLongitude();
+            for (int latDir = -1; latDir <= 1; latDir++) {
+                for (int lngDir = -1; lngDir <= 1; lngDir++) {
+                    double neighborLat = bounds.getCenterLatitude() + latDir*height;
+                    double neighborLng = GeoUtils.wrapLongitude(bounds.getCenterLongitude() + lngDir*width);
+                    Assert.assertEquals(new GeoHash(neighborLat, neighborLng, 6), center.getNeighbor(latDir, lngDir));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void parentAndChildren() {
+        GeoHash hash = new GeoHash("9q8yy");
+        Assert.assertEquals(new GeoHash("9q8y"), hash.getParent());
+        Assert.assertEquals(new GeoHash("9q8yywe56gzzz"), new GeoHash("9q8yywe56gzzzz").getParent());
+        Assert.assertEquals(new GeoHash("9q8yywe56gzz"), new GeoHash("9q8yywe56gzzz").getParent());
+
+        GeoHash[] children = hash.getChildren();
+        Assert.assertEquals(32, children.length);
+        Assert.assertEquals(new GeoHash("9q8yy0"), children[0]);
+        Assert.assertEquals(new GeoHash("9q8yyz"), children[31]);
+        for (GeoHash child : children) {
+            Assert.assertEquals(hash, child.getParent());
+        }
+        Assert.assertEquals(new GeoHash("9q8yywe56gzzz"), new GeoHash("9q8yywe56gzz").getChildren()[31]);
+    }
+
+    @Test
+    public void noParentException() {
+        exception.expect(IllegalStateException.class);
+        new GeoHash("9").getParent();
+    }
+
+    @Test
+    public void invalidBitsException() {
+        exception.expect(IllegalArgumentException.class);
+        GeoHash.fromBits(32, 5);
+    }
+
+    @Test
+    public void unpackedBitsException() {
+        exception.expect(IllegalStateException.class);
+        new GeoHash(1, 2, GeoHash.MAX_PACKED_PRECISION + 1).getBits();
+    }
+
     @Test
     public void zeroPrecisionException() {
         exception.expect(IllegalArgumentException.class);
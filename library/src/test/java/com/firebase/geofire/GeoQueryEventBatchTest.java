@@ -0,0 +1,176 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.google.firebase.database.DatabaseError;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@RunWith(JUnit4.class)
+public class GeoQueryEventBatchTest {
+
+    private static final GeoLocation A = new GeoLocation(1, 2);
+    private static final GeoLocation B = new GeoLocation(3, 4);
+
+    // Runs posted events only when asked to, and records delayed ones without running them
+    private static final class ManualEventRaiser implements EventRaiser {
+        final List<Runnable> events = new ArrayList<>();
+        final List<Runnable> delayedEvents = new ArrayList<>();
+
+        @Override
+        public void raiseEvent(Runnable r) {
+            this.events.add(r);
+        }
+
+        @Override
+        public void raiseEventDelayed(Runnable r, long delayMillis) {
+            this.delayedEvents.add(r);
+        }
+
+        void runEvents() {
+            while (!this.events.isEmpty()) {
+                this.events.remove(0).run();
+            }
+        }
+    }
+
+    private static final class RecordingListener implements GeoQueryBatchEventListener {
+        final List<GeoQueryEventBatch> batches = new ArrayList<>();
+        int readyCount;
+
+        @Override
+        public void onDataBatch(GeoQueryEventBatch batch) {
+            this.batches.add(batch);
+        }
+
+        @Override
+        public void onGeoQueryReady() {
+            this.readyCount++;
+        }
+
+        @Override
+        public void onGeoQueryError(DatabaseError error) {
+            Assert.fail();
+        }
+    }
+
+    @Test
+    public void enteredAndExitedIsLeftOut() {
+        GeoQueryEventBatch.Builder builder = new GeoQueryEventBatch.Builder();
+        builder.entered("a", null, A);
+        builder.exited("a", null, A);
+        Assert.assertTrue(builder.build().isEmpty());
+    }
+
+    @Test
+    public void exitedAndEnteredAtTheSameLocationIsLeftOut() {
+        GeoQueryEventBatch.Builder builder = new GeoQueryEventBatch.Builder();
+        builder.exited("a", null, A);
+        builder.entered("a", null, A);
+        Assert.assertTrue(builder.build().isEmpty());
+    }
+
+    @Test
+    public void exitedAndEnteredElsewhereIsMoved() {
+        GeoQueryEventBatch.Builder builder = new GeoQueryEventBatch.Builder();
+        builder.exited("a", null, A);
+        builder.entered("a", null, B);
+        GeoQueryEventBatch batch = builder.build();
+        Assert.assertTrue(batch.getEntered().isEmpty());
+        Assert.assertTrue(batch.getExited().isEmpty());
+        Assert.assertEquals(1, batch.getMoved().size());
+        Assert.assertEquals(B, batch.getMoved().get(0).getLocation());
+        Assert.assertEquals(1, batch.getChanged().size());
+    }
+
+    @Test
+    public void movedAndChangedIsReportedOnceWithTheLatestLocation() {
+        GeoQueryEventBatch.Builder builder = new GeoQueryEventBatch.Builder();
+        builder.moved("a", null, A, B);
+        builder.changed("a", null, B);
+        builder.changed("b", null, A);
+        GeoQueryEventBatch batch = builder.build();
+        Assert.assertEquals(1, batch.getMoved().size());
+        Assert.assertEquals(B, batch.getMoved().get(0).getLocation());
+        Assert.assertEquals(2, batch.getChanged().size());
+        Assert.assertEquals(B, batch.getChanged().get(0).getLocation());
+        Assert.assertEquals(A, batch.getChanged().get(1).getLocation());
+    }
+
+    @Test
+    public void movedBackIsOnlyChanged() {
+        GeoQueryEventBatch.Builder builder = new GeoQueryEventBatch.Builder();
+        builder.moved("a", null, A, B);
+        builder.moved("a", null, B, A);
+        GeoQueryEventBatch batch = builder.build();
+        Assert.assertTrue(batch.getMoved().isEmpty());
+        Assert.assertEquals(1, batch.getChanged().size());
+    }
+
+    @Test
+    public void exitedAfterMoveIsExited() {
+        GeoQueryEventBatch.Builder builder = new GeoQueryEventBatch.Builder();
+        builder.moved("a", null, A, B);
+        builder.exited("a", null, B);
+        GeoQueryEventBatch batch = builder.build();
+        Assert.assertEquals(1, batch.getExited().size());
+        Assert.assertTrue(batch.getMoved().isEmpty());
+        Assert.assertTrue(batch.getChanged().isEmpty());
+    }
+
+    @Test
+    public void batchesAreSealedAtMaxBatchSize() {
+        ManualEventRaiser eventRaiser = new ManualEventRaiser();
+        RecordingListener listener = new RecordingListener();
+        BatchEventListenerAdapter adapter = new BatchEventListenerAdapter(listener, eventRaiser, 2, 1000);
+        adapter.entered("a", null, A);
+        adapter.entered("b", null, B);
+        // Only the flush after the delay is scheduled so far
+        Assert.assertEquals(1, eventRaiser.delayedEvents.size());
+        adapter.entered("c", null, A);
+        eventRaiser.runEvents();
+        Assert.assertEquals(1, listener.batches.size());
+        Assert.assertEquals(2, listener.batches.get(0).getEntered().size());
+
+        // Ready delivers the pending batch first
+        adapter.onGeoQueryReady();
+        eventRaiser.runEvents();
+        Assert.assertEquals(2, listener.batches.size());
+        Assert.assertEquals(1, listener.batches.get(1).getEntered().size());
+        Assert.assertEquals(1, listener.readyCount);
+    }
+
+    @Test
+    public void adapterComparesWithTheLocationOfThePreviousBatch() {
+        ManualEventRaiser eventRaiser = new ManualEventRaiser();
+        RecordingListener listener = new RecordingListener();
+        BatchEventListenerAdapter adapter = new BatchEventListenerAdapter(listener, eventRaiser, 100, 0);
+        adapter.entered("a", null, A);
+        eventRaiser.runEvents();
+        Assert.assertEquals(1, listener.batches.size());
+
+        adapter.exited("a", null);
+        adapter.entered("a", null, A);
+        eventRaiser.runEvents();
+        // The events cancel out, so no batch is delivered
+        Assert.assertEquals(1, listener.batches.size());
+    }
+}
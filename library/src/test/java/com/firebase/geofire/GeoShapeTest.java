@@ -0,0 +1,107 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.firebase.geofire.util.Constants;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+@RunWith(JUnit4.class)
+public class GeoShapeTest {
+
+    private static final double EPSILON = 1e-12;
+
+    @Test
+    public void boundingBoxContains() {
+        GeoBoundingBox box = new GeoBoundingBox(new GeoLocation(37, -123), new GeoLocation(38, -122));
+        Assert.assertTrue(box.contains(37.5, -122.5));
+        Assert.assertTrue(box.contains(37, -123));
+        Assert.assertTrue(box.contains(38, -122));
+        Assert.assertFalse(box.contains(38.1, -122.5));
+        Assert.assertFalse(box.contains(37.5, -121.9));
+        Assert.assertFalse(box.crossesAntimeridian());
+        Assert.assertEquals(1, box.getWidth(), EPSILON);
+        Assert.assertEquals(new GeoLocation(37.5, -122.5), box.getCenter());
+        Assert.assertSame(box, box.getBoundingBox());
+    }
+
+    @Test
+    public void boundingBoxAcrossAntimeridian() {
+        GeoBoundingBox box = new GeoBoundingBox(new GeoLocation(-10, 170), new GeoLocation(10, -170));
+        Assert.assertTrue(box.crossesAntimeridian());
+        Assert.assertTrue(box.contains(0, 180));
+        Assert.assertTrue(box.contains(0, -175));
+        Assert.assertTrue(box.contains(0, 175));
+        Assert.assertFalse(box.contains(0, 0));
+        Assert.assertEquals(20, box.getWidth(), EPSILON);
+        Assert.assertEquals(180, box.getCenter().longitude, EPSILON);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidBoundingBoxException() {
+        new GeoBoundingBox(new GeoLocation(10, 0), new GeoLocation(0, 10));
+    }
+
+    @Test
+    public void polygonContains() {
+        // A concave polygon shaped like a U
+        GeoPolygon polygon = new GeoPolygon(Arrays.asList(
+                new GeoLocation(0, 0),
+                new GeoLocation(0, 3),
+                new GeoLocation(3, 3),
+                new GeoLocation(3, 2),
+                new GeoLocation(1, 2),
+                new GeoLocation(1, 1),
+                new GeoLocation(3, 1),
+                new GeoLocation(3, 0)));
+        Assert.assertTrue(polygon.contains(0.5, 1.5));
+        Assert.assertTrue(polygon.contains(2, 0.5));
+        Assert.assertTrue(polygon.contains(2, 2.5));
+        Assert.assertFalse(polygon.contains(2, 1.5));
+        Assert.assertFalse(polygon.contains(-1, 1.5));
+        Assert.assertFalse(polygon.contains(2, 4));
+        Assert.assertEquals(new GeoBoundingBox(new GeoLocation(0, 0), new GeoLocation(3, 3)),
+                polygon.getBoundingBox());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void invalidPolygonException() {
+        new GeoPolygon(Collections.nCopies(2, new GeoLocation(0, 0)));
+    }
+
+    @Test
+    public void areas() {
+        double earthArea = 4 * Math.PI * Constants.EARTH_MEAN_RADIUS * Constants.EARTH_MEAN_RADIUS;
+        GeoBoundingBox world = new GeoBoundingBox(new GeoLocation(-90, -180), new GeoLocation(90, 180));
+        Assert.assertEquals(earthArea, world.getArea(), earthArea * 1e-12);
+        GeoBoundingBox northernHemisphere = new GeoBoundingBox(new GeoLocation(0, -180), new GeoLocation(90, 180));
+        Assert.assertEquals(earthArea / 2, northernHemisphere.getArea(), earthArea * 1e-12);
+
+        // A small polygon has about the area of the same rectangle
+        GeoBoundingBox box = new GeoBoundingBox(new GeoLocation(37, -122), new GeoLocation(37.1, -121.9));
+        GeoPolygon square = new GeoPolygon(Arrays.asList(new GeoLocation(37, -122), new GeoLocation(37.1, -122),
+                new GeoLocation(37.1, -121.9), new GeoLocation(37, -121.9)));
+        Assert.assertEquals(box.getArea(), square.getArea(), box.getArea() * 1e-6);
+        GeoPolygon triangle = new GeoPolygon(Arrays.asList(new GeoLocation(37, -122), new GeoLocation(37.1, -122),
+                new GeoLocation(37, -121.9)));
+        Assert.assertEquals(box.getArea() / 2, triangle.getArea(), box.getArea() * 1e-3);
+    }
+}
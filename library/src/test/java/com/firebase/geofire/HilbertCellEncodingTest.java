@@ -0,0 +1,153 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.GeoHash;
+import com.firebase.geofire.core.GeoHashBounds;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.HilbertCellEncoding;
+import com.firebase.geofire.util.GeoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class HilbertCellEncodingTest {
+
+    private final HilbertCellEncoding encoding = new HilbertCellEncoding();
+
+    @Test
+    public void firstLevel() {
+        // The curve of level 1 starts in the south west and ends in the south east
+        Assert.assertEquals(0, encoding.encodeBits(-45, -90, 2));
+        Assert.assertEquals(1, encoding.encodeBits(45, -90, 2));
+        Assert.assertEquals(2, encoding.encodeBits(45, 90, 2));
+        Assert.assertEquals(3, encoding.encodeBits(-45, 90, 2));
+        // Odd precisions pad the key with a zero bit
+        Assert.assertEquals(4, encoding.encodeBits(45, 90, 3));
+    }
+
+    @Test
+    public void encodeDecodeRoundtrip() {
+        double[] bounds = new double[4];
+        for (int i = 0; i < 1000; i++) {
+            double lat = Math.random()*180 - 90;
+            double lng = Math.random()*360 - 180;
+            for (int bits = 2; bits <= GeoHash.MAX_PACKED_PRECISION_BITS; bits += 2) {
+                long key = encoding.encodeBits(lat, lng, bits);
+                encoding.decodeBounds(key, bits, bounds, 0);
+                Assert.assertTrue(lat >= bounds[GeoHashBounds.MIN_LATITUDE] && lat <= bounds[GeoHashBounds.MAX_LATITUDE]);
+                Assert.assertTrue(lng >= bounds[GeoHashBounds.MIN_LONGITUDE] && lng <= bounds[GeoHashBounds.MAX_LONGITUDE]);
+                // The key of a coarser level is a prefix of the key of a finer level
+                if (bits > 2) {
+                    Assert.assertEquals(encoding.encodeBits(lat, lng, bits - 2), key >>> 2);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void consecutiveCellsAreAdjacent() {
+        double[] bounds = new double[4];
+        double[] next = new double[4];
+        int bits = 10;
+        for (long key = 0; key + 1 < (1L << bits); key++) {
+            encoding.decodeBounds(key, bits, bounds, 0);
+            encoding.decodeBounds(key + 1, bits, next, 0);
+            boolean sameColumn = bounds[GeoHashBounds.MIN_LONGITUDE] == next[GeoHashBounds.MIN_LONGITUDE]
+                    && (bounds[GeoHashBounds.MAX_LATITUDE] == next[GeoHashBounds.MIN_LATITUDE]
+                    || bounds[GeoHashBounds.MIN_LATITUDE] == next[GeoHashBounds.MAX_LATITUDE]);
+            boolean sameRow = bounds[GeoHashBounds.MIN_LATITUDE] == next[GeoHashBounds.MIN_LATITUDE]
+                    && (bounds[GeoHashBounds.MAX_LONGITUDE] == next[GeoHashBounds.MIN_LONGITUDE]
+                    || bounds[GeoHashBounds.MIN_LONGITUDE] == next[GeoHashBounds.MAX_LONGITUDE]);
+            Assert.assertTrue(sameColumn || sameRow);
+        }
+    }
+
+    @Test
+    public void pointsInQueries() {
+        for (int i = 0; i < 500; i++) {
+            double centerLat = Math.random()*180 - 90;
+            double centerLong = Math.random()*360 - 180;
+            double radius = Math.random()*100000;
+            double radiusDegrees = GeoUtils.distanceToLatitudeDegrees(radius);
+            Set<GeoHashQuery> queries = encoding.queriesAtLocation(new GeoLocation(centerLat, centerLong), radius);
+            Assert.assertTrue(queries.size() <= 4);
+            for (int j = 0; j < 1000; j++) {
+                double pointLat = Math.max(-90, Math.min(90, centerLat + (Math.random()*2 - 1)*radiusDegrees));
+                double pointLong = GeoUtils.wrapLongitude(centerLong + (Math.random()*2 - 1)*radiusDegrees);
+                if (GeoUtils.distance(centerLat, centerLong, pointLat, pointLong) < radius) {
+                    long bits = encoding.encodeBits(pointLat, pointLong, 50);
+                    GeoHash key = GeoHash.fromBits(bits, 50);
+                    boolean inQuery = false;
+                    for (GeoHashQuery query: queries) {
+                        if (query.containsGeoHash(key)) {
+                            inQuery = true;
+                        }
+                    }
+                    Assert.assertTrue(inQuery);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tinyRadiiContainTheirCenter() {
+        for (int i = 0; i < 1000; i++) {
+            double centerLat = Math.random()*180 - 90;
+            double centerLong = Math.random()*360 - 180;
+            double radius = Math.random();
+            Set<GeoHashQuery> queries = encoding.queriesAtLocation(new GeoLocation(centerLat, centerLong), radius);
+            GeoHash key = GeoHash.fromBits(encoding.encodeBits(centerLat, centerLong, 50), 50);
+            boolean inQuery = false;
+            for (GeoHashQuery query: queries) {
+                if (query.containsGeoHash(key)) {
+                    inQuery = true;
+                }
+            }
+            Assert.assertTrue(inQuery);
+        }
+    }
+
+    @Test
+    public void pointsInBoundingBoxQueries() {
+        for (int i = 0; i < 500; i++) {
+            double south = Math.random()*180 - 90;
+            double north = Math.min(90, south + Math.random()*Math.random()*10);
+            double west = Math.random()*360 - 180;
+            double width = Math.random()*Math.random()*20;
+            double east = GeoUtils.wrapLongitude(west + width);
+            GeoBoundingBox box = new GeoBoundingBox(new GeoLocation(south, west), new GeoLocation(north, east));
+            Set<GeoHashQuery> queries = encoding.queriesInBoundingBox(box);
+            Assert.assertTrue(queries.size() <= 4);
+            for (int j = 0; j < 1000; j++) {
+                double pointLat = south + Math.random()*(north - south);
+                double pointLong = GeoUtils.wrapLongitude(west + Math.random()*width);
+                GeoHash key = GeoHash.fromBits(encoding.encodeBits(pointLat, pointLong, 50), 50);
+                boolean inQuery = false;
+                for (GeoHashQuery query: queries) {
+                    if (query.containsGeoHash(key)) {
+                        inQuery = true;
+                    }
+                }
+                Assert.assertTrue(inQuery);
+            }
+        }
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.firebase.geofire.util.GeoUtils;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+@RunWith(JUnit4.class)
+public class LocationStoreTest {
+
+    private static void assertSameContents(Map<String, Double> expected, LocationStore store) {
+        Assert.assertEquals(expected.size(), store.size());
+        for (int slot = 0; slot < store.size(); slot++) {
+            String key = store.getKey(slot);
+            Assert.assertEquals(slot, store.indexOf(key));
+            Assert.assertEquals(expected.get(key), store.getLatitude(slot), 0);
+            Assert.assertEquals(-store.getLatitude(slot), store.getLongitude(slot), 0);
+            Assert.assertEquals((long) store.getLatitude(slot), store.getCellBits(slot));
+            Assert.assertEquals(store.getLatitude(slot) > 0, store.isInQuery(slot));
+        }
+    }
+
+    @Test
+    public void addSetAndRemove() {
+        LocationStore store = new LocationStore();
+        Assert.assertEquals(-1, store.indexOf("a"));
+        int a = store.add("a", 1, 2, 3, true, null);
+        int b = store.add("b", 4, 5, 6, false, null);
+        Assert.assertEquals(a, store.indexOf("a"));
+        Assert.assertEquals(b, store.indexOf("b"));
+        Assert.assertEquals(new GeoLocation(1, 2), store.getLocation(a));
+
+        store.set(b, 7, 8, 9, true, null);
+        Assert.assertEquals(7, store.getLatitude(b), 0);
+        Assert.assertEquals(8, store.getLongitude(b), 0);
+        Assert.assertEquals(9, store.getCellBits(b));
+        Assert.assertTrue(store.isInQuery(b));
+
+        store.remove(a);
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals(-1, store.indexOf("a"));
+        Assert.assertEquals("b", store.getKey(store.indexOf("b")));
+        Assert.assertEquals(7, store.getLatitude(store.indexOf("b")), 0);
+
+        store.clear();
+        Assert.assertEquals(0, store.size());
+        Assert.assertEquals(-1, store.indexOf("b"));
+    }
+
+    @Test
+    public void matchesMapUnderRandomChanges() {
+        Random random = new Random(19);
+        LocationStore store = new LocationStore();
+        Map<String, Double> expected = new HashMap<>();
+        for (int i = 0; i < 100000; i++) {
+            // Few distinct keys, so keys are added and removed again often and collide in the table
+            String key = "key" + random.nextInt(500);
+            double latitude = random.nextInt(180) - 90;
+            int slot = store.indexOf(key);
+            Assert.assertEquals(expected.containsKey(key), slot >= 0);
+            if (random.nextInt(3) == 0) {
+                if (slot >= 0) {
+                    store.remove(slot);
+                    expected.remove(key);
+                }
+            } else if (slot >= 0) {
+                store.set(slot, latitude, -latitude, (long) latitude, latitude > 0, null);
+                expected.put(key, latitude);
+            } else {
+                store.add(key, latitude, -latitude, (long) latitude, latitude > 0, null);
+                expected.put(key, latitude);
+            }
+            if (i % 1000 == 0) {
+                assertSameContents(expected, store);
+            }
+        }
+        assertSameContents(expected, store);
+        store.clear();
+        expected.clear();
+        assertSameContents(expected, store);
+    }
+
+    private static GeoBoundingBox randomBounds(Random random) {
+        double south = random.nextDouble()*170 - 90;
+        double north = Math.min(90, south + random.nextDouble()*random.nextDouble()*40);
+        double west = random.nextDouble()*360 - 180;
+        double east = GeoUtils.wrapLongitude(west + random.nextDouble()*random.nextDouble()*40);
+        return new GeoBoundingBox(new GeoLocation(south, west), new GeoLocation(north, east));
+    }
+
+    private static void assertVisitsBounds(final LocationStore store, GeoBoundingBox first, GeoBoundingBox second) {
+        final Set<Integer> visited = new HashSet<>();
+        store.forEachInBounds(first, second, new LocationStore.SlotVisitor() {
+            @Override
+            public void visit(int slot) {
+                Assert.assertTrue(slot < store.size());
+                Assert.assertTrue(visited.add(slot));
+            }
+        });
+        for (int slot = 0; slot < store.size(); slot++) {
+            double latitude = store.getLatitude(slot);
+            double longitude = store.getLongitude(slot);
+            if (first.contains(latitude, longitude) || (second != null && second.contains(latitude, longitude))) {
+                Assert.assertTrue(visited.contains(slot));
+            }
+        }
+    }
+
+    @Test
+    public void gridFindsLocationsInBounds() {
+        Random random = new Random(20);
+        LocationStore store = new LocationStore();
+        for (int i = 0; i < 20000; i++) {
+            double latitude = random.nextDouble()*180 - 90;
+            double longitude = random.nextDouble()*360 - 180;
+            String key = "key" + random.nextInt(5000);
+            int slot = store.indexOf(key);
+            if (slot < 0) {
+                store.add(key, latitude, longitude, 0, false, null);
+            } else if (random.nextBoolean()) {
+                store.remove(slot);
+            } else {
+                store.set(slot, latitude, longitude, 0, false, null);
+            }
+            if (i % 200 == 0) {
+                GeoBoundingBox first = randomBounds(random);
+                store.fitGrid(first);
+                assertVisitsBounds(store, first, null);
+                assertVisitsBounds(store, first, randomBounds(random));
+            }
+        }
+        GeoBoundingBox world = new GeoBoundingBox(new GeoLocation(-90, -180), new GeoLocation(90, 180));
+        assertVisitsBounds(store, world, null);
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2019 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.firebase.geofire;
+
+import com.firebase.geofire.core.CellEncoding;
+import com.firebase.geofire.core.GeoHashCellEncoding;
+import com.firebase.geofire.core.GeoHashQuery;
+import com.firebase.geofire.core.HilbertCellEncoding;
+import com.firebase.geofire.core.QueryPlan;
+import com.firebase.geofire.util.Constants;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class QueryPlanTest {
+
+    private static final double EARTH_AREA = 4 * Math.PI * Constants.EARTH_MEAN_RADIUS * Constants.EARTH_MEAN_RADIUS;
+
+    @Test
+    public void wholeWorld() {
+        GeoBoundingBox world = new GeoBoundingBox(new GeoLocation(-90, -180), new GeoLocation(90, 180));
+        for (CellEncoding encoding: new CellEncoding[] { new GeoHashCellEncoding(), new HilbertCellEncoding() }) {
+            QueryPlan plan = QueryPlan.explain(encoding, world);
+            Assert.assertEquals(EARTH_AREA, plan.getQueryArea(), EARTH_AREA * 1e-9);
+            Assert.assertEquals(EARTH_AREA, plan.getCoveredArea(), EARTH_AREA * 1e-9);
+            Assert.assertEquals(1, plan.getOverFetchRatio(), 1e-9);
+        }
+    }
+
+    @Test
+    public void circlePlansCoverTheCircle() {
+        for (CellEncoding encoding: new CellEncoding[] { new GeoHashCellEncoding(), new HilbertCellEncoding() }) {
+            for (int i = 0; i < 100; i++) {
+                GeoLocation center = new GeoLocation(Math.random()*170 - 85, Math.random()*360 - 180);
+                double radius = 100 + Math.random()*100000;
+                QueryPlan plan = QueryPlan.explain(encoding, center, radius);
+                Assert.assertEquals(encoding.queriesAtLocation(center, radius), plan.getQueries());
+                Assert.assertTrue(plan.getOverFetchRatio() >= 1);
+                Assert.assertTrue(plan.getPlanningTimeNanos() >= 0);
+                double coveredArea = 0;
+                for (GeoHashQuery query: plan.getQueries()) {
+                    coveredArea += plan.getArea(query);
+                }
+                Assert.assertEquals(plan.getCoveredArea(), coveredArea, coveredArea * 1e-9);
+            }
+        }
+    }
+
+    @Test
+    public void rangeArea() {
+        // The cell 9q8y is 0.17578125 degrees high and 0.3515625 degrees wide
+        QueryPlan plan = QueryPlan.explain(new GeoHashCellEncoding(), new GeoLocation(37.7, -122.4), 1);
+        GeoHashQuery query = plan.getQueries().iterator().next();
+        Assert.assertTrue(plan.getArea(query) > 0);
+        Assert.assertTrue(plan.getArea(query) < 0.176 * 0.352 * Constants.METERS_PER_DEGREE_LATITUDE
+                * Constants.METERS_PER_DEGREE_LATITUDE);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownRangeException() {
+        QueryPlan plan = QueryPlan.explain(new GeoHashCellEncoding(), new GeoLocation(37.7, -122.4), 1000);
+        plan.getArea(new GeoHashQuery("0", "1"));
+    }
+}